@@ -0,0 +1,414 @@
+package ro.pub.ga.watchmaker.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.uncommons.maths.random.MersenneTwisterRNG;
+import org.uncommons.watchmaker.framework.CandidateFactory;
+import org.uncommons.watchmaker.framework.EvaluatedCandidate;
+import org.uncommons.watchmaker.framework.EvolutionEngine;
+import org.uncommons.watchmaker.framework.EvolutionObserver;
+import org.uncommons.watchmaker.framework.EvolutionaryOperator;
+import org.uncommons.watchmaker.framework.FitnessEvaluator;
+import org.uncommons.watchmaker.framework.GenerationalEvolutionEngine;
+import org.uncommons.watchmaker.framework.PopulationData;
+import org.uncommons.watchmaker.framework.SelectionStrategy;
+import org.uncommons.watchmaker.framework.TerminationCondition;
+
+/**
+ * Island model without the epoch barrier of {@link DistributedEvolutionEngine}: every island evolves
+ * continuously on its own thread, pushes copies of some of its individuals to the inbox of the next island
+ * in the ring every {@code migrationInterval} generations and drains its own inbox between generations,
+ * the immigrants replacing its worst individuals. A slow island (expensive fitness) delays nobody.
+ * <p>
+ * The driver thread only samples the latest population data of the islands and checks the termination
+ * conditions against the merged data, whose generation number is the one of the slowest island.
+ * The evolution is not reproducible, as it depends on the thread scheduling.
+ * <p>
+ * The islands are threads of the driver JVM, so the engine removes the epoch barrier on one machine only:
+ * the tasks of a MapReduce job cannot exchange migrants with each other while they run. To spread the
+ * islands over a cluster use {@link PersistentIslandEvolutionEngine}, whose {@link IslandWorker}s keep
+ * the islands in memory between epochs but still synchronise at the end of each epoch.
+ */
+public class AsynchronousIslandEvolutionEngine<T> implements EvolutionEngine<T> {
+
+	private final CandidateFactory<T> candidateFactory;
+	private final EvolutionaryOperator<T> evolutionScheme;
+	private final FitnessEvaluator<? super T> fitnessEvaluator;
+	private final SelectionStrategy<? super T> selectionStrategy;
+	private final Random rng;
+	private final boolean doMigration;
+	private final int islandCount;
+
+	private final List<EvolutionObserver<? super T>> observers = new ArrayList<EvolutionObserver<? super T>>();
+	private List<TerminationCondition> satisfiedTerminationConditions;
+
+	//Set by the driver to stop the islands
+	private volatile boolean stopped;
+
+	public AsynchronousIslandEvolutionEngine(CandidateFactory<T> candidateFactory,
+			EvolutionaryOperator<T> evolutionScheme,
+			FitnessEvaluator<? super T> fitnessEvaluator,
+			SelectionStrategy<? super T> selectionStrategy,
+			Random rng,
+			boolean doMigration,
+			int islandCount) {
+
+		this.candidateFactory = candidateFactory;
+		this.evolutionScheme = evolutionScheme;
+		this.fitnessEvaluator = fitnessEvaluator;
+		this.selectionStrategy = selectionStrategy;
+		this.rng = rng;
+		this.doMigration = doMigration;
+		this.islandCount = islandCount;
+	}
+
+	@Override
+	public List<EvaluatedCandidate<T>> evolvePopulation(int populationSize,
+			int eliteCount,
+			Collection<T> seedCandidates,
+			TerminationCondition... conditions) {
+
+		List<T> population = candidateFactory.generateInitialPopulation(populationSize, seedCandidates, rng);
+
+		long startTime = System.currentTimeMillis();
+		//Migrate as often as the synchronous engines do
+		int migrationInterval = IslandEvolution.getEpochGenerationCount(IslandEvolution.getGenerationCount(conditions));
+		int islandEliteCount = (int)Math.ceil(((double)eliteCount) / islandCount);
+		int migrationCount = populationSize / (5 * islandCount);
+		boolean natural = fitnessEvaluator.isNatural();
+
+		List<List<T>> islands = IslandEvolution.splitPopulation(population, islandCount);
+		List<Queue<EvaluatedCandidate<T>>> inboxes = new ArrayList<Queue<EvaluatedCandidate<T>>>(islandCount);
+		for(int i = 0; i < islandCount; i++) {
+
+			inboxes.add(new ConcurrentLinkedQueue<EvaluatedCandidate<T>>());
+		}
+
+		AtomicReferenceArray<PopulationData<? extends T>> islandData = new AtomicReferenceArray<PopulationData<? extends T>>(islandCount);
+		BlockingQueue<Integer> updates = new LinkedBlockingQueue<Integer>();
+		stopped = false;
+
+		//Every island needs its own thread, as it only stops when the driver says so
+		ExecutorService executor = Executors.newFixedThreadPool(islandCount);
+		List<Future<List<EvaluatedCandidate<T>>>> results = new ArrayList<Future<List<EvaluatedCandidate<T>>>>(islandCount);
+		EvaluatedCandidate<T> bestCandidate = null;
+		try {
+
+			for(int i = 0; i < islandCount; i++) {
+
+				//Independent generators, seeded from the generator of the engine
+				byte[] seed = new byte[16];
+				rng.nextBytes(seed);
+
+				results.add(executor.submit(new IslandTask(i, islands.get(i), islandEliteCount, migrationInterval, migrationCount,
+						new MersenneTwisterRNG(seed), inboxes, islandData, updates)));
+			}
+
+			int lastGeneration = -1;
+			while(!stopped) {
+
+				Integer update = updates.poll(1, TimeUnit.SECONDS);
+				updates.clear();
+				//A dead island posts no more updates and would hold back the merged generation forever
+				checkIslands(results);
+				if(update == null) {
+
+					continue;
+				}
+
+				PopulationData<T> populationData = mergeIslandData(islandData, natural, islandEliteCount, startTime);
+				if(populationData == null) {
+
+					continue;
+				}
+
+				EvaluatedCandidate<T> crtBestCandidate = new EvaluatedCandidate<T>(populationData.getBestCandidate(), populationData.getBestCandidateFitness());
+				if(bestCandidate == null || (natural ?
+						crtBestCandidate.getFitness() > bestCandidate.getFitness() :
+						crtBestCandidate.getFitness() < bestCandidate.getFitness())) {
+
+					bestCandidate = crtBestCandidate;
+				}
+
+				//Check and report once per generation of the slowest island
+				if(populationData.getGenerationNumber() == lastGeneration) {
+
+					continue;
+				}
+				lastGeneration = populationData.getGenerationNumber();
+
+				for(EvolutionObserver<? super T> observer: observers) {
+
+					observer.populationUpdate(populationData);
+				}
+
+				if(IslandEvolution.shouldTerminate(populationData, Arrays.asList(conditions))) {
+
+					satisfiedTerminationConditions = new ArrayList<TerminationCondition>();
+					for(TerminationCondition condition: conditions) {
+
+						if(condition.shouldTerminate(populationData)) {
+
+							satisfiedTerminationConditions.add(condition);
+						}
+					}
+					stopped = true;
+				}
+			}
+
+			//The immigrants left in the inboxes are copies, the islands alone make up the population
+			List<EvaluatedCandidate<T>> evolvedPopulation = new ArrayList<EvaluatedCandidate<T>>(populationSize + 1);
+			for(Future<List<EvaluatedCandidate<T>>> result: results) {
+
+				evolvedPopulation.addAll(getResult(result));
+			}
+
+			IslandEvolution.sortPopulation(evolvedPopulation, natural);
+			if(bestCandidate != null) {
+
+				evolvedPopulation.add(0, bestCandidate);
+				evolvedPopulation.remove(populationSize);
+			}
+
+			return evolvedPopulation;
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Island evolution interrupted", e);
+		} finally {
+
+			stopped = true;
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Fails fast if an island stopped on its own, which only happens on errors.
+	 */
+	private void checkIslands(List<Future<List<EvaluatedCandidate<T>>>> results) {
+
+		for(Future<List<EvaluatedCandidate<T>>> result: results) {
+
+			if(result.isDone()) {
+
+				getResult(result);
+				throw new IllegalStateException("Island stopped before the evolution terminated");
+			}
+		}
+	}
+
+	/**
+	 * Merges the latest data of the islands; the fitness statistics are combined with Chan's formula.
+	 *
+	 * @return null while an island has not finished its first generation
+	 */
+	private PopulationData<T> mergeIslandData(AtomicReferenceArray<PopulationData<? extends T>> islandData,
+			boolean natural, int eliteCount, long startTime) {
+
+		T bestCandidate = null;
+		double bestFitness = 0;
+		int generation = Integer.MAX_VALUE;
+		int count = 0;
+		double mean = 0;
+		double m2 = 0;
+		for(int i = 0; i < islandData.length(); i++) {
+
+			PopulationData<? extends T> data = islandData.get(i);
+			if(data == null) {
+
+				return null;
+			}
+
+			if(bestCandidate == null || (natural ?
+					data.getBestCandidateFitness() > bestFitness :
+					data.getBestCandidateFitness() < bestFitness)) {
+
+				bestCandidate = data.getBestCandidate();
+				bestFitness = data.getBestCandidateFitness();
+			}
+			generation = Math.min(generation, data.getGenerationNumber());
+
+			int size = data.getPopulationSize();
+			int total = count + size;
+			double delta = data.getMeanFitness() - mean;
+			mean += delta * size / total;
+			m2 += data.getFitnessStandardDeviation() * data.getFitnessStandardDeviation() * size +
+					delta * delta * ((double)count * size / total);
+			count = total;
+		}
+
+		return new PopulationData<T>(bestCandidate, bestFitness, mean, Math.sqrt(m2 / count), natural, count,
+				eliteCount, generation, System.currentTimeMillis() - startTime);
+	}
+
+	private List<EvaluatedCandidate<T>> getResult(Future<List<EvaluatedCandidate<T>>> result) {
+
+		try {
+
+			return result.get();
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Island evolution interrupted", e);
+		} catch (ExecutionException e) {
+
+			throw new IllegalStateException("Island evolution failed", e.getCause());
+		}
+	}
+
+	/**
+	 * An island evolving until the driver stops it.
+	 */
+	private class IslandTask implements Callable<List<EvaluatedCandidate<T>>> {
+
+		private final int index;
+		private final List<T> population;
+		private final int eliteCount;
+		private final int migrationInterval;
+		private final int migrationCount;
+		private final Random islandRng;
+		private final List<Queue<EvaluatedCandidate<T>>> inboxes;
+		private final AtomicReferenceArray<PopulationData<? extends T>> islandData;
+		private final BlockingQueue<Integer> updates;
+
+		public IslandTask(int index, List<T> population, int eliteCount, int migrationInterval, int migrationCount,
+				Random islandRng, List<Queue<EvaluatedCandidate<T>>> inboxes,
+				AtomicReferenceArray<PopulationData<? extends T>> islandData, BlockingQueue<Integer> updates) {
+
+			this.index = index;
+			this.population = population;
+			this.eliteCount = eliteCount;
+			this.migrationInterval = migrationInterval;
+			this.migrationCount = migrationCount;
+			this.islandRng = islandRng;
+			this.inboxes = inboxes;
+			this.islandData = islandData;
+			this.updates = updates;
+		}
+
+		@Override
+		public List<EvaluatedCandidate<T>> call() {
+
+			MigratingEvolutionEngine engine = new MigratingEvolutionEngine(this);
+			engine.setSingleThreaded(true);
+			engine.addEvolutionObserver(new EvolutionObserver<T>() {
+
+				@Override
+				public void populationUpdate(PopulationData<? extends T> data) {
+
+					islandData.set(index, data);
+					updates.offer(index);
+				}
+			});
+
+			return engine.evolvePopulation(population.size(), eliteCount, population, new TerminationCondition() {
+
+				@Override
+				public boolean shouldTerminate(PopulationData<?> populationData) {
+
+					return stopped;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Generational engine exchanging migrants with the other islands between generations.
+	 */
+	private class MigratingEvolutionEngine extends GenerationalEvolutionEngine<T> {
+
+		private final IslandTask island;
+		private int generation;
+
+		public MigratingEvolutionEngine(IslandTask island) {
+
+			super(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, island.islandRng);
+			this.island = island;
+		}
+
+		@Override
+		protected List<EvaluatedCandidate<T>> nextEvolutionStep(List<EvaluatedCandidate<T>> evaluatedPopulation,
+				int eliteCount, Random rng) {
+
+			//The population is sorted; the immigrants replace the worst individuals, never the elite
+			List<EvaluatedCandidate<T>> population = new ArrayList<EvaluatedCandidate<T>>(evaluatedPopulation);
+			int replaceable = population.size() - eliteCount;
+			EvaluatedCandidate<T> immigrant;
+			int replaced = 0;
+			while((immigrant = island.inboxes.get(island.index).poll()) != null) {
+
+				if(replaced < replaceable) {
+
+					population.set(population.size() - 1 - replaced, immigrant);
+					replaced++;
+				}
+			}
+
+			generation++;
+			if(doMigration && generation % island.migrationInterval == 0) {
+
+				//The emigrants are copies; the sizes of the islands stay the same
+				List<EvaluatedCandidate<T>> emigrants = IslandEvolution.selectMigrators(
+						new ArrayList<EvaluatedCandidate<T>>(population), island.migrationCount, rng);
+				island.inboxes.get(IslandEvolution.getMigrationTarget(island.index, island.inboxes.size())).addAll(emigrants);
+			}
+
+			return super.nextEvolutionStep(population, eliteCount, rng);
+		}
+	}
+
+	@Override
+	public T evolve(int populationSize, int eliteCount,
+			TerminationCondition... conditions) {
+
+		return evolve(populationSize, eliteCount, Collections.<T>emptyList(), conditions);
+	}
+
+	@Override
+	public T evolve(int populationSize, int eliteCount,
+			Collection<T> seedCandidates, TerminationCondition... conditions) {
+
+		return evolvePopulation(populationSize, eliteCount, seedCandidates, conditions).get(0).getCandidate();
+	}
+
+	@Override
+	public List<EvaluatedCandidate<T>> evolvePopulation(int populationSize,
+			int eliteCount, TerminationCondition... conditions) {
+
+		return evolvePopulation(populationSize, eliteCount, Collections.<T>emptyList(), conditions);
+	}
+
+	@Override
+	public void addEvolutionObserver(EvolutionObserver<? super T> observer) {
+
+		observers.add(observer);
+	}
+
+	@Override
+	public void removeEvolutionObserver(EvolutionObserver<? super T> observer) {
+
+		observers.remove(observer);
+	}
+
+	@Override
+	public List<TerminationCondition> getSatisfiedTerminationConditions() {
+
+		return satisfiedTerminationConditions;
+	}
+}
@@ -0,0 +1,242 @@
+package ro.pub.ga.watchmaker.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.uncommons.watchmaker.framework.FitnessEvaluator;
+
+import ro.pub.ga.watchmaker.utils.BatchFitnessEvaluator;
+import ro.pub.ga.watchmaker.utils.CachingFitnessEvaluator;
+import ro.pub.ga.watchmaker.utils.CandidateCodecs;
+
+/**
+ * The batch pipeline of the mappers evaluating one candidate per record: the records of a batch are
+ * decoded and evaluated in chunks, one per thread of the task, and emitted in the order they were read.
+ * Also sets up the fitness cache of the tasks.
+ */
+public final class BatchEvaluation {
+
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	private BatchEvaluation() {
+
+	}
+
+	/**
+	 * The number of records a mapper reads before evaluating them: {@link Constants#EVALUATION_BATCH_SIZE}.
+	 */
+	public static int getBatchSize(Configuration conf) {
+
+		return Math.max(conf.getInt(Constants.EVALUATION_BATCH_SIZE, DEFAULT_BATCH_SIZE), 1);
+	}
+
+	/**
+	 * A pool with the threads of the task, or null if the task has a single core.
+	 */
+	public static ForkJoinPool createPool(Configuration conf) {
+
+		int threads = IslandEvolution.getTaskThreads(conf);
+
+		return threads > 1 ? new ForkJoinPool(threads) : null;
+	}
+
+	/**
+	 * Puts a {@link CachingFitnessEvaluator} in front of the evaluator when {@link Constants#FITNESS_CACHE_SIZE} is set.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> FitnessEvaluator<T> withCache(FitnessEvaluator<? super T> evaluator, Configuration conf) {
+
+		int cacheSize = conf.getInt(Constants.FITNESS_CACHE_SIZE, 0);
+		if(cacheSize <= 0) {
+
+			return (FitnessEvaluator<T>)evaluator;
+		}
+
+		return new CachingFitnessEvaluator<T>(evaluator, cacheSize);
+	}
+
+	/**
+	 * Counts {@code requested} fitness values under {@link IslandCounters#EVALUATIONS}. Behind a fitness cache only
+	 * the misses reach the evaluator, so {@link #reportCache} counts those instead.
+	 */
+	public static void countEvaluations(FitnessEvaluator<?> evaluator, TaskAttemptContext context, long requested) {
+
+		if(!(evaluator instanceof CachingFitnessEvaluator)) {
+
+			context.getCounter(IslandCounters.EVALUATIONS).increment(requested);
+		}
+	}
+
+	/**
+	 * Adds the hits and misses of the evaluator's cache, if it has one, to the job counters;
+	 * the misses are the evaluations of the task.
+	 */
+	public static void reportCache(FitnessEvaluator<?> evaluator, TaskAttemptContext context) {
+
+		if(evaluator instanceof CachingFitnessEvaluator) {
+
+			CachingFitnessEvaluator<?> cache = (CachingFitnessEvaluator<?>)evaluator;
+			context.getCounter(IslandCounters.CACHE_HITS).increment(cache.getHits());
+			context.getCounter(IslandCounters.CACHE_MISSES).increment(cache.getMisses());
+			context.getCounter(IslandCounters.EVALUATIONS).increment(cache.getMisses());
+			System.out.println("Fitness cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+		}
+	}
+
+	/**
+	 * Decodes candidates stored with {@link CandidateCodecs#toString}.
+	 *
+	 * @param pool - may be null, the records are then decoded on the calling thread
+	 */
+	public static <T> List<T> decode(final List<String> records, ForkJoinPool pool) {
+
+		List<T> candidates = new ArrayList<T>(records.size());
+		for(List<T> chunk: invokeChunks(records.size(), pool, new Chunk<List<T>>() {
+
+			@Override
+			public List<T> apply(int from, int to) {
+
+				List<T> decoded = new ArrayList<T>(to - from);
+				for(String record: records.subList(from, to)) {
+
+					decoded.add(CandidateCodecs.<T>fromString(record));
+				}
+
+				return decoded;
+			}
+		})) {
+
+			candidates.addAll(chunk);
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Evaluates the candidates, a {@link BatchFitnessEvaluator} receiving a whole chunk at a time.
+	 *
+	 * @param pool - may be null, the candidates are then evaluated on the calling thread
+	 * @return the fitness of every candidate, in the order of the candidates
+	 */
+	public static <T> double[] evaluate(FitnessEvaluator<? super T> evaluator, List<T> candidates, ForkJoinPool pool) {
+
+		return evaluate(evaluator, candidates, pool, null);
+	}
+
+	/**
+	 * Evaluates the candidates, timing every chunk.
+	 *
+	 * @param recorder - receives the time and size of every chunk; may be null
+	 */
+	public static <T> double[] evaluate(final FitnessEvaluator<? super T> evaluator, final List<T> candidates, ForkJoinPool pool,
+			final EvaluationCost.Recorder recorder) {
+
+		double[] fitness = new double[candidates.size()];
+		int position = 0;
+		for(double[] chunk: invokeChunks(candidates.size(), pool, new Chunk<double[]>() {
+
+			@Override
+			public double[] apply(int from, int to) {
+
+				long start = System.nanoTime();
+				double[] chunkFitness = evaluate(evaluator, candidates.subList(from, to));
+				if(recorder != null) {
+
+					recorder.add(to - from, EvaluationCost.sizeOf(candidates.subList(from, to)),
+							(System.nanoTime() - start) / 1000);
+				}
+
+				return chunkFitness;
+			}
+		})) {
+
+			System.arraycopy(chunk, 0, fitness, position, chunk.length);
+			position += chunk.length;
+		}
+
+		return fitness;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> double[] evaluate(FitnessEvaluator<? super T> evaluator, List<T> candidates) {
+
+		if(evaluator instanceof BatchFitnessEvaluator) {
+
+			return ((BatchFitnessEvaluator<? super T>)evaluator).getBatchFitness(candidates);
+		}
+
+		double[] fitness = new double[candidates.size()];
+		for(int i = 0; i < fitness.length; i++) {
+
+			fitness[i] = evaluator.getFitness(candidates.get(i), null);
+		}
+
+		return fitness;
+	}
+
+	interface Chunk<R> {
+
+		R apply(int from, int to);
+	}
+
+	/**
+	 * Splits [0, size) into one chunk per thread of the pool and returns the results in order.
+	 * The chunks are forked and joined rather than submitted: a caller already running on the pool,
+	 * like an island of IslandEvolutionMapper, works on the chunks itself instead of blocking a thread.
+	 */
+	static <R> List<R> invokeChunks(int size, ForkJoinPool pool, final Chunk<R> chunk) {
+
+		List<R> results = new ArrayList<R>();
+		int chunkCount = (pool == null) ? 1 : Math.min(pool.getParallelism(), size);
+		if(chunkCount <= 1) {
+
+			results.add(chunk.apply(0, size));
+
+			return results;
+		}
+
+		final List<RecursiveTask<R>> tasks = new ArrayList<RecursiveTask<R>>(chunkCount);
+		for(int i = 0; i < chunkCount; i++) {
+
+			final int from = (int)((long)size * i / chunkCount);
+			final int to = (int)((long)size * (i + 1) / chunkCount);
+			tasks.add(new RecursiveTask<R>() {
+
+				@Override
+				protected R compute() {
+
+					return chunk.apply(from, to);
+				}
+			});
+		}
+
+		if(ForkJoinTask.getPool() == pool) {
+
+			ForkJoinTask.invokeAll(tasks);
+		}
+		else {
+
+			pool.invoke(new RecursiveAction() {
+
+				@Override
+				protected void compute() {
+
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
+		}
+
+		for(RecursiveTask<R> task: tasks) {
+
+			results.add(task.join());
+		}
+
+		return results;
+	}
+}
@@ -10,6 +10,8 @@ public class Constants {
 	public final static String FITNESS_EVALUATOR_PROPERTY = "ro.pub.ga.fitness.evaluator";
 	public final static String SELECTION_STRATEGY_PROPERTY = "ro.pub.ga.selection.strategy";
 	public final static String RANDOM_GENERATOR_PROPERTY = "ro.pub.ga.random.generator";
+	//Seed of the epoch the job runs, the tasks derive their streams from it (see RandomStreams)
+	public final static String RANDOM_SEED = "ro.pub.ga.random.seed";
 	public final static String GENERATION_COUNT_PROPERTY = "ro.pub.ga.generation.count";
 	public final static String ELITE_COUNT_PROPERTY = "ro.pub.ga.elite.count";
 	public final static String MIGRATION_PROPERTY = "ro.pub.ga.migration";
@@ -25,6 +27,31 @@ public class Constants {
 	public final static String TERMINATION_CONDITIONS = "ro.pub.ga.termination.conditions";
 	public final static String START_TIME = "ro.pub.ga.start.time";
 	public final static String CURRENT_EPOCH = "ro.pub.ga.current.epoch";
+	//Number of ranked candidates a reducer reads from an island; 0 means the whole island
+	public final static String REDUCE_TOP_N = "ro.pub.ga.reduce.top_n";
+	//Threads of a map task (island evolution, batch evaluation); 0 means one per virtual core of the container
+	public final static String TASK_THREADS = "ro.pub.ga.task.threads";
+	//Records a fitness mapper reads before evaluating them together
+	public final static String EVALUATION_BATCH_SIZE = "ro.pub.ga.evaluation.batch_size";
+	//Entries of the fitness cache of a task; 0 disables the cache
+	public final static String FITNESS_CACHE_SIZE = "ro.pub.ga.fitness.cache_size";
+	//Fitted evaluation time of a candidate, in microseconds: fixed part and part per unit of size (see EvaluationCost)
+	public final static String COST_PER_CANDIDATE = "ro.pub.ga.cost.per_candidate";
+	public final static String COST_PER_UNIT = "ro.pub.ga.cost.per_unit";
+	//Splits of an evaluation job per free map slot of the cluster
+	public final static String SPLITS_PER_SLOT = "ro.pub.ga.splits.per_slot";
+	//Free map slots of the cluster when the engine configured the job
+	public final static String MAP_SLOTS = "ro.pub.ga.splits.map_slots";
+	//Fraction of the data points the clustering fitness is estimated on (CenterListEvaluator.withSample); 1 means exact
+	public final static String FITNESS_SAMPLE_FRACTION = "ro.pub.ga.fitness.sample_fraction";
+	//How DistributedFitnessPartitioner spreads the candidates over the reducers (DistributedFitnessPartitioner.Mode)
+	public final static String PARTITIONER_MODE = "ro.pub.ga.partitioner.mode";
+	//Data-parallel clustering fitness (ShardedCenterListEvaluator): the job's phase, the centers of the
+	//evaluated candidates and the centers updated by the first job
+	public final static String SHARDED_PHASE = "ro.pub.ga.sharded.phase";
+	public final static String SHARDED_NUM_CENTERS = "ro.pub.ga.sharded.num_centers";
+	public final static String SHARDED_CENTERS = "ro.pub.ga.sharded.centers";
+	public final static String SHARDED_UPDATED_CENTERS = "ro.pub.ga.sharded.updated_centers";
 	public final static String TRUE = "ro.pub.ga.TRUE";
 	public final static String FALSE = "ro.pub.ga.FALSE";
 	
@@ -0,0 +1,204 @@
+package ro.pub.ga.watchmaker.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Cluster;
+import org.apache.hadoop.mapreduce.ClusterMetrics;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.CombineSequenceFileInputFormat;
+
+import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
+
+/**
+ * Reads the population files of an evaluation job grouped into splits of equal predicted evaluation time.
+ * Every file name records the number and the total size of its candidates (see {@link #fileName}), so the
+ * splits are planned from the directory listing alone, without opening the files. With the {@link EvaluationCost}
+ * fitted on the previous generation, the files are assigned, most expensive first, to the split with the least
+ * predicted work. The number of splits follows the free map slots of the cluster, which the engine records
+ * under {@link Constants#MAP_SLOTS} for every job ({@link Constants#SPLITS_PER_SLOT} splits per slot), so several
+ * splits per slot let the faster nodes take more of them. Without a cost model, or for files named otherwise, the
+ * file length is the predicted work.
+ */
+public class CostAwareInputFormat<T> extends CombineSequenceFileInputFormat<LongWritable, EvaluatedCandidateWritable<T>> {
+
+	public static final int DEFAULT_SPLITS_PER_SLOT = 2;
+
+	//Files the population of an evaluation job is written to, per slave, so that the splits can be balanced
+	public static final int FILES_PER_SLAVE = 2;
+
+	//<prefix><index>.cost-<candidates>-<size>
+	private static final Pattern COST_SUFFIX = Pattern.compile("\\.cost-(\\d+)-(\\d+)$");
+
+	/**
+	 * The name of the population file {@code index}, recording the number and the size of {@code candidates}.
+	 */
+	public static String fileName(String prefix, int index, List<?> candidates) {
+
+		return prefix + index + ".cost-" + candidates.size() + "-" + EvaluationCost.sizeOf(candidates);
+	}
+
+	/**
+	 * The free map slots of the cluster, or 0 if the cluster does not report them.
+	 * The engines query it for every job they configure and record it under {@link Constants#MAP_SLOTS}.
+	 */
+	public static int getFreeMapSlots(Configuration conf) {
+
+		try {
+
+			Cluster cluster = new Cluster(conf);
+			try {
+
+				ClusterMetrics metrics = cluster.getClusterStatus();
+				return Math.max(metrics.getMapSlotCapacity() - metrics.getOccupiedMapSlots(), 0);
+			} finally {
+
+				cluster.close();
+			}
+		} catch (IOException e) {
+
+			System.out.println("[CostAwareInputFormat] no cluster metrics (" + e.getMessage() + "), using the number of slaves");
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+		}
+
+		return 0;
+	}
+
+	@Override
+	public List<InputSplit> getSplits(JobContext job) throws IOException {
+
+		Configuration conf = job.getConfiguration();
+		EvaluationCost cost = EvaluationCost.fromConf(conf);
+		List<FileStatus> files = new ArrayList<FileStatus>();
+		for(FileStatus status: listStatus(job)) {
+
+			if(status.getLen() > 0) {
+
+				files.add(status);
+			}
+		}
+
+		final double[] work = new double[files.size()];
+		Integer[] order = new Integer[files.size()];
+		for(int i = 0; i < work.length; i++) {
+
+			work[i] = predictWork(files.get(i), cost);
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer first, Integer second) {
+
+				return Double.compare(work[second], work[first]);
+			}
+		});
+
+		//Longest processing time first: every file goes to the split with the least work so far
+		int splitCount = Math.max(Math.min(getTargetSplits(conf), files.size()), 1);
+		List<List<Integer>> assigned = new ArrayList<List<Integer>>(splitCount);
+		double[] splitWork = new double[splitCount];
+		for(int i = 0; i < splitCount; i++) {
+
+			assigned.add(new ArrayList<Integer>());
+		}
+		for(Integer file: order) {
+
+			int lightest = 0;
+			for(int i = 1; i < splitCount; i++) {
+
+				if(splitWork[i] < splitWork[lightest]) {
+
+					lightest = i;
+				}
+			}
+			assigned.get(lightest).add(file);
+			splitWork[lightest] += work[file];
+		}
+
+		List<InputSplit> splits = new ArrayList<InputSplit>(splitCount);
+		for(List<Integer> split: assigned) {
+
+			if(!split.isEmpty()) {
+
+				splits.add(createSplit(conf, files, split));
+			}
+		}
+
+		return splits;
+	}
+
+	private double predictWork(FileStatus file, EvaluationCost cost) {
+
+		if(cost != null) {
+
+			Matcher matcher = COST_SUFFIX.matcher(file.getPath().getName());
+			if(matcher.find()) {
+
+				return cost.predict(Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)));
+			}
+		}
+
+		return file.getLen();
+	}
+
+	/**
+	 * The map slots recorded by the engine times {@link Constants#SPLITS_PER_SLOT}; the number of slaves
+	 * if the cluster did not report its slots.
+	 */
+	private int getTargetSplits(Configuration conf) {
+
+		int freeSlots = conf.getInt(Constants.MAP_SLOTS, 0);
+		if(freeSlots <= 0) {
+
+			freeSlots = conf.getInt(Constants.NUM_SLAVES, 1);
+		}
+
+		return freeSlots * Math.max(conf.getInt(Constants.SPLITS_PER_SLOT, DEFAULT_SPLITS_PER_SLOT), 1);
+	}
+
+	private CombineFileSplit createSplit(Configuration conf, List<FileStatus> files, List<Integer> split) throws IOException {
+
+		Path[] paths = new Path[split.size()];
+		long[] starts = new long[split.size()];
+		long[] lengths = new long[split.size()];
+		for(int i = 0; i < paths.length; i++) {
+
+			FileStatus file = files.get(split.get(i));
+			paths[i] = file.getPath();
+			lengths[i] = file.getLen();
+		}
+
+		//Prefer the hosts of the most expensive file, the first one assigned
+		FileStatus first = files.get(split.get(0));
+		FileSystem fs = first.getPath().getFileSystem(conf);
+		BlockLocation[] blocks = fs.getFileBlockLocations(first, 0, first.getLen());
+		String[] hosts = blocks.length > 0 ? blocks[0].getHosts() : new String[0];
+
+		return new CombineFileSplit(paths, starts, lengths, hosts);
+	}
+
+	/**
+	 * The files are only grouped, never split.
+	 */
+	@Override
+	protected boolean isSplitable(JobContext context, Path file) {
+
+		return false;
+	}
+}
@@ -4,15 +4,12 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -21,30 +18,38 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
 import org.apache.hadoop.mapreduce.lib.input.NLineInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
-import org.apache.mahout.common.HadoopUtil;
 import org.apache.mahout.common.StringUtils;
 import org.uncommons.watchmaker.framework.CandidateFactory;
 import org.uncommons.watchmaker.framework.EvaluatedCandidate;
 import org.uncommons.watchmaker.framework.EvolutionEngine;
 import org.uncommons.watchmaker.framework.EvolutionObserver;
-import org.uncommons.watchmaker.framework.EvolutionUtils;
 import org.uncommons.watchmaker.framework.EvolutionaryOperator;
 import org.uncommons.watchmaker.framework.FitnessEvaluator;
 import org.uncommons.watchmaker.framework.PopulationData;
 import org.uncommons.watchmaker.framework.SelectionStrategy;
 import org.uncommons.watchmaker.framework.TerminationCondition;
-import org.uncommons.watchmaker.framework.termination.GenerationCount;
 
+import ro.pub.ga.watchmaker.utils.CandidateCodecs;
+import ro.pub.ga.watchmaker.utils.EpochDirectories;
 import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
 import ro.pub.ga.watchmaker.utils.FSUtils;
+import ro.pub.ga.watchmaker.utils.FitnessStatistics;
+import ro.pub.ga.watchmaker.utils.IslandFitnessKey;
+import ro.pub.ga.watchmaker.utils.IslandSummary;
+import ro.pub.ga.watchmaker.utils.PopulationInputFormat;
+import ro.pub.ga.watchmaker.utils.PopulationOutputFormat;
 import ro.pub.ga.watchmaker.utils.PopulationWritable;
+import ro.pub.ga.watchmaker.utils.SideDataStore;
 
+import com.google.common.base.Preconditions;
 import com.google.gson.reflect.TypeToken;
 
 public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
@@ -57,7 +62,14 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
     private final Random rng;
     private final boolean doMigration;
     private FSUtils fsUtils;
+    private SideDataStore sideDataStore;
     private int slaveNumber;
+    //0 - the reducers read the whole population
+    private int reduceTopN;
+    private int taskThreads;
+    private int evaluationBatchSize;
+    private int fitnessCacheSize;
+    private DistributedFitnessPartitioner.Mode partitionerMode = DistributedFitnessPartitioner.Mode.ROUND_ROBIN;
     
     public enum EvolutionType {
     	
@@ -71,7 +83,8 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
     private String stringifiedSelectionStrategy;
     private String stringifiedCandidateFactory;
     private String stringifiedTerminationConditions;
-    private String stringifiedRNG;
+    //The root of the random streams of the tasks (see RandomStreams)
+    private final long randomSeed;
 
     public DistributedEvolutionEngine(CandidateFactory<T> candidateFactory,
                                        EvolutionaryOperator<T> evolutionScheme,
@@ -94,6 +107,10 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
         	
 			this.fsUtils = new FSUtils(FileSystem.get(new Configuration()));
 			this.slaveNumber = getNumberOfSlaves(confDirectory);
+
+			//Publish the datasets held by the components before they are serialized;
+			this.sideDataStore = new SideDataStore(FileSystem.get(new Configuration()), SideDataStore.DEFAULT_DIRECTORY);
+			sideDataStore.publish(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy);
 		} catch (IOException e) {
 			
 			e.printStackTrace();
@@ -105,7 +122,7 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
         this.stringifiedFitnessEvaluator = StringUtils.toString(fitnessEvaluator);
         this.stringifiedSelectionStrategy = StringUtils.toString(selectionStrategy);
         this.stringifiedCandidateFactory = StringUtils.toString(candidateFactory);
-        this.stringifiedRNG = StringUtils.toString(rng);
+        this.randomSeed = rng.nextLong();
     }
     
     
@@ -129,6 +146,10 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 		
 		this.fsUtils = new FSUtils(FileSystem.get(new Configuration()));
 		this.slaveNumber = slaves;
+
+		//Publish the datasets held by the components before they are serialized;
+		this.sideDataStore = new SideDataStore(FileSystem.get(new Configuration()), SideDataStore.DEFAULT_DIRECTORY);
+		sideDataStore.publish(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy);
 		} catch (IOException e) {
 		
 			e.printStackTrace();
@@ -140,7 +161,7 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 		this.stringifiedFitnessEvaluator = StringUtils.toString(fitnessEvaluator);
 		this.stringifiedSelectionStrategy = StringUtils.toString(selectionStrategy);
 		this.stringifiedCandidateFactory = StringUtils.toString(candidateFactory);
-		this.stringifiedRNG = StringUtils.toString(rng);
+		this.randomSeed = rng.nextLong();
 		
 		System.out.println(evolutionType);
 	}
@@ -194,7 +215,9 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
     	boolean terminate = false;
     	long startTime = System.currentTimeMillis();
     	int generation = 0;
+		//Only the candidates never scored go through the fitness mappers, the parents keep their fitness
 		List<T> population = new ArrayList<T>(seedCandidates);
+		List<EvaluatedCandidate<T>> evaluatedPopulation = new ArrayList<EvaluatedCandidate<T>>();
 		List<EvaluatedCandidate<T>> evolvedPopulation;
 		
 		double bestFitness = fitnessEvaluator.isNatural() ? Double.MIN_VALUE : Double.MAX_VALUE;
@@ -203,31 +226,29 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 		
 		do {
 			
-			//Get the configured job for the current generation to run
-	    	Job job = getJobForDistributedFitness(populationSize, input, output);		
 			fsUtils.mkdir("input");
 			fsUtils.delete("output");
 			
-			//Write the individuals to the input file for the mappers, each one on a separate line
+			//Write the individuals to evaluate to the input file for the mappers, each one on a separate line
 	    	writeIndividualsToFile(population, "input/population");
+	    	writeEvaluatedIndividualsToFiles(evaluatedPopulation, "input");
+	    	
+			//Get the configured job for the current generation to run
+	    	Job job = getJobForDistributedFitness(populationSize, input, output);		
+	    	RandomStreams.configure(job.getConfiguration(), randomSeed, generation);
 	    	
 	    	job.waitForCompletion(true);
+	    	System.out.println("Evaluations: " + job.getCounters().findCounter(IslandCounters.EVALUATIONS).getValue()
+	    			+ ", avoided by the fitness cache: " + job.getCounters().findCounter(IslandCounters.CACHE_HITS).getValue());
 	    	
 	    	//Receive the population of evaluated candidates, also containing the offsprings
 	    	evolvedPopulation = readAndMergePopulationPartitionsFromFiles("output");
 	    	
-	    	//Sort the population so the best individual is on position 0
-	    	if(fitnessEvaluator.isNatural()) {
-	    		
-	    		Collections.sort(evolvedPopulation, Collections.reverseOrder());
-	    	}
-	    	else {
-	    		
-	    		Collections.sort(evolvedPopulation);
-	    	}
+	    	//Keep the best populationSize individuals, the best one on position 0, without sorting the whole population
+	    	evolvedPopulation = FitnessStatistics.of(evolvedPopulation, fitnessEvaluator.isNatural(), populationSize).getTopCandidates();
 	    	
-	    	PopulationData<T> populationData = EvolutionUtils.getPopulationData(
-	    			evolvedPopulation.subList(0, populationSize), 
+	    	PopulationData<T> populationData = FitnessStatistics.getPopulationData(
+	    			evolvedPopulation, 
 	    			fitnessEvaluator.isNatural(), 
 	    			eliteCount, 
 	    			generation, 
@@ -262,11 +283,9 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 	    	}
 	    	
 	    	//Set the population for the next cycle, if the termination conditions are not met;
+	    	//the reducers evaluated the offsprings, so every survivor is already scored
 	    	population.clear();
-	    	for(int i = 0; i < populationSize; i++) {
-	    		
-	    		population.add(evolvedPopulation.get(i).getCandidate());
-	    	}
+	    	evaluatedPopulation = evolvedPopulation.subList(0, Math.min(populationSize, evolvedPopulation.size()));
 	    	
 	    	updateDistributedFitnessObservers(populationData);
 	    	
@@ -274,7 +293,7 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 		} while(!terminate);
     	
 		//Prepare the returned population
-		List<EvaluatedCandidate<T>> result = evolvedPopulation.subList(0, populationSize - 1);
+		List<EvaluatedCandidate<T>> result = evolvedPopulation.subList(0, Math.min(populationSize - 1, evolvedPopulation.size()));
 		
 		//Add the best candidate on the first position
 		result.add(0, new EvaluatedCandidate<T>(bestCandidate, bestFitness));
@@ -295,39 +314,62 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
     }
     
 
+	/**
+	 * The candidates to evaluate are read from {@code inpath/population} by the DistributedFitnessMapper,
+	 * the already evaluated ones from the {@code inpath/evaluated_*} files by the EvaluatedCandidateMapper.
+	 */
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public void configureJobForDistributedFitness(Job job,
 						            Configuration conf,
 						            int populationSize,
 						            Path inpath,
-						            Path outpath) {
+						            Path outpath) throws IOException {
     	
-    	conf.set("mapreduce.input.fileinputformat.inputdir", inpath.toString());
         conf.set("mapreduce.output.fileoutputformat.outputdir", outpath.toString());
-        conf.set(Constants.RANDOM_GENERATOR_PROPERTY, stringifiedRNG);
         conf.set(Constants.SELECTION_STRATEGY_PROPERTY, stringifiedSelectionStrategy);
         conf.set(Constants.FITNESS_EVALUATOR_PROPERTY, stringifiedFitnessEvaluator);
         conf.set(Constants.EVOLUTION_SCHEME_PROPERTY, stringifiedEvolutinScheme);
+        //Every reducer must keep at least its share of the population, or the population shrinks each generation
+        Preconditions.checkArgument(reduceTopN <= 0 || reduceTopN >= (populationSize + slaveNumber - 1) / slaveNumber, 
+        		"reduceTopN " + reduceTopN + " is below the share of a reducer, " + populationSize + " / " + slaveNumber);
+        conf.setInt(Constants.REDUCE_TOP_N, reduceTopN);
+        conf.setEnum(Constants.PARTITIONER_MODE, partitionerMode);
+        addSideDataToJob(job);
+        configureMapTasks(conf);
         
         //Set he N value for the NLineInputFormat
         conf.setInt("mapreduce.input.lineinputformat.linespermap", populationSize /slaveNumber); 
         
         TypeToken<EvaluatedCandidateWritable<T>> evalCandidateTypeToken = new TypeToken<EvaluatedCandidateWritable<T>>() {};
-        job.setMapOutputKeyClass(LongWritable.class);
+        job.setMapOutputKeyClass(IslandFitnessKey.class);
         job.setMapOutputValueClass(evalCandidateTypeToken.getRawType());
+        //group on the island only, the reducers receive the candidates ranked by fitness
+        job.setGroupingComparatorClass(IslandFitnessKey.IslandComparator.class);
         job.setOutputKeyClass(LongWritable.class);
         job.setOutputValueClass(Text.class);
         
         TypeToken<DistributedFitnessMapper<T>> mapperTypeToken = new TypeToken<DistributedFitnessMapper<T>>() {};
+        TypeToken<EvaluatedCandidateMapper<T>> evaluatedMapperTypeToken = new TypeToken<EvaluatedCandidateMapper<T>>() {};
         TypeToken<DistributedFitnessPartitioner<T>> partitionerTypeToken = new TypeToken<DistributedFitnessPartitioner<T>>() {};
         TypeToken<DistributedFitnessReducer<T>> reducerTypeToken = new TypeToken<DistributedFitnessReducer<T>>() {};
         
-        job.setMapperClass((Class<? extends Mapper>) mapperTypeToken.getRawType());
         job.setPartitionerClass((Class<? extends Partitioner>)partitionerTypeToken.getRawType());
         job.setReducerClass((Class<? extends Reducer>)reducerTypeToken.getRawType());
         job.setNumReduceTasks(slaveNumber); 
         
-        job.setInputFormatClass(NLineInputFormat.class);
+        conf.setBoolean(Constants.NATURAL_EVOLUTION, fitnessEvaluator.isNatural());
+        FileSystem fs = inpath.getFileSystem(conf);
+        Path population = new Path(inpath, "population");
+        if(fs.exists(population)) {
+        	
+        	MultipleInputs.addInputPath(job, population, NLineInputFormat.class, 
+        			(Class<? extends Mapper>) mapperTypeToken.getRawType());
+        }
+        for(FileStatus status: fs.globStatus(new Path(inpath, "evaluated_*"))) {
+        	
+        	MultipleInputs.addInputPath(job, status.getPath(), PopulationInputFormat.class, 
+        			(Class<? extends Mapper>) evaluatedMapperTypeToken.getRawType());
+        }
     }
 	 
 	 
@@ -342,55 +384,54 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
             TerminationCondition... conditions) throws ClassNotFoundException, IOException, InterruptedException {
     	
     	
-    	Path inputPath = new Path("input");
-    	Path outputPath = new Path("output");
+    	//Each job reads the islands where the previous job wrote them
+    	EpochDirectories epochs = new EpochDirectories(FileSystem.get(new Configuration()), EpochDirectories.DEFAULT_DIRECTORY);
     	long startTime = System.currentTimeMillis();
-    	int generationCount = getGenerationCount(conditions);
+    	int generationCount = IslandEvolution.getEpochGenerationCount(IslandEvolution.getGenerationCount(conditions));
     	EvaluatedCandidate<T> bestCandidate = null;
     	EvaluatedCandidate<T> crtBestCandidate;
-    	
-    	if(generationCount > 0) {
-    		
-    		for(int i = 5; i >= 1; i--) {
-    			
-    			if(generationCount / i >= 20) {
-    				
-    				generationCount /= i;
-    				break;
-    			}
-    		}
-    	}
-    	else {
-    		
-    		generationCount = 20;
-    	}
+    	int islandEliteCount = (int)Math.ceil(((double)eliteCount) / slaveNumber);
     	
     	Job job = Job.getInstance();
         job.setJarByClass(this.getClass());
 
         Configuration conf = job.getConfiguration();     
-        HadoopUtil.delete(conf, inputPath);
-        HadoopUtil.delete(conf, outputPath);
+        epochs.clear();
 
         PopulationWritable<T> population = new PopulationWritable<T>(new ArrayList<T>(seedCandidates));
-        writeSubpopulationsToFiles(splitPopulation(population, slaveNumber), "input");
+        writeSubpopulationsToFiles(splitPopulation(population, slaveNumber), epochs.getEpochDirectory(0).toString());
         
         //Epoch 1
-        configureJobForIslandEvolution(job, conf, eliteCount,startTime, 1, generationCount, populationSize / (5 * slaveNumber),inputPath, outputPath);
+        configureJobForIslandEvolution(job, conf, eliteCount,startTime, 1, generationCount, populationSize / (5 * slaveNumber),
+        		epochs.getInputPath(1), epochs.getEpochDirectory(1));
         
         job.waitForCompletion(true);
-        bestCandidate = StringUtils.fromString(fsUtils.readFromFile("output/best_candidate"));
-        updateIslandEvolutionObservers();
+        checkJobCounters(job, slaveNumber);
+        epochs.release(0);
+        
+        //The data of the population is merged from the summaries of the islands
+        IslandSummary<T> summary = IslandSummary.readSummaries(conf, epochs.getEpochDirectory(1), "summary_", slaveNumber);
+        PopulationData<T> populationData = summary.toPopulationData(islandEliteCount, generationCount, startTime);
+        bestCandidate = summary.getBestCandidate();
+        updateIslandEvolutionObservers(populationData);
         
         //Next iterations
         int epoch = 2;
-        while(!checkTerminationStatus()) {
+        while(!checkTerminationConditions(populationData)) {
         	
         	System.out.println("Epoch: " + epoch);
-        	Job newJob = prepareJob(epoch++, generationCount, eliteCount, populationSize / (5 * slaveNumber),startTime, conditions);
+        	Job newJob = prepareJob(epoch, generationCount, eliteCount, populationSize / (5 * slaveNumber),startTime, epochs, conditions);
         	newJob.waitForCompletion(true);
+        	checkJobCounters(newJob, slaveNumber);
+        	
+        	//The input of this epoch is no longer needed
+        	epochs.release(epoch - 1);
         	
-        	crtBestCandidate = StringUtils.fromString(fsUtils.readFromFile("output/best_candidate"));
+        	summary = IslandSummary.readSummaries(newJob.getConfiguration(), epochs.getEpochDirectory(epoch), "summary_", slaveNumber);
+        	populationData = summary.toPopulationData(islandEliteCount, epoch * generationCount, startTime);
+        	epoch++;
+        	
+        	crtBestCandidate = summary.getBestCandidate();
         	if(fitnessEvaluator.isNatural()) {
         		
         		if(crtBestCandidate.getFitness() > bestCandidate.getFitness()) {
@@ -406,10 +447,13 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
         		}
         	}
         	
-        	updateIslandEvolutionObservers();
+        	updateIslandEvolutionObservers(populationData);
         }
         
-        List<EvaluatedCandidate<T>> result = StringUtils.fromString(fsUtils.readFromFile("output/evolved_population"));
+        //The islands are gathered only once, at the end
+        List<EvaluatedCandidate<T>> result = PopulationInputFormat.readPopulations(conf, epochs.getEpochDirectory(epoch - 1), "subpopulation_");
+        epochs.close();
+        IslandEvolution.sortPopulation(result, fitnessEvaluator.isNatural());
         result.add(0, bestCandidate);
         result.remove(populationSize);
         
@@ -421,18 +465,16 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
     		int eliteCount,
     		int migrationCount,
     		long startTime,
+    		EpochDirectories epochs,
     		TerminationCondition... conditions) throws IOException {
     	
-    	Path inputPath = new Path("input");
-    	Path outputPath = new Path("output");
     	Job job = Job.getInstance();
         job.setJarByClass(this.getClass());
 
         Configuration conf = job.getConfiguration();
-
-        copyOutputToInput("output", "input");
         
-        configureJobForIslandEvolution(job, conf, eliteCount, startTime, epoch, generationCount, migrationCount, inputPath, outputPath);
+        configureJobForIslandEvolution(job, conf, eliteCount, startTime, epoch, generationCount, migrationCount, 
+        		epochs.getInputPath(epoch), epochs.getEpochDirectory(epoch));
         
         return job;
     }
@@ -455,9 +497,12 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 		conf.set(Constants.EVOLUTION_SCHEME_PROPERTY, stringifiedEvolutinScheme);
 		conf.set(Constants.FITNESS_EVALUATOR_PROPERTY, stringifiedFitnessEvaluator);
 		conf.set(Constants.SELECTION_STRATEGY_PROPERTY, stringifiedSelectionStrategy);
-		conf.set(Constants.RANDOM_GENERATOR_PROPERTY, stringifiedRNG);
+		addSideDataToJob(job);
+		RandomStreams.configure(conf, randomSeed, epoch);
 		conf.setInt(Constants.GENERATION_COUNT_PROPERTY, generationCount);
 		conf.setInt(Constants.ELITE_COUNT_PROPERTY, ((int)Math.ceil(((double)eliteCount) / slaveNumber)));
+		conf.setInt(Constants.NUM_SUBPOPULATIONS, slaveNumber);
+		configureMapTasks(conf);
 		conf.setBoolean(Constants.MIGRATION_PROPERTY, doMigration);
 		if(doMigration) {
 			
@@ -477,93 +522,67 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 		TypeToken<IslandEvolutionReducer<T>> reducerTypeToken = new TypeToken<IslandEvolutionReducer<T>>() {};
 		job.setMapperClass((Class<? extends Mapper>) mapperTypeToken.getRawType());
 		job.setReducerClass((Class<? extends Reducer>) reducerTypeToken.getRawType());
+		//One reducer per island; the island index hashes to itself
+		job.setNumReduceTasks(slaveNumber);
 		
-		
-		job.setInputFormatClass(TextInputFormat.class);
+		job.setInputFormatClass(PopulationInputFormat.class);
 
 	}
 	
-	private void updateIslandEvolutionObservers() {
+	private void updateIslandEvolutionObservers(PopulationData<T> populationData) {
 		
-		PopulationData<T> populationData = StringUtils.fromString(fsUtils.readFromFile("output/population_data"));
     	for(EvolutionObserver<? super T> observer: observers) {
     		
     		observer.populationUpdate(populationData);
     	}
 	}
 	
-	private void updateDistributedFitnessObservers(PopulationData<T> data) {
+	private void configureMapTasks(Configuration conf) {
 		
-		for(EvolutionObserver<? super T> observer: observers) {
-    		
-    		observer.populationUpdate(data);
-    	}
+		if(taskThreads > 0) {
+			
+			//Ask YARN for as many cores as the mapper uses
+			conf.setInt(Constants.TASK_THREADS, taskThreads);
+			conf.setInt(MRJobConfig.MAP_CPU_VCORES, taskThreads);
+		}
+		if(evaluationBatchSize > 0) {
+			
+			conf.setInt(Constants.EVALUATION_BATCH_SIZE, evaluationBatchSize);
+		}
+		conf.setInt(Constants.FITNESS_CACHE_SIZE, fitnessCacheSize);
 	}
 	
-	private int getGenerationCount(TerminationCondition[] conditions) {
+	/**
+	 * Checks, from the counters of a finished job, that every island was written back.
+	 */
+	private void checkJobCounters(Job job, int expectedIslands) throws IOException {
 		
-		int generationCount = -1;
-		
-		if(conditions == null || conditions.length == 0) {
+		Counters counters = job.getCounters();
+		long islands = counters.findCounter(IslandCounters.ISLANDS).getValue();
+		System.out.println("Islands: " + islands + ", individuals: " + counters.findCounter(IslandCounters.INDIVIDUALS).getValue()
+				+ ", evaluations: " + counters.findCounter(IslandCounters.EVALUATIONS).getValue()
+				+ ", avoided by the fitness cache: " + counters.findCounter(IslandCounters.CACHE_HITS).getValue());
+		if(islands != expectedIslands) {
 			
-			return -1;
+			throw new IOException("Expected " + expectedIslands + " islands, the job wrote " + islands);
 		}
+	}
+	
+	private void updateDistributedFitnessObservers(PopulationData<T> data) {
 		
-		//Get generation count if such termination condition is set;
-    	for(int i = 0; i < conditions.length; i++) {
+		for(EvolutionObserver<? super T> observer: observers) {
     		
-    		if(conditions[i] instanceof GenerationCount) {
-    			
-    			GenerationCount genCountCondition = (GenerationCount)conditions[i];
-    			Field[] fields = GenerationCount.class.getDeclaredFields();
-    			
-    			for(Field field: fields) {
-    				
-    				if("generationCount".equals(field.getName())) {
-    					
-    					field.setAccessible(true);
-    					try {
-							generationCount = field.getInt(genCountCondition);
-						} catch (IllegalArgumentException e) {
-							
-							e.printStackTrace();
-						} catch (IllegalAccessException e) {
-							
-							e.printStackTrace();
-						}
-    					
-    					break;
-    				}
-    			}
-    		}
+    		observer.populationUpdate(data);
     	}
-    	
-    	return generationCount;
-	}	
-	 
+	}
+	
 	 public List<PopulationWritable<T>> splitPopulation(PopulationWritable<T> population, int numberOfSplits) {
 		 
 		 List<PopulationWritable<T>> subpopulations = new ArrayList<PopulationWritable<T>>(numberOfSplits);
 		 
-		 int splitSize = population.getPopulation().size() / numberOfSplits;
-		 
-		 //Create the first numberOfSplits - 1 subpopulations;
-		 for(int i = 0; i < numberOfSplits; i++) {
-			 
-			 subpopulations.add(new PopulationWritable<T>());
-			 subpopulations.get(i).setData(population.getData());
-			 for(int j = 0; j < splitSize; j++) {
-				 
-				 subpopulations.get(i).getPopulation().add(population.getPopulation().get(i * splitSize + j));
-			 }
-		 }
-		 
-		 //Create the last subpopulation;
-		 //This is created separately because the populationSize might not divide exactly to the numberOfSplits;
-		 int processedCandidates = numberOfSplits * splitSize;
-		 for(int i = processedCandidates; i < population.getPopulation().size(); i++) {
+		 for(List<T> split: IslandEvolution.splitPopulation(population.getPopulation(), numberOfSplits)) {
 			 
-			 subpopulations.get(i - processedCandidates).getPopulation().add(population.getPopulation().get(i));
+			 subpopulations.add(new PopulationWritable<T>(split, population.getData()));
 		 }
  		 
 		 return subpopulations;
@@ -571,29 +590,20 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 	 
 	 public void writeSubpopulationsToFiles(List<PopulationWritable<T>> subpopulations, String inputFolder) {
 		 
-		 String subFolder = inputFolder;
+		 fsUtils.mkdir(inputFolder);
 		 
-		 File subDirectory = new File(subFolder);
-		 if(!subDirectory.exists()) {
-			 
-			 subDirectory.mkdir();
-		 } 
-		 else {
+		 //One block-compressed record per individual, the island index being the key
+		 try {
 			 
-			 try {
+			 Configuration conf = new Configuration();
+			 for(int i = 0; i < subpopulations.size(); i++) {
 				 
-				FileUtils.deleteDirectory(subDirectory);
-				FileUtils.forceMkdir(subDirectory);
-			} catch (IOException e) {
-				
-				e.printStackTrace();
-			}
-		 }
-		 
-		 for(int i = 0; i < subpopulations.size(); i++) {
-			 
-			subpopulations.get(i).putDataValue(Constants.POPULATION_INDEX_PARAMETER, i);
-			fsUtils.writeToFile(subDirectory.getPath() + "/subpopulation_" + i, StringUtils.toString(subpopulations.get(i)));
+				PopulationOutputFormat.writeCandidates(conf, new Path(inputFolder, "subpopulation_" + i), 
+						i, subpopulations.get(i).getPopulation());
+			 }
+		 } catch (IOException e) {
+			
+			e.printStackTrace();
 		 }
 	 }
 	 
@@ -607,36 +617,41 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 		 StringBuilder builder = new StringBuilder("");
 		 for(int i = 0; i < population.size(); i++) {
 			 
-			 builder.append(StringUtils.toString(population.get(i)) + "\n");
+			 builder.append(CandidateCodecs.toString(population.get(i)) + "\n");
 		 }
 		 
 		 fsUtils.writeToFile(outputFile, builder.toString());
 		 
 	 }
 	 
-	 @SuppressWarnings("unchecked")
+	 /**
+	  * Writes the evaluated individuals to {@code slaveNumber} population files, read in parallel
+	  * by the EvaluatedCandidateMappers.
+	  */
+	 public void writeEvaluatedIndividualsToFiles(List<EvaluatedCandidate<T>> population, String inputFolder) {
+		 
+		 try {
+			 
+			 Configuration conf = new Configuration();
+			 int files = Math.min(slaveNumber, population.size());
+			 for(int i = 0; i < files; i++) {
+				 
+				 PopulationOutputFormat.writePopulation(conf, new Path(inputFolder, "evaluated_" + i), 1,
+						 population.subList(i * population.size() / files, (i + 1) * population.size() / files));
+			 }
+		 } catch (IOException e) {
+			
+			e.printStackTrace();
+		 }
+	 }
+	 
 	 public List<EvaluatedCandidate<T>> readAndMergePopulationPartitionsFromFiles(String directory) {
 		
 		 List<EvaluatedCandidate<T>> population = new ArrayList<EvaluatedCandidate<T>>();
 		 
 		 try {
 			 
-			Path path = new Path(directory);
-			FileSystem fs = FileSystem.get(new Configuration());
-			RemoteIterator<LocatedFileStatus> fileIterator = fs.listFiles(path, false);
-			LocatedFileStatus fileStatus = null;
-			String data = null;
-			
-			while(fileIterator.hasNext()) {
-				
-				fileStatus = fileIterator.next();
-				
-				if(fileStatus.isFile() && fileStatus.getPath().getName().contains("partition")) {
-					
-					data = fsUtils.readFromFile(fileStatus.getPath().toString());
-					population.addAll((List<EvaluatedCandidate<T>>)StringUtils.fromString(data));
-				}
-			}
+			population = PopulationInputFormat.readPopulations(new Configuration(), new Path(directory), "partition");
 		 }	
 		 catch (IOException e) {
 				
@@ -646,7 +661,6 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 		return population;
 	 }
 	 
-	 @SuppressWarnings("unchecked")
 	 public List<PopulationWritable<T>> readSubpopulationsFromFiles(String inputFolder) {
 		 
 		 List<PopulationWritable<T>> subpopulations = new ArrayList<PopulationWritable<T>>();
@@ -654,18 +668,22 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 		 try {
 			 
 			Path path = new Path(inputFolder);
-			FileSystem fs = FileSystem.get(new Configuration());
+			Configuration conf = new Configuration();
+			FileSystem fs = FileSystem.get(conf);
 			RemoteIterator<LocatedFileStatus> fileIterator = fs.listFiles(path, false);
 			LocatedFileStatus fileStatus = null;
-			String data = null;
 			
 			while(fileIterator.hasNext()) {
 				
 				fileStatus = fileIterator.next();
 				if(fileStatus.isFile() && fileStatus.getPath().getName().contains("subpopulation")) {
 					
-					data = fsUtils.readFromFile(fileStatus.getPath().toString());
-					subpopulations.add((PopulationWritable<T>)StringUtils.fromString(data));
+					List<EvaluatedCandidate<T>> evaluatedPopulation = PopulationInputFormat.readPopulation(conf, fileStatus.getPath());
+					PopulationWritable<T> subpopulation = new PopulationWritable<T>(evaluatedPopulation, true);
+					String name = fileStatus.getPath().getName();
+					subpopulation.putDataValue(Constants.POPULATION_INDEX_PARAMETER, 
+							Integer.valueOf(name.substring(name.lastIndexOf('_') + 1)));
+					subpopulations.add(subpopulation);
 				}
 			}
 			
@@ -691,11 +709,14 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
     	return slaves;
     }
 	 
-	 private boolean checkTerminationStatus() {
+	 private boolean checkTerminationConditions(PopulationData<T> populationData) {
 		 
-		 String status = fsUtils.readFromFile("output/should_terminate");
+		 System.out.println("Best Candidate Fitness: " + populationData.getBestCandidateFitness());
 		 
-		 return Constants.TRUE.equals(status);
+		 //A fresh copy each epoch, as the reducer used to deserialize them from the job configuration
+		 List<TerminationCondition> conditions = StringUtils.fromString(stringifiedTerminationConditions);
+		 
+		 return IslandEvolution.shouldTerminate(populationData, conditions);
 	 }
 	 
 	 private void listDirectory(String directory) {
@@ -717,34 +738,12 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 		
 	 }
 	 
-	 private void copyOutputToInput(String outpath, String inpath) {
+	 private void addSideDataToJob(Job job) {
 		 
-		try {
-			
-			FileSystem fs = FileSystem.get(new Configuration());
-			
-			fs.delete(new Path(inpath), true);
-			fs.mkdirs(new Path(inpath));
-			
-	
-			FileStatus[] status = fs.listStatus(new Path(outpath));
-			
-			String data = null;
-			for(int i = 0; i < status.length; i++) {
-				
-				if(status[i].getPath().getName().startsWith("subpopulation_")) {
-					
-					data = fsUtils.readFromFile(status[i].getPath().toString());
-					fsUtils.writeToFile(inpath + "/" + status[i].getPath().getName(), data);
-				}
-			}
-			
-			fs.delete(new Path(outpath), true);
-		} catch(Exception e) {
-			
-			e.printStackTrace();
-		}
-
+		 if(sideDataStore != null) {
+			 
+			 sideDataStore.addToJob(job);
+		 }
 	 }
 	 
 	 public void displayTime(String message, long elapsedTime) {
@@ -765,6 +764,67 @@ public class DistributedEvolutionEngine<T> implements EvolutionEngine<T>{
 		return selectionStrategy;
 	}
 
+	public int getReduceTopN() {
+		return reduceTopN;
+	}
+
+	/**
+	 * Limits the reducers to the best {@code reduceTopN} candidates of their (ranked) input;
+	 * 0 disables the limit. The limit may not be lower than the share of a reducer, 
+	 * populationSize / slaveNumber rounded up, checked when the job is configured.
+	 */
+	public void setReduceTopN(int reduceTopN) {
+		this.reduceTopN = reduceTopN;
+	}
+
+	public DistributedFitnessPartitioner.Mode getPartitionerMode() {
+		return partitionerMode;
+	}
+
+	/**
+	 * Sets how the evaluated candidates are spread over the breeding reducers of the distributed fitness
+	 * model; ROUND_ROBIN, the default, gives every reducer an equal share of the fitness range.
+	 */
+	public void setPartitionerMode(DistributedFitnessPartitioner.Mode partitionerMode) {
+		this.partitionerMode = partitionerMode;
+	}
+
+	public int getTaskThreads() {
+		return taskThreads;
+	}
+
+	/**
+	 * Sets the threads of each mapper, used to evolve the islands of its split concurrently
+	 * and to evaluate the fitness; 0 uses the virtual cores configured for the map containers.
+	 */
+	public void setTaskThreads(int taskThreads) {
+		this.taskThreads = taskThreads;
+	}
+
+	public int getEvaluationBatchSize() {
+		return evaluationBatchSize;
+	}
+
+	/**
+	 * Sets the number of candidates a fitness mapper evaluates together;
+	 * 0 uses BatchEvaluation.DEFAULT_BATCH_SIZE.
+	 */
+	public void setEvaluationBatchSize(int evaluationBatchSize) {
+		this.evaluationBatchSize = evaluationBatchSize;
+	}
+
+	public int getFitnessCacheSize() {
+		return fitnessCacheSize;
+	}
+
+	/**
+	 * Sets the entries of the fitness cache of each task (see CachingFitnessEvaluator); 0, the default,
+	 * disables the cache. Only for evaluators whose fitness does not depend on the rest of the population.
+	 */
+	public void setFitnessCacheSize(int fitnessCacheSize) {
+		this.fitnessCacheSize = fitnessCacheSize;
+	}
+
 	@Override
 	public T evolve(int populationSize, int eliteCount,
 			TerminationCondition... conditions) {
@@ -3,18 +3,18 @@ package ro.pub.ga.watchmaker.core;
 import java.io.IOException;
 import java.util.Iterator;
 
-import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.Reducer;
 
 import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
+import ro.pub.ga.watchmaker.utils.IslandFitnessKey;
 
-public class DistributedFitnessCombiner<T> extends Reducer<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, EvaluatedCandidateWritable<T>>{
+public class DistributedFitnessCombiner<T> extends Reducer<IslandFitnessKey, EvaluatedCandidateWritable<T>, IslandFitnessKey, EvaluatedCandidateWritable<T>>{
 
 	@Override
 	protected void reduce(
-			LongWritable arg0,
+			IslandFitnessKey arg0,
 			Iterable<EvaluatedCandidateWritable<T>> arg1,
-			Reducer<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, EvaluatedCandidateWritable<T>>.Context arg2)
+			Reducer<IslandFitnessKey, EvaluatedCandidateWritable<T>, IslandFitnessKey, EvaluatedCandidateWritable<T>>.Context arg2)
 			throws IOException, InterruptedException {
 		
 		Iterator<EvaluatedCandidateWritable<T>> iterator = arg1.iterator();
@@ -18,6 +18,10 @@
 package ro.pub.ga.watchmaker.core;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
@@ -26,25 +30,30 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.mahout.common.StringUtils;
 import org.uncommons.watchmaker.framework.FitnessEvaluator;
 
+import ro.pub.ga.watchmaker.utils.CandidateCodecs;
 import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
+import ro.pub.ga.watchmaker.utils.IslandFitnessKey;
 
 import com.google.common.base.Preconditions;
 
 /**
  * <p>
  * Generic Mapper class for fitness evaluation. Works with the following :
- * {@code <key, candidate, key, fitness>}
+ * {@code <key, candidate, (island, fitness), fitness>}
  * , where :
  * </p>
  * key: position of the current candidate in the input file. <br>
  * candidate: candidate solution to evaluate. <br>
  * fitness: evaluated fitness for the given candidate.
  */
-public class DistributedFitnessMapper<T> extends Mapper<LongWritable,Text,LongWritable, EvaluatedCandidateWritable<T>> {
+public class DistributedFitnessMapper<T> extends Mapper<LongWritable,Text,IslandFitnessKey, EvaluatedCandidateWritable<T>> {
     
 	  private FitnessEvaluator<Object> evaluator;
 	  private Integer numIndividuals;
-	  private final LongWritable ONE = new LongWritable(1);
+	  private final IslandFitnessKey outputKey = new IslandFitnessKey();
+	  private int batchSize;
+	  private ForkJoinPool pool;
+	  private final EvaluationCost.Recorder costRecorder = new EvaluationCost.Recorder();
 	  
 	  @Override
 	  public void setup(Context context) throws IOException, InterruptedException {
@@ -53,29 +62,81 @@ public class DistributedFitnessMapper<T> extends Mapper<LongWritable,Text,LongWr
 	    String evlstr = conf.get(Constants.FITNESS_EVALUATOR_PROPERTY);
 	    Preconditions.checkArgument(evlstr != null, "'FITNESS_EVALUATOR_PROPERTY' job parameter not found");
 	    
-	    evaluator = StringUtils.fromString(evlstr);
+	    evaluator = BatchEvaluation.withCache(StringUtils.<FitnessEvaluator<Object>>fromString(evlstr), conf);
 	    numIndividuals = 0;
+	    batchSize = BatchEvaluation.getBatchSize(conf);
+	    pool = BatchEvaluation.createPool(conf);
 	    
 	    super.setup(context);
 	  }
+	  
+	  /**
+	   * Reads the records in batches of {@code batchSize}; each batch is decoded and evaluated
+	   * on the threads of the task, then written in the order it was read.
+	   */
+	  @Override
+	  public void run(Context context) throws IOException, InterruptedException {
+		  
+		  setup(context);
+		  try {
+			  
+			  List<String> batch = new ArrayList<String>(batchSize);
+			  while(context.nextKeyValue()) {
+				  
+				  //the Text value is reused by the record reader, keep a copy
+				  batch.add(context.getCurrentValue().toString());
+				  if(batch.size() == batchSize) {
+					  
+					  evaluateBatch(batch, context);
+					  batch.clear();
+				  }
+			  }
+			  evaluateBatch(batch, context);
+		  } finally {
+			  
+			  cleanup(context);
+		  }
+	  }
   
 	  @Override
 	  public void map(LongWritable key,
 	                  Text value,
 	                  Context context) throws IOException, InterruptedException {
 		  
-		  T candidate = StringUtils.fromString(value.toString());
-		  double fitness = evaluator.getFitness(candidate, null);
-		  context.write(ONE, new EvaluatedCandidateWritable<T>(candidate, fitness));
-		  numIndividuals++;
+		  evaluateBatch(Collections.singletonList(value.toString()), context);
+	  }
+	  
+	  private void evaluateBatch(List<String> batch, Context context) throws IOException, InterruptedException {
+		  
+		  if(batch.isEmpty()) {
+			  
+			  return;
+		  }
+		  
+		  List<T> candidates = BatchEvaluation.decode(batch, pool);
+		  double[] fitness = BatchEvaluation.evaluate(evaluator, candidates, pool, costRecorder);
+		  BatchEvaluation.countEvaluations(evaluator, context, candidates.size());
+		  for(int i = 0; i < fitness.length; i++) {
+			  
+			  //a single island; the fitness in the key makes the shuffle rank the candidates
+			  outputKey.set(1, fitness[i], evaluator.isNatural());
+			  context.write(outputKey, new EvaluatedCandidateWritable<T>(candidates.get(i), fitness[i]));
+		  }
+		  numIndividuals += candidates.size();
 	  }
 	  
 	  @Override
 		protected void cleanup(
-				Mapper<LongWritable, Text, LongWritable, EvaluatedCandidateWritable<T>>.Context context)
+				Mapper<LongWritable, Text, IslandFitnessKey, EvaluatedCandidateWritable<T>>.Context context)
 				throws IOException, InterruptedException {
 			// TODO Auto-generated method stub
 			super.cleanup(context);
+			BatchEvaluation.reportCache(evaluator, context);
+			costRecorder.report(context);
+			if(pool != null) {
+				
+				pool.shutdown();
+			}
 			java.net.InetAddress localMachine = java.net.InetAddress.getLocalHost();
 			System.out.println("[" + localMachine.getHostName() +"]Number of processed individuals: " + numIndividuals);
 		}
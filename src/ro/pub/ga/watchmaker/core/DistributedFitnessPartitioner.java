@@ -3,21 +3,44 @@ package ro.pub.ga.watchmaker.core;
 import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.Partitioner;
-import org.apache.mahout.common.StringUtils;
 
 import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
+import ro.pub.ga.watchmaker.utils.IslandFitnessKey;
 
-public class DistributedFitnessPartitioner<T> extends Partitioner<LongWritable, EvaluatedCandidateWritable<T>> implements org.apache.hadoop.conf.Configurable{
+/**
+ * Spreads the evaluated candidates over the breeding reducers, according to {@link Constants#PARTITIONER_MODE}.
+ */
+public class DistributedFitnessPartitioner<T> extends Partitioner<IslandFitnessKey, EvaluatedCandidateWritable<T>> implements org.apache.hadoop.conf.Configurable{
 
+	public enum Mode {
+		
+		//A random reducer per candidate, drawn from the stream of the map task
+		RANDOM,
+		//The candidates of a map task are dealt in turn, starting from a reducer given by the task index: the
+		//reducers receive the same number of candidates (one more at most per task) and, since the evaluated
+		//candidates are written best first, candidates from the whole fitness range
+		ROUND_ROBIN
+	}
+	
 	private Configuration conf;
 	private Random rng;
+	private Mode mode;
+	private int next;
 	
 	@Override
-	public int getPartition(LongWritable key,
+	public int getPartition(IslandFitnessKey key,
 			EvaluatedCandidateWritable<T> value, int numPartitions) {
 		
+		if(mode == Mode.ROUND_ROBIN) {
+			
+			int partition = next % numPartitions;
+			next = partition + 1;
+			
+			return partition;
+		}
+		
 		return rng.nextInt(numPartitions);
 	}
 
@@ -25,7 +48,10 @@ public class DistributedFitnessPartitioner<T> extends Partitioner<LongWritable,
 	public void setConf(Configuration conf) {
 
 		this.conf = conf;
-		rng = StringUtils.fromString(conf.get(Constants.RANDOM_GENERATOR_PROPERTY));
+		rng = RandomStreams.forTask(conf, RandomStreams.PARTITIONER);
+		mode = conf.getEnum(Constants.PARTITIONER_MODE, Mode.RANDOM);
+		//the index of the map task
+		next = Math.max(conf.getInt(MRJobConfig.TASK_PARTITION, 0), 0);
 	}
 
 	@Override
@@ -8,6 +8,7 @@ import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -17,21 +18,25 @@ import org.uncommons.watchmaker.framework.EvolutionaryOperator;
 import org.uncommons.watchmaker.framework.FitnessEvaluator;
 import org.uncommons.watchmaker.framework.SelectionStrategy;
 
+import ro.pub.ga.watchmaker.utils.CachingFitnessEvaluator;
 import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
 import ro.pub.ga.watchmaker.utils.FSUtils;
+import ro.pub.ga.watchmaker.utils.IslandFitnessKey;
+import ro.pub.ga.watchmaker.utils.PopulationOutputFormat;
 
 import com.google.common.base.Preconditions;
 
-public class DistributedFitnessReducer<T> extends Reducer<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, Text> {
+public class DistributedFitnessReducer<T> extends Reducer<IslandFitnessKey, EvaluatedCandidateWritable<T>, LongWritable, Text> {
 	
 	private SelectionStrategy<T> selectionStrategy;
 	private FitnessEvaluator<T> fitnessEvaluator;
 	private EvolutionaryOperator<T> evolutionaryOperator;
 	private Random rng;
+	private int topN;
 	
 	@Override
 	protected void setup(
-			Reducer<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, Text>.Context context)
+			Reducer<IslandFitnessKey, EvaluatedCandidateWritable<T>, LongWritable, Text>.Context context)
 			throws IOException, InterruptedException {
 		
 		String stringifiedProperty = null;
@@ -45,36 +50,42 @@ public class DistributedFitnessReducer<T> extends Reducer<LongWritable, Evaluate
 		//Get the fitnessEvaluator attribute;
 		stringifiedProperty = conf.get(Constants.FITNESS_EVALUATOR_PROPERTY);
 		Preconditions.checkArgument(stringifiedProperty != null, "'FITNESS_EVALUATOR_PROPERTY' job parameter not found");
-		this.fitnessEvaluator = StringUtils.fromString(stringifiedProperty);
+		this.fitnessEvaluator = BatchEvaluation.withCache(StringUtils.<FitnessEvaluator<T>>fromString(stringifiedProperty), conf);
 		
 		//Get the evolutionScheme attribute;
 		stringifiedProperty = conf.get(Constants.EVOLUTION_SCHEME_PROPERTY);
 		Preconditions.checkArgument(stringifiedProperty != null, "'EVOLUTION_SCHEME_PROPERTY' job parameter not found");
 		this.evolutionaryOperator = StringUtils.fromString(stringifiedProperty);
 		
-		//Get the rng attribute;
-		stringifiedProperty = conf.get(Constants.RANDOM_GENERATOR_PROPERTY);
-		Preconditions.checkArgument(stringifiedProperty != null, "'RANDOM_GENERATOR_PROPERTY' job parameter not found");
-		this.rng = StringUtils.fromString(stringifiedProperty);
+		//The stream of this reducer in the current generation
+		this.rng = RandomStreams.forTask(conf, RandomStreams.REDUCER);
+		
+		//The candidates arrive ranked, best first; only the first topN are read
+		this.topN = conf.getInt(Constants.REDUCE_TOP_N, 0);
 
 		super.setup(context);
 	}
 
 	@Override
 	protected void reduce(
-			LongWritable arg0,
+			IslandFitnessKey arg0,
 			Iterable<EvaluatedCandidateWritable<T>> arg1,
-			Reducer<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, Text>.Context arg2)
+			Reducer<IslandFitnessKey, EvaluatedCandidateWritable<T>, LongWritable, Text>.Context arg2)
 			throws IOException, InterruptedException {
 		
 		List<EvaluatedCandidate<T>> population = new ArrayList<EvaluatedCandidate<T>>();
 		Iterator<EvaluatedCandidateWritable<T>> iterator = arg1.iterator();
 		EvaluatedCandidateWritable<T> crtCandidate;
 		
-		while(iterator.hasNext()) {
+		while(iterator.hasNext() && (topN <= 0 || population.size() < topN)) {
 			
 			crtCandidate = iterator.next();
 			population.add(new EvaluatedCandidate<T>(crtCandidate.getCandidate(), crtCandidate.getFitness()));
+			//The offsprings identical to a parent take its fitness from the cache
+			if(fitnessEvaluator instanceof CachingFitnessEvaluator) {
+				
+				((CachingFitnessEvaluator<T>)fitnessEvaluator).remember(crtCandidate.getCandidate(), crtCandidate.getFitness());
+			}
 		}
 		
 		int parentsNumber = Math.max(population.size() / 2, 2);
@@ -97,12 +108,24 @@ public class DistributedFitnessReducer<T> extends Reducer<LongWritable, Evaluate
 			);
 		}
 		
+		BatchEvaluation.countEvaluations(fitnessEvaluator, arg2, offsprings.size());
 		population.addAll(evaluatedOffsprings);
 		
 		FSUtils fsUtils = new FSUtils(FileSystem.get(arg2.getConfiguration()));
 		fsUtils.mkdir("output", false);
 		//System.out.println("writing to " + "output/partition_" + arg2.getTaskAttemptID().getTaskID());
-		fsUtils.writeToFile("output/partition_" + arg2.getTaskAttemptID().getTaskID(), StringUtils.toString(population));
+		PopulationOutputFormat.writePopulation(arg2.getConfiguration(), 
+				new Path("output/partition_" + arg2.getTaskAttemptID().getTaskID()), 
+				arg2.getTaskAttemptID().getTaskID().getId(), population);
+	}
+	
+	@Override
+	protected void cleanup(
+			Reducer<IslandFitnessKey, EvaluatedCandidateWritable<T>, LongWritable, Text>.Context context)
+			throws IOException, InterruptedException {
+		
+		BatchEvaluation.reportCache(fitnessEvaluator, context);
+		super.cleanup(context);
 	}
 	
 }
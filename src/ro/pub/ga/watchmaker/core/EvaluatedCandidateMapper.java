@@ -0,0 +1,36 @@
+package ro.pub.ga.watchmaker.core;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
+import ro.pub.ga.watchmaker.utils.IslandFitnessKey;
+
+/**
+ * Forwards the individuals whose fitness is already known (the parents carried over from the previous
+ * generation) to the {@link DistributedFitnessReducer}, with the same keys as the
+ * {@link DistributedFitnessMapper}, so only the candidates never scored before are evaluated.
+ */
+public class EvaluatedCandidateMapper<T> extends Mapper<LongWritable, EvaluatedCandidateWritable<T>, IslandFitnessKey, EvaluatedCandidateWritable<T>> {
+
+	private boolean natural;
+	private final IslandFitnessKey outputKey = new IslandFitnessKey();
+
+	@Override
+	protected void setup(Context context) throws IOException, InterruptedException {
+
+		natural = context.getConfiguration().getBoolean(Constants.NATURAL_EVOLUTION, true);
+		super.setup(context);
+	}
+
+	@Override
+	protected void map(LongWritable key, EvaluatedCandidateWritable<T> value, Context context)
+			throws IOException, InterruptedException {
+
+		//a single island, as in the DistributedFitnessMapper
+		outputKey.set(1, value.getFitness(), natural);
+		context.write(outputKey, value);
+	}
+}
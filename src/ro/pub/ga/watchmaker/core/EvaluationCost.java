@@ -0,0 +1,161 @@
+package ro.pub.ga.watchmaker.core;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.uncommons.maths.binary.BitString;
+
+/**
+ * Linear model of the time needed to evaluate candidates: {@code perCandidate * n + perUnit * x}
+ * microseconds for n candidates of total size x, the size of a candidate being the length of a list
+ * (the operations of a schedule, the centers of a clustering) or the set bits of a bit string (the
+ * selected features). The fitness mappers time every evaluated chunk with a {@link Recorder}; the driver
+ * fits the model on the job counters and passes it to the next job through the configuration, where the
+ * {@link CostAwareInputFormat} uses it to build splits of equal predicted work.
+ */
+public class EvaluationCost {
+
+	private final double perCandidate;
+	private final double perUnit;
+
+	public EvaluationCost(double perCandidate, double perUnit) {
+
+		this.perCandidate = perCandidate;
+		this.perUnit = perUnit;
+	}
+
+	/**
+	 * The size a candidate is charged for; 1 for the candidates that are neither lists nor bit strings.
+	 */
+	public static long sizeOf(Object candidate) {
+
+		if(candidate instanceof Collection) {
+
+			return ((Collection<?>)candidate).size();
+		}
+		if(candidate instanceof BitString) {
+
+			return ((BitString)candidate).countSetBits();
+		}
+
+		return 1;
+	}
+
+	public static long sizeOf(List<?> candidates) {
+
+		long size = 0;
+		for(Object candidate: candidates) {
+
+			size += sizeOf(candidate);
+		}
+
+		return size;
+	}
+
+	/**
+	 * @return the predicted time, in microseconds, to evaluate {@code candidates} candidates of total size {@code size}
+	 */
+	public double predict(long candidates, long size) {
+
+		return perCandidate * candidates + perUnit * size;
+	}
+
+	public double getPerCandidate() {
+
+		return perCandidate;
+	}
+
+	public double getPerUnit() {
+
+		return perUnit;
+	}
+
+	public void configure(Configuration conf) {
+
+		conf.setDouble(Constants.COST_PER_CANDIDATE, perCandidate);
+		conf.setDouble(Constants.COST_PER_UNIT, perUnit);
+	}
+
+	/**
+	 * @return the model set by {@link #configure}, or null if the job has none
+	 */
+	public static EvaluationCost fromConf(Configuration conf) {
+
+		if(conf.get(Constants.COST_PER_CANDIDATE) == null) {
+
+			return null;
+		}
+
+		return new EvaluationCost(conf.getDouble(Constants.COST_PER_CANDIDATE, 0), conf.getDouble(Constants.COST_PER_UNIT, 0));
+	}
+
+	/**
+	 * Least-squares fit of the model on the chunks timed during a job.
+	 *
+	 * @return the fitted model, or null if no chunk was timed
+	 */
+	public static EvaluationCost fit(Counters counters) {
+
+		double nn = counters.findCounter(IslandCounters.COST_NN).getValue();
+		double nx = counters.findCounter(IslandCounters.COST_NX).getValue();
+		double xx = counters.findCounter(IslandCounters.COST_XX).getValue();
+		double ny = counters.findCounter(IslandCounters.COST_NY).getValue();
+		double xy = counters.findCounter(IslandCounters.COST_XY).getValue();
+		if(nn == 0) {
+
+			return null;
+		}
+
+		double determinant = nn * xx - nx * nx;
+		if(determinant > 1e-9 * nn * xx) {
+
+			double perCandidate = (ny * xx - xy * nx) / determinant;
+			double perUnit = (xy * nn - ny * nx) / determinant;
+			if(perCandidate >= 0 && perUnit >= 0) {
+
+				return new EvaluationCost(perCandidate, perUnit);
+			}
+		}
+
+		//Candidates of the same size, or too noisy timings: an average time per candidate
+		return new EvaluationCost(ny / nn, 0);
+	}
+
+	/**
+	 * Accumulates the timed chunks of a task; safe to use from the threads of the task.
+	 */
+	public static class Recorder {
+
+		private long nn;
+		private long nx;
+		private long xx;
+		private long ny;
+		private long xy;
+
+		/**
+		 * @param candidates - the number of candidates evaluated together
+		 * @param size - their total size
+		 * @param micros - the time their evaluation took
+		 */
+		public synchronized void add(long candidates, long size, long micros) {
+
+			nn += candidates * candidates;
+			nx += candidates * size;
+			xx += size * size;
+			ny += candidates * micros;
+			xy += size * micros;
+		}
+
+		public synchronized void report(TaskAttemptContext context) {
+
+			context.getCounter(IslandCounters.COST_NN).increment(nn);
+			context.getCounter(IslandCounters.COST_NX).increment(nx);
+			context.getCounter(IslandCounters.COST_XX).increment(xx);
+			context.getCounter(IslandCounters.COST_NY).increment(ny);
+			context.getCounter(IslandCounters.COST_XY).increment(xy);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package ro.pub.ga.watchmaker.core;
+
+/**
+ * Job counters published by the mappers and reducers of the engines. The driver reads them from the
+ * finished job, without touching the file system, to check that every island reported back and to
+ * follow the number of fitness evaluations.
+ */
+public enum IslandCounters {
+
+	//Islands (subpopulations) written by the reducers
+	ISLANDS,
+	//Individuals in the islands written by the reducers
+	INDIVIDUALS,
+	//Calls of the fitness evaluator; behind a fitness cache, its misses
+	EVALUATIONS,
+	//Requested fitness values found in the fitness cache, i.e. evaluations avoided
+	CACHE_HITS,
+	//Requested fitness values the cache did not hold
+	CACHE_MISSES,
+	//Least-squares sums of the timed evaluation chunks (candidates n, size x, microseconds y), see EvaluationCost
+	COST_NN,
+	COST_NX,
+	COST_XX,
+	COST_NY,
+	COST_XY,
+	//Fitness values estimated on a sample of the data, and the sum of the relative half-widths of their
+	//95% confidence intervals, in parts per million
+	SAMPLED_EVALUATIONS,
+	SAMPLE_BOUND_PPM
+}
@@ -0,0 +1,349 @@
+package ro.pub.ga.watchmaker.core;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+
+import org.uncommons.watchmaker.framework.CandidateFactory;
+import org.uncommons.watchmaker.framework.EvaluatedCandidate;
+import org.uncommons.watchmaker.framework.EvolutionObserver;
+import org.uncommons.watchmaker.framework.EvolutionaryOperator;
+import org.uncommons.watchmaker.framework.FitnessEvaluator;
+import org.uncommons.watchmaker.framework.GenerationalEvolutionEngine;
+import org.uncommons.watchmaker.framework.PopulationData;
+import org.uncommons.watchmaker.framework.SelectionStrategy;
+import org.uncommons.watchmaker.framework.TerminationCondition;
+import org.uncommons.watchmaker.framework.termination.GenerationCount;
+
+/**
+ * The steps of the island model shared by the MapReduce implementation
+ * ({@link IslandEvolutionMapper} / {@link IslandEvolutionReducer}) and the in-process one
+ * ({@link LocalIslandEvolutionEngine}): evolving an island for an epoch, choosing the migrants,
+ * the ring migration and the termination check.
+ */
+public final class IslandEvolution {
+
+	private IslandEvolution() {
+
+	}
+
+	/**
+	 * Evolves one island for an epoch with a single threaded GenerationalEvolutionEngine.
+	 * The epoch ends after {@code generationCount} generations or when one of the conditions is met.
+	 *
+	 * @param observer - may be null
+	 */
+	public static <T> List<EvaluatedCandidate<T>> evolveIsland(
+			CandidateFactory<T> candidateFactory,
+			EvolutionaryOperator<T> evolutionScheme,
+			FitnessEvaluator<? super T> fitnessEvaluator,
+			SelectionStrategy<? super T> selectionStrategy,
+			Random rng,
+			List<T> population,
+			int eliteCount,
+			int generationCount,
+			List<TerminationCondition> conditions,
+			EvolutionObserver<? super T> observer) {
+
+		return evolveIsland(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng, population,
+				eliteCount, generationCount, conditions, null, observer);
+	}
+
+	/**
+	 * Evolves one island for an epoch, evaluating the fitness on {@code evaluationPool}.
+	 *
+	 * @param evaluationPool - may be null, the island is then evolved on the calling thread
+	 * @param observer - may be null
+	 */
+	public static <T> List<EvaluatedCandidate<T>> evolveIsland(
+			CandidateFactory<T> candidateFactory,
+			EvolutionaryOperator<T> evolutionScheme,
+			FitnessEvaluator<? super T> fitnessEvaluator,
+			SelectionStrategy<? super T> selectionStrategy,
+			Random rng,
+			List<T> population,
+			int eliteCount,
+			int generationCount,
+			List<TerminationCondition> conditions,
+			ForkJoinPool evaluationPool,
+			EvolutionObserver<? super T> observer) {
+
+		GenerationalEvolutionEngine<T> engine = createEngine(candidateFactory, evolutionScheme, fitnessEvaluator,
+				selectionStrategy, rng, evaluationPool);
+		if(observer != null) {
+
+			engine.addEvolutionObserver(observer);
+		}
+
+		List<TerminationCondition> epochConditions = new ArrayList<TerminationCondition>(conditions);
+		epochConditions.add(new GenerationCount(generationCount));
+
+		return engine.evolvePopulation(
+				population.size(),
+				eliteCount, population,
+				epochConditions.toArray(new TerminationCondition[epochConditions.size()]));
+	}
+
+	/**
+	 * Creates the engine evolving an island. Watchmaker's own multi-threaded mode evaluates on a shared pool
+	 * with one thread per processor of the machine; here the evaluation runs on {@code evaluationPool}, which
+	 * is sized from the cores granted to the task.
+	 *
+	 * @param evaluationPool - may be null for a single threaded engine
+	 */
+	public static <T> GenerationalEvolutionEngine<T> createEngine(
+			CandidateFactory<T> candidateFactory,
+			EvolutionaryOperator<T> evolutionScheme,
+			FitnessEvaluator<? super T> fitnessEvaluator,
+			SelectionStrategy<? super T> selectionStrategy,
+			Random rng,
+			ForkJoinPool evaluationPool) {
+
+		if(evaluationPool == null || evaluationPool.getParallelism() < 2) {
+
+			GenerationalEvolutionEngine<T> engine = new GenerationalEvolutionEngine<T>(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng);
+			engine.setSingleThreaded(true);
+
+			return engine;
+		}
+
+		return new PooledEvolutionEngine<T>(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng, evaluationPool);
+	}
+
+	/**
+	 * The number of threads a task may use: {@link Constants#TASK_THREADS} if set,
+	 * otherwise the virtual cores of a map container.
+	 */
+	public static int getTaskThreads(Configuration conf) {
+
+		int threads = conf.getInt(Constants.TASK_THREADS, 0);
+		if(threads <= 0) {
+
+			threads = conf.getInt(MRJobConfig.MAP_CPU_VCORES, MRJobConfig.DEFAULT_MAP_CPU_VCORES);
+		}
+
+		return Math.max(threads, 1);
+	}
+
+	/**
+	 * Removes {@code count} random individuals from the population and returns them.
+	 */
+	public static <T> List<EvaluatedCandidate<T>> selectMigrators(List<EvaluatedCandidate<T>> population, int count, Random rng) {
+
+		List<EvaluatedCandidate<T>> migrators = new ArrayList<EvaluatedCandidate<T>>();
+
+		int counter = count;
+		int index;
+		while(counter > 0) {
+
+			index = rng.nextInt(population.size());
+			migrators.add(population.remove(index));
+			counter--;
+		}
+
+		return migrators;
+	}
+
+	/**
+	 * Index of the island that receives the migrants of {@code island}: the ring goes backwards,
+	 * island i receiving the migrants of island i + 1.
+	 */
+	public static int getMigrationTarget(int island, int islandCount) {
+
+		return (island == 0) ? islandCount - 1 : island - 1;
+	}
+
+	/**
+	 * Performs the ring migration; {@code populations} and {@code migrators} are indexed by island.
+	 */
+	public static <T> void performMigration(List<List<EvaluatedCandidate<T>>> populations, List<List<EvaluatedCandidate<T>>> migrators) {
+
+		for(int i = 0; i < migrators.size(); i++) {
+
+			if(migrators.get(i) != null) {
+
+				populations.get(getMigrationTarget(i, populations.size())).addAll(migrators.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Sorts the population so that the best candidate is on the first position.
+	 */
+	public static <T> void sortPopulation(List<EvaluatedCandidate<T>> population, boolean natural) {
+
+		if (natural) { // Descending values for natural fitness.
+
+			Collections.sort(population, Collections.reverseOrder());
+		} else { // Ascending values for non-natural fitness.
+
+			Collections.sort(population);
+		}
+	}
+
+	/**
+	 * Checks the termination conditions against the data of the merged population.
+	 */
+	public static <T> boolean shouldTerminate(PopulationData<T> populationData, List<TerminationCondition> conditions) {
+
+		for(TerminationCondition t: conditions) {
+
+			if(t.shouldTerminate(populationData) == true) {
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the generation count of the GenerationCount condition, or -1 if there is none.
+	 */
+	public static int getGenerationCount(TerminationCondition[] conditions) {
+
+		int generationCount = -1;
+
+		if(conditions == null || conditions.length == 0) {
+
+			return -1;
+		}
+
+		//Get generation count if such termination condition is set;
+		for(int i = 0; i < conditions.length; i++) {
+
+			if(conditions[i] instanceof GenerationCount) {
+
+				GenerationCount genCountCondition = (GenerationCount)conditions[i];
+				Field[] fields = GenerationCount.class.getDeclaredFields();
+
+				for(Field field: fields) {
+
+					if("generationCount".equals(field.getName())) {
+
+						field.setAccessible(true);
+						try {
+							generationCount = field.getInt(genCountCondition);
+						} catch (IllegalArgumentException e) {
+
+							e.printStackTrace();
+						} catch (IllegalAccessException e) {
+
+							e.printStackTrace();
+						}
+
+						break;
+					}
+				}
+			}
+		}
+
+		return generationCount;
+	}
+
+	/**
+	 * Number of generations an island evolves in an epoch, derived from the GenerationCount
+	 * condition, if any, so that the evolution takes a few epochs.
+	 */
+	public static int getEpochGenerationCount(int generationCount) {
+
+		if(generationCount > 0) {
+
+			for(int i = 5; i >= 1; i--) {
+
+				if(generationCount / i >= 20) {
+
+					return generationCount / i;
+				}
+			}
+
+			return generationCount;
+		}
+
+		return 20;
+	}
+
+	/**
+	 * Splits the population in {@code numberOfSplits} subpopulations of (almost) equal size.
+	 */
+	public static <T> List<List<T>> splitPopulation(List<T> population, int numberOfSplits) {
+
+		List<List<T>> subpopulations = new ArrayList<List<T>>(numberOfSplits);
+
+		int splitSize = population.size() / numberOfSplits;
+
+		//Create the first numberOfSplits - 1 subpopulations;
+		for(int i = 0; i < numberOfSplits; i++) {
+
+			subpopulations.add(new ArrayList<T>(population.subList(i * splitSize, (i + 1) * splitSize)));
+		}
+
+		//Create the last subpopulation;
+		//This is created separately because the populationSize might not divide exactly to the numberOfSplits;
+		int processedCandidates = numberOfSplits * splitSize;
+		for(int i = processedCandidates; i < population.size(); i++) {
+
+			subpopulations.get(i - processedCandidates).add(population.get(i));
+		}
+
+		return subpopulations;
+	}
+
+	/**
+	 * GenerationalEvolutionEngine evaluating each generation in chunks, one per thread of the pool.
+	 * The order of the evaluated population is the order of the candidates, as in the single threaded engine.
+	 * Selection and the evolutionary operators stay on the calling thread: they draw from the island's
+	 * random generator and the operators pair candidates across the whole list.
+	 */
+	private static class PooledEvolutionEngine<T> extends GenerationalEvolutionEngine<T> {
+
+		private final FitnessEvaluator<? super T> fitnessEvaluator;
+		private final ForkJoinPool evaluationPool;
+
+		public PooledEvolutionEngine(
+				CandidateFactory<T> candidateFactory,
+				EvolutionaryOperator<T> evolutionScheme,
+				FitnessEvaluator<? super T> fitnessEvaluator,
+				SelectionStrategy<? super T> selectionStrategy,
+				Random rng,
+				ForkJoinPool evaluationPool) {
+
+			super(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng);
+			this.fitnessEvaluator = fitnessEvaluator;
+			this.evaluationPool = evaluationPool;
+		}
+
+		@Override
+		protected List<EvaluatedCandidate<T>> evaluatePopulation(final List<T> population) {
+
+			//The islands of IslandEvolutionMapper run on the same pool; the chunks are forked, not submitted
+			List<EvaluatedCandidate<T>> evaluatedPopulation = new ArrayList<EvaluatedCandidate<T>>(population.size());
+			for(List<EvaluatedCandidate<T>> chunk: BatchEvaluation.invokeChunks(population.size(), evaluationPool,
+					new BatchEvaluation.Chunk<List<EvaluatedCandidate<T>>>() {
+
+				@Override
+				public List<EvaluatedCandidate<T>> apply(int from, int to) {
+
+					List<EvaluatedCandidate<T>> evaluated = new ArrayList<EvaluatedCandidate<T>>(to - from);
+					for(T candidate: population.subList(from, to)) {
+
+						evaluated.add(new EvaluatedCandidate<T>(candidate, fitnessEvaluator.getFitness(candidate, population)));
+					}
+
+					return evaluated;
+				}
+			})) {
+
+				evaluatedPopulation.addAll(chunk);
+			}
+
+			return evaluatedPopulation;
+		}
+	}
+}
@@ -3,12 +3,17 @@ package ro.pub.ga.watchmaker.core;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.mahout.common.StringUtils;
 import org.uncommons.watchmaker.framework.CandidateFactory;
@@ -16,37 +21,38 @@ import org.uncommons.watchmaker.framework.EvaluatedCandidate;
 import org.uncommons.watchmaker.framework.EvolutionObserver;
 import org.uncommons.watchmaker.framework.EvolutionaryOperator;
 import org.uncommons.watchmaker.framework.FitnessEvaluator;
-import org.uncommons.watchmaker.framework.GenerationalEvolutionEngine;
 import org.uncommons.watchmaker.framework.PopulationData;
 import org.uncommons.watchmaker.framework.SelectionStrategy;
 import org.uncommons.watchmaker.framework.SteadyStateEvolutionEngine;
 import org.uncommons.watchmaker.framework.TerminationCondition;
-import org.uncommons.watchmaker.framework.termination.GenerationCount;
 
 import ro.pub.ga.watchmaker.jss.ScheduleFactory;
 import ro.pub.ga.watchmaker.jss.ScheduleItem;
+import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
 import ro.pub.ga.watchmaker.utils.PopulationWritable;
 
 import com.google.common.base.Preconditions;
 
-public class IslandEvolutionMapper<T> extends Mapper<LongWritable, Text, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>{
+public class IslandEvolutionMapper<T> extends Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>{
 	
 	private CandidateFactory<T> candidateFactory;
 	private EvolutionaryOperator<T> evolutionScheme;
 	private FitnessEvaluator<? super T> fitnessEvaluator;
 	private SelectionStrategy<? super T> selectionStrategy;
-	private List<TerminationCondition> terminationConditions;
-	private Random rng;
+	private String stringifiedConditions;
 	private int generationCount;
 	private int eliteCount;
 	private Boolean doMigration;
 	private Integer migrationCount;
+	private int islandCount;
 	
-	private static final LongWritable one = new LongWritable(1); 
+	//The individuals of each island found in the split, in reading order
+	private Map<Long, List<T>> islands;
+	private ForkJoinPool pool;
 	
 	@Override
 	protected void setup(
-			Mapper<LongWritable, Text, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
+			Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
 			throws IOException, InterruptedException {
 		
 		Configuration conf = context.getConfiguration();
@@ -64,7 +70,8 @@ public class IslandEvolutionMapper<T> extends Mapper<LongWritable, Text, LongWri
 		//Get the fitnessEvaluator attribute;
 		stringifiedProperty = conf.get(Constants.FITNESS_EVALUATOR_PROPERTY);
 		Preconditions.checkArgument(stringifiedProperty != null, "'FITNESS_EVALUATOR_PROPERTY' job parameter not found");
-		this.fitnessEvaluator = StringUtils.fromString(stringifiedProperty);
+		//The islands of the task share the cache, if there is one
+		this.fitnessEvaluator = BatchEvaluation.withCache(StringUtils.<FitnessEvaluator<? super T>>fromString(stringifiedProperty), conf);
 		
 		//Get the selectionStrategy attribute;
 		stringifiedProperty = conf.get(Constants.SELECTION_STRATEGY_PROPERTY);
@@ -74,12 +81,7 @@ public class IslandEvolutionMapper<T> extends Mapper<LongWritable, Text, LongWri
 		//Get the termination conditions;
 		stringifiedProperty = conf.get(Constants.TERMINATION_CONDITIONS);
 		Preconditions.checkArgument(stringifiedProperty != null, "'TERMINATION_CONDITIONS' job parameter not found");
-		this.terminationConditions = new ArrayList<TerminationCondition>((List<TerminationCondition>)StringUtils.fromString(stringifiedProperty));
-		
-		//Get the rng attribute;
-		stringifiedProperty = conf.get(Constants.RANDOM_GENERATOR_PROPERTY);
-		Preconditions.checkArgument(stringifiedProperty != null, "'RANDOM_GENERATOR_PROPERTY' job parameter not found");
-		this.rng = StringUtils.fromString(stringifiedProperty);
+		this.stringifiedConditions = stringifiedProperty;
 		
 		//Get the generationCount attribute;
 		this.generationCount = conf.getInt(Constants.GENERATION_COUNT_PROPERTY, -1);
@@ -95,72 +97,151 @@ public class IslandEvolutionMapper<T> extends Mapper<LongWritable, Text, LongWri
 			this.migrationCount = conf.getInt(Constants.MIGRATION_COUNT_PROPERTY, 0);
 		}
 		
+		//The reducer of an island is also the one receiving its immigrants
+		this.islandCount = conf.getInt(Constants.NUM_SUBPOPULATIONS, 1);
+		
+		this.islands = new LinkedHashMap<Long, List<T>>();
+		
+		//The islands of the split evolve concurrently and share the pool for their fitness evaluations
+		int threads = IslandEvolution.getTaskThreads(conf);
+		this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		System.out.println("Task threads: " + threads);
+		
 		super.setup(context);
 	}
 	
 	@Override
 	protected void map(
 			LongWritable key,
-			Text value,
-			Mapper<LongWritable, Text, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
+			EvaluatedCandidateWritable<T> value,
+			Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
+			throws IOException, InterruptedException {
+		
+		//Each record holds one individual; gather the island before evolving it
+		List<T> island = islands.get(key.get());
+		if(island == null) {
+			
+			island = new ArrayList<T>();
+			islands.put(key.get(), island);
+		}
+		island.add(value.getCandidate());
+	}
+	
+	@Override
+	protected void cleanup(
+			final Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
 			throws IOException, InterruptedException {
 		
-		//Extract the population from the input value
-		PopulationWritable<T> population = StringUtils.fromString(value.toString());
-		Integer populationIndex = (Integer)population.getDataValue(Constants.POPULATION_INDEX_PARAMETER);
-		System.out.println("Elite count: " + eliteCount);
+		List<IslandTask> tasks = new ArrayList<IslandTask>(islands.size());
+		for(Map.Entry<Long, List<T>> island: islands.entrySet()) {
+			
+			tasks.add(new IslandTask(island.getKey().intValue(), island.getValue(), context));
+		}
 		
-		//Create a single threaded GenerationalEvolutionEngine
-		//SteadyStateEvolutionEngine<T> engine = new SteadyStateEvolutionEngine<>(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, 2, true, rng);
-		GenerationalEvolutionEngine<T> engine = new GenerationalEvolutionEngine<T>(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng);
-		engine.setSingleThreaded(true);
-		engine.addEvolutionObserver(new EvolutionObserver<T>() {
-
+		try {
 			
-			public void populationUpdate(PopulationData<? extends T> data) {
+			if(pool == null) {
 				
-				System.out.println("Generation number: " + data.getGenerationNumber() + ", Best fitness: " + data.getBestCandidateFitness() + ", Mean fitness: " + data.getMeanFitness());
+				for(IslandTask task: tasks) {
+					
+					task.call();
+				}
 			}
-		});
-		
-		//Evolve the received subpopulation
-		terminationConditions.add(new GenerationCount(generationCount));
-		PopulationWritable<EvaluatedCandidate<T>> evolvedPopulation = new PopulationWritable<EvaluatedCandidate<T>>(
-				engine.evolvePopulation(
-						population.getPopulation().size(), 
-						eliteCount, population.getPopulation(), 
-						terminationConditions.toArray(new TerminationCondition[terminationConditions.size()])
-				)
-		);
-		evolvedPopulation.putDataValue(Constants.POPULATION_INDEX_PARAMETER, populationIndex);
-		
-		//Migration
-		if(doMigration) {
+			else {
+				
+				for(Future<IslandTask> result: pool.invokeAll(tasks)) {
+					
+					result.get();
+				}
+			}
+		} catch (ExecutionException e) {
+			
+			throw new IOException("Island evolution failed", e.getCause());
+		} finally {
 			
-			selectMigrators(evolvedPopulation);
+			if(pool != null) {
+				
+				pool.shutdown();
+			}
 		}
+		BatchEvaluation.reportCache(fitnessEvaluator, context);
 		
-		context.getConfiguration().setBoolean(Constants.MIGRATION_PROPERTY, doMigration);
-		context.getConfiguration().set(Constants.RANDOM_GENERATOR_PROPERTY, StringUtils.toString(rng));
-		context.getConfiguration().setBoolean(Constants.NATURAL_EVOLUTION, fitnessEvaluator.isNatural());
+		//The context is not thread safe, the islands are written from this thread
+		for(IslandTask task: tasks) {
+			
+			writeIsland(task, context);
+		}
 		
-		//Pass the population further to the next step
-		context.write(one, evolvedPopulation);
+		super.cleanup(context);
 	}
 	
-	public void selectMigrators(PopulationWritable<EvaluatedCandidate<T>> population) {
+	private void writeIsland(
+			IslandTask island,
+			Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
+			throws IOException, InterruptedException {
 		
-		List<EvaluatedCandidate<T>> migrators = new ArrayList<EvaluatedCandidate<T>>();
+		PopulationWritable<EvaluatedCandidate<T>> evolvedPopulation = new PopulationWritable<EvaluatedCandidate<T>>(island.evolved);
+		evolvedPopulation.putDataValue(Constants.POPULATION_INDEX_PARAMETER, island.index);
+		
+		//Migration; the migrators go straight to the reducer of the destination island,
+		//marked with the index of the island they come from
+		if(doMigration) {
+			
+			PopulationWritable<EvaluatedCandidate<T>> migrators = new PopulationWritable<EvaluatedCandidate<T>>(island.migrators);
+			migrators.putDataValue(Constants.INDIVIDUALS_TO_MIGRATE, island.index);
+			context.write(new LongWritable(IslandEvolution.getMigrationTarget(island.index, islandCount)), migrators);
+		}
 		
-		int counter = migrationCount;
-		int index;
-		while(counter > 0) {
+		//Pass the population further to the reducer of the island
+		context.write(new LongWritable(island.index), evolvedPopulation);
+	}
+	
+	/**
+	 * The evolution of one island of the split. Every island starts from its own copy of the generator
+	 * and of the termination conditions, so the islands do not depend on each other nor on the number of threads.
+	 */
+	private class IslandTask implements Callable<IslandTask> {
+		
+		private final int index;
+		private final List<T> population;
+		private final Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context;
+		private List<EvaluatedCandidate<T>> evolved;
+		private List<EvaluatedCandidate<T>> migrators;
+		
+		public IslandTask(int index, List<T> population,
+				Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context) {
 			
-			index = rng.nextInt(population.getPopulation().size());
-			migrators.add(population.getPopulation().remove(index));
-			counter--;
+			this.index = index;
+			this.population = population;
+			this.context = context;
 		}
 		
-		population.putDataValue(Constants.INDIVIDUALS_TO_MIGRATE, migrators);
+		@Override
+		public IslandTask call() {
+			
+			System.out.println("Island " + index + ", elite count: " + eliteCount);
+			
+			//Every island draws from its own stream of the epoch
+			Random rng = RandomStreams.forIsland(context.getConfiguration(), index);
+			List<TerminationCondition> conditions = StringUtils.fromString(stringifiedConditions);
+			evolved = IslandEvolution.evolveIsland(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng,
+					population, eliteCount, generationCount, conditions, pool,
+					new EvolutionObserver<T>() {
+						
+						public void populationUpdate(PopulationData<? extends T> data) {
+							
+							//The whole population is evaluated every generation
+							BatchEvaluation.countEvaluations(fitnessEvaluator, context, data.getPopulationSize());
+							System.out.println("Island " + index + ", generation number: " + data.getGenerationNumber() + ", Best fitness: " + data.getBestCandidateFitness() + ", Mean fitness: " + data.getMeanFitness());
+						}
+					});
+			
+			if(doMigration) {
+				
+				migrators = IslandEvolution.selectMigrators(evolved, migrationCount, rng);
+			}
+			
+			return this;
+		}
 	}
 }
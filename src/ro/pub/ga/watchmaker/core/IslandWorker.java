@@ -0,0 +1,359 @@
+package ro.pub.ga.watchmaker.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.mahout.common.StringUtils;
+import org.uncommons.watchmaker.framework.CandidateFactory;
+import org.uncommons.watchmaker.framework.EvaluatedCandidate;
+import org.uncommons.watchmaker.framework.EvolutionaryOperator;
+import org.uncommons.watchmaker.framework.FitnessEvaluator;
+import org.uncommons.watchmaker.framework.SelectionStrategy;
+import org.uncommons.watchmaker.framework.TerminationCondition;
+
+import ro.pub.ga.watchmaker.utils.CandidateCodecs;
+
+/**
+ * Long-lived process holding some of the islands of a {@link PersistentIslandEvolutionEngine} in memory.
+ * The worker serves one driver connection at a time; the islands live as long as the connection,
+ * so the epochs of an evolution cost one round trip instead of one job each.
+ * <p>
+ * Usage: {@code IslandWorker <port>}
+ */
+public class IslandWorker implements Runnable {
+
+	private final int port;
+
+	//The configuration received from the driver
+	private CandidateFactory<Object> candidateFactory;
+	private EvolutionaryOperator<Object> evolutionScheme;
+	private FitnessEvaluator<Object> fitnessEvaluator;
+	private SelectionStrategy<Object> selectionStrategy;
+	private long randomSeed;
+	private long epochSeed;
+	private String stringifiedConditions;
+	private int generationCount;
+	private int eliteCount;
+	private int migrationCount;
+	private boolean doMigration;
+	private int islandCount;
+	private List<Island> islands;
+
+	public IslandWorker(int port) {
+
+		this.port = port;
+	}
+
+	public static void main(String[] args) {
+
+		if(args.length != 1) {
+
+			System.err.println("Usage: IslandWorker <port>");
+			System.exit(1);
+		}
+
+		new IslandWorker(Integer.parseInt(args[0])).run();
+	}
+
+	/**
+	 * Starts a worker JVM on this machine, with the classpath and the JVM options of the current process.
+	 */
+	public static Process launch(int port) throws IOException {
+
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(IslandWorker.class.getName());
+		command.add(String.valueOf(port));
+
+		return new ProcessBuilder(command).inheritIO().start();
+	}
+
+	@Override
+	public void run() {
+
+		ServerSocket serverSocket = null;
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+
+			serverSocket = new ServerSocket(port);
+			System.out.println("[IslandWorker] Listening on port " + port);
+
+			boolean shutdown = false;
+			while(!shutdown) {
+
+				Socket socket = serverSocket.accept();
+				try {
+
+					shutdown = serve(socket, pool);
+				} catch (IOException e) {
+
+					e.printStackTrace();
+				} finally {
+
+					islands = null;
+					socket.close();
+				}
+			}
+		} catch (IOException e) {
+
+			e.printStackTrace();
+		} finally {
+
+			pool.shutdown();
+			if(serverSocket != null) {
+
+				try {
+					serverSocket.close();
+				} catch (IOException e) {
+
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Handles the commands of a driver until it disconnects.
+	 *
+	 * @return true if the driver asked the worker to shut down
+	 */
+	private boolean serve(Socket socket, ForkJoinPool pool) throws IOException {
+
+		socket.setTcpNoDelay(true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		while(true) {
+
+			byte command;
+			try {
+
+				command = in.readByte();
+			} catch (EOFException e) {
+
+				return false;
+			}
+
+			if(command == IslandWorkerProtocol.SHUTDOWN) {
+
+				return true;
+			}
+
+			//The answer is buffered, so a failure while it is built leaves no partial answer in the stream
+			DataOutputBuffer answer = new DataOutputBuffer();
+			boolean requestRead = false;
+			try {
+
+				switch(command) {
+				case IslandWorkerProtocol.CONFIGURE:
+
+					configure(in);
+					requestRead = true;
+					break;
+				case IslandWorkerProtocol.EVOLVE:
+
+					int epoch = readMigrants(in);
+					requestRead = true;
+					evolve(epoch, answer, pool);
+					break;
+				case IslandWorkerProtocol.COLLECT:
+
+					requestRead = true;
+					collect(answer);
+					break;
+				default:
+
+					throw new IOException("Unknown command " + command);
+				}
+
+				out.writeByte(IslandWorkerProtocol.OK);
+				out.write(answer.getData(), 0, answer.getLength());
+			} catch (RuntimeException e) {
+
+				e.printStackTrace();
+				out.writeByte(IslandWorkerProtocol.ERROR);
+				out.writeUTF(String.valueOf(e));
+				if(!requestRead) {
+
+					//The rest of the request is still in the stream; the connection cannot be reused
+					out.flush();
+					return false;
+				}
+			}
+			out.flush();
+		}
+	}
+
+	private void configure(DataInputStream in) throws IOException {
+
+		candidateFactory = StringUtils.fromString(Text.readString(in));
+		evolutionScheme = StringUtils.fromString(Text.readString(in));
+		fitnessEvaluator = StringUtils.fromString(Text.readString(in));
+		selectionStrategy = StringUtils.fromString(Text.readString(in));
+		randomSeed = in.readLong();
+		stringifiedConditions = Text.readString(in);
+		generationCount = WritableUtils.readVInt(in);
+		eliteCount = WritableUtils.readVInt(in);
+		migrationCount = WritableUtils.readVInt(in);
+		doMigration = in.readBoolean();
+		islandCount = WritableUtils.readVInt(in);
+
+		int hostedIslands = WritableUtils.readVInt(in);
+		islands = new ArrayList<Island>(hostedIslands);
+		for(int i = 0; i < hostedIslands; i++) {
+
+			Island island = new Island(WritableUtils.readVInt(in));
+			island.population = IslandWorkerProtocol.readCandidates(in);
+			islands.add(island);
+		}
+
+		System.out.println("[IslandWorker] Hosting " + hostedIslands + " of " + islandCount + " islands");
+	}
+
+	/**
+	 * Reads the migrants of an EVOLVE request; they are appended to the islands, as IslandEvolutionReducer does.
+	 *
+	 * @return the epoch to evolve
+	 */
+	private int readMigrants(DataInputStream in) throws IOException {
+
+		int epoch = WritableUtils.readVInt(in);
+		for(Island island: islands) {
+
+			List<EvaluatedCandidate<Object>> migrants = IslandWorkerProtocol.readEvaluatedCandidates(in);
+			if(island.evolved != null) {
+
+				island.evolved.addAll(migrants);
+				island.population = new ArrayList<Object>(island.evolved.size());
+				for(EvaluatedCandidate<Object> candidate: island.evolved) {
+
+					island.population.add(candidate.getCandidate());
+				}
+			}
+		}
+
+		return epoch;
+	}
+
+	private void evolve(int epoch, DataOutput out, ForkJoinPool pool) throws IOException {
+
+		epochSeed = RandomStreams.getEpochSeed(randomSeed, epoch);
+
+		//Every island must be done before the answer is written
+		List<Island> evolvedIslands = new ArrayList<Island>(islands.size());
+		for(Future<Island> result: pool.invokeAll(islands)) {
+
+			evolvedIslands.add(getResult(result));
+		}
+
+		for(Island island: evolvedIslands) {
+
+			WritableUtils.writeVInt(out, island.index);
+			CandidateCodecs.writeCandidate(out, island.best.getCandidate());
+			out.writeDouble(island.best.getFitness());
+			WritableUtils.writeVInt(out, island.count);
+			out.writeDouble(island.mean);
+			out.writeDouble(island.m2);
+			IslandWorkerProtocol.writeEvaluatedCandidates(out, island.migrants);
+		}
+
+		System.out.println("[IslandWorker] Epoch " + epoch + " done");
+	}
+
+	private void collect(DataOutput out) throws IOException {
+
+		for(Island island: islands) {
+
+			IslandWorkerProtocol.writeEvaluatedCandidates(out, island.evolved);
+		}
+	}
+
+	private Island getResult(Future<Island> result) throws IOException {
+
+		try {
+
+			return result.get();
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Island evolution interrupted", e);
+		} catch (ExecutionException e) {
+
+			throw new IllegalStateException("Island evolution failed", e.getCause());
+		}
+	}
+
+	/**
+	 * An island hosted by the worker; calling it evolves the island for one epoch.
+	 */
+	private class Island implements Callable<Island> {
+
+		private final int index;
+		private List<Object> population;
+		private List<EvaluatedCandidate<Object>> evolved;
+		private List<EvaluatedCandidate<Object>> migrants;
+
+		//The statistics of the evolved island, before the migrants leave
+		private EvaluatedCandidate<Object> best;
+		private int count;
+		private double mean;
+		private double m2;
+
+		public Island(int index) {
+
+			this.index = index;
+		}
+
+		@Override
+		public Island call() {
+
+			//The stream of the island in this epoch and a fresh copy of the conditions, as every map task gets
+			Random rng = RandomStreams.forIsland(epochSeed, index);
+			List<TerminationCondition> conditions = StringUtils.fromString(stringifiedConditions);
+
+			evolved = IslandEvolution.evolveIsland(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy,
+					rng, population, eliteCount, generationCount, conditions, null);
+
+			//The evolved population is sorted, the best candidate is the first one
+			best = evolved.get(0);
+			count = 0;
+			mean = 0;
+			m2 = 0;
+			for(EvaluatedCandidate<Object> candidate: evolved) {
+
+				count++;
+				double delta = candidate.getFitness() - mean;
+				mean += delta / count;
+				m2 += delta * (candidate.getFitness() - mean);
+			}
+
+			migrants = doMigration ?
+					IslandEvolution.selectMigrators(evolved, migrationCount, rng) :
+					new ArrayList<EvaluatedCandidate<Object>>();
+
+			return this;
+		}
+	}
+}
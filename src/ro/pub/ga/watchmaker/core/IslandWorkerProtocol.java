@@ -0,0 +1,95 @@
+package ro.pub.ga.watchmaker.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.WritableUtils;
+import org.uncommons.watchmaker.framework.EvaluatedCandidate;
+
+import ro.pub.ga.watchmaker.utils.CandidateCodecs;
+
+/**
+ * Messages exchanged between {@link PersistentIslandEvolutionEngine} and its {@link IslandWorker}s.
+ * <p>
+ * CONFIGURE: the stringified components, the epoch parameters and the initial islands of the worker.<br>
+ * EVOLVE: the migrants received by each island; the worker evolves its islands for one epoch and answers,
+ * for each island, with its best candidate, the fitness statistics of the island and its emigrants.<br>
+ * COLLECT: the worker answers with the current population of each island.<br>
+ * SHUTDOWN: the worker process exits.
+ * <p>
+ * Every answer starts with OK or with ERROR and a message; an ERROR answer carries nothing else. If the
+ * request could not be read up to its end, the worker closes the connection after the ERROR answer.
+ */
+final class IslandWorkerProtocol {
+
+	static final byte CONFIGURE = 1;
+	static final byte EVOLVE = 2;
+	static final byte COLLECT = 3;
+	static final byte SHUTDOWN = 4;
+
+	static final byte OK = 0;
+	static final byte ERROR = 1;
+
+	private IslandWorkerProtocol() {
+
+	}
+
+	static <T> void writeCandidates(DataOutput out, List<T> candidates) throws IOException {
+
+		WritableUtils.writeVInt(out, candidates.size());
+		for(T candidate: candidates) {
+
+			CandidateCodecs.writeCandidate(out, candidate);
+		}
+	}
+
+	static <T> List<T> readCandidates(DataInput in) throws IOException {
+
+		int size = WritableUtils.readVInt(in);
+		List<T> candidates = new ArrayList<T>(size);
+		for(int i = 0; i < size; i++) {
+
+			T candidate = CandidateCodecs.readCandidate(in);
+			candidates.add(candidate);
+		}
+
+		return candidates;
+	}
+
+	static <T> void writeEvaluatedCandidates(DataOutput out, List<EvaluatedCandidate<T>> candidates) throws IOException {
+
+		WritableUtils.writeVInt(out, candidates.size());
+		for(EvaluatedCandidate<T> candidate: candidates) {
+
+			CandidateCodecs.writeCandidate(out, candidate.getCandidate());
+			out.writeDouble(candidate.getFitness());
+		}
+	}
+
+	static <T> List<EvaluatedCandidate<T>> readEvaluatedCandidates(DataInput in) throws IOException {
+
+		int size = WritableUtils.readVInt(in);
+		List<EvaluatedCandidate<T>> candidates = new ArrayList<EvaluatedCandidate<T>>(size);
+		for(int i = 0; i < size; i++) {
+
+			T candidate = CandidateCodecs.readCandidate(in);
+			candidates.add(new EvaluatedCandidate<T>(candidate, in.readDouble()));
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Reads the status byte of an answer; on error the worker sends the message of its exception.
+	 */
+	static void readStatus(DataInput in) throws IOException {
+
+		if(in.readByte() != OK) {
+
+			throw new IOException("Island worker failed: " + in.readUTF());
+		}
+	}
+}
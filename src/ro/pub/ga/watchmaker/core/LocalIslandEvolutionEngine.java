@@ -0,0 +1,298 @@
+package ro.pub.ga.watchmaker.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.mahout.common.StringUtils;
+import org.uncommons.watchmaker.framework.CandidateFactory;
+import org.uncommons.watchmaker.framework.EvaluatedCandidate;
+import org.uncommons.watchmaker.framework.EvolutionEngine;
+import org.uncommons.watchmaker.framework.EvolutionObserver;
+import org.uncommons.watchmaker.framework.EvolutionaryOperator;
+import org.uncommons.watchmaker.framework.FitnessEvaluator;
+import org.uncommons.watchmaker.framework.PopulationData;
+import org.uncommons.watchmaker.framework.SelectionStrategy;
+import org.uncommons.watchmaker.framework.TerminationCondition;
+
+import ro.pub.ga.watchmaker.utils.FitnessStatistics;
+
+/**
+ * In-process version of the island model of {@link DistributedEvolutionEngine}: the islands of an epoch
+ * are evolved in parallel on a ForkJoinPool and the migrants travel through in-memory queues, so no job
+ * is submitted and the populations are never serialized.
+ * <p>
+ * The epochs follow the MapReduce implementation step by step ({@link IslandEvolution}). Every island draws,
+ * each epoch, from its own stream derived from the root seed as the map tasks derive it ({@link RandomStreams});
+ * the termination conditions are copied from the engine as every map task restores them from the job.
+ * For the same seed the two engines evolve the same populations.
+ */
+public class LocalIslandEvolutionEngine<T> implements EvolutionEngine<T> {
+
+	private final CandidateFactory<T> candidateFactory;
+	private final EvolutionaryOperator<T> evolutionScheme;
+	private final FitnessEvaluator<? super T> fitnessEvaluator;
+	private final SelectionStrategy<? super T> selectionStrategy;
+	private final Random rng;
+	private final boolean doMigration;
+	private final int islandCount;
+	private final int threadCount;
+
+	private final long randomSeed;
+	private final List<EvolutionObserver<? super T>> observers = new ArrayList<EvolutionObserver<? super T>>();
+	private List<TerminationCondition> satisfiedTerminationConditions;
+
+	public LocalIslandEvolutionEngine(CandidateFactory<T> candidateFactory,
+			EvolutionaryOperator<T> evolutionScheme,
+			FitnessEvaluator<? super T> fitnessEvaluator,
+			SelectionStrategy<? super T> selectionStrategy,
+			Random rng,
+			boolean doMigration,
+			int islandCount) {
+
+		this(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng, doMigration, islandCount,
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	public LocalIslandEvolutionEngine(CandidateFactory<T> candidateFactory,
+			EvolutionaryOperator<T> evolutionScheme,
+			FitnessEvaluator<? super T> fitnessEvaluator,
+			SelectionStrategy<? super T> selectionStrategy,
+			Random rng,
+			boolean doMigration,
+			int islandCount,
+			int threadCount) {
+
+		this.candidateFactory = candidateFactory;
+		this.evolutionScheme = evolutionScheme;
+		this.fitnessEvaluator = fitnessEvaluator;
+		this.selectionStrategy = selectionStrategy;
+		this.rng = rng;
+		this.doMigration = doMigration;
+		this.islandCount = islandCount;
+		this.threadCount = threadCount;
+
+		//The root of the streams of the islands, drawn as DistributedEvolutionEngine draws it
+		this.randomSeed = rng.nextLong();
+	}
+
+	@Override
+	public List<EvaluatedCandidate<T>> evolvePopulation(int populationSize,
+			int eliteCount,
+			Collection<T> seedCandidates,
+			TerminationCondition... conditions) {
+
+		List<T> population = candidateFactory.generateInitialPopulation(populationSize, seedCandidates, rng);
+
+		long startTime = System.currentTimeMillis();
+		int generationCount = IslandEvolution.getEpochGenerationCount(IslandEvolution.getGenerationCount(conditions));
+		int islandEliteCount = (int)Math.ceil(((double)eliteCount) / islandCount);
+		int migrationCount = populationSize / (5 * islandCount);
+		String stringifiedConditions = StringUtils.toString(Arrays.asList(conditions));
+
+		List<List<T>> islands = IslandEvolution.splitPopulation(population, islandCount);
+		List<Queue<EvaluatedCandidate<T>>> inboxes = new ArrayList<Queue<EvaluatedCandidate<T>>>(islandCount);
+		for(int i = 0; i < islandCount; i++) {
+
+			inboxes.add(new ConcurrentLinkedQueue<EvaluatedCandidate<T>>());
+		}
+
+		EvaluatedCandidate<T> bestCandidate = null;
+		List<EvaluatedCandidate<T>> evolvedPopulation;
+		boolean terminate;
+		int epoch = 1;
+
+		ForkJoinPool pool = new ForkJoinPool(threadCount);
+		try {
+
+			do {
+
+				//Evolve the islands in parallel; the migrants go to the inbox of the next island in the ring
+				List<Callable<List<EvaluatedCandidate<T>>>> tasks = new ArrayList<Callable<List<EvaluatedCandidate<T>>>>(islandCount);
+				for(int i = 0; i < islandCount; i++) {
+
+					tasks.add(new IslandTask(i, islands.get(i), islandEliteCount, generationCount, migrationCount,
+							stringifiedConditions, inboxes, RandomStreams.getEpochSeed(randomSeed, epoch)));
+				}
+
+				List<List<EvaluatedCandidate<T>>> evolvedIslands = new ArrayList<List<EvaluatedCandidate<T>>>(islandCount);
+				for(Future<List<EvaluatedCandidate<T>>> result: pool.invokeAll(tasks)) {
+
+					evolvedIslands.add(getResult(result));
+				}
+
+				//Receive the migrants and merge the islands
+				evolvedPopulation = new ArrayList<EvaluatedCandidate<T>>(populationSize);
+				for(int i = 0; i < islandCount; i++) {
+
+					List<EvaluatedCandidate<T>> island = evolvedIslands.get(i);
+					EvaluatedCandidate<T> migrant;
+					while((migrant = inboxes.get(i).poll()) != null) {
+
+						island.add(migrant);
+					}
+
+					List<T> candidates = new ArrayList<T>(island.size());
+					for(EvaluatedCandidate<T> candidate: island) {
+
+						candidates.add(candidate.getCandidate());
+					}
+					islands.set(i, candidates);
+					evolvedPopulation.addAll(island);
+				}
+
+				PopulationData<T> populationData = FitnessStatistics.getPopulationData(evolvedPopulation, fitnessEvaluator.isNatural(),
+						islandEliteCount, epoch * generationCount, startTime);
+
+				EvaluatedCandidate<T> crtBestCandidate = new EvaluatedCandidate<T>(populationData.getBestCandidate(), populationData.getBestCandidateFitness());
+				if(bestCandidate == null || (fitnessEvaluator.isNatural() ?
+						crtBestCandidate.getFitness() > bestCandidate.getFitness() :
+						crtBestCandidate.getFitness() < bestCandidate.getFitness())) {
+
+					bestCandidate = crtBestCandidate;
+				}
+
+				for(EvolutionObserver<? super T> observer: observers) {
+
+					observer.populationUpdate(populationData);
+				}
+
+				//The reducer checks a fresh copy of the conditions each epoch
+				List<TerminationCondition> epochConditions = StringUtils.fromString(stringifiedConditions);
+				terminate = IslandEvolution.shouldTerminate(populationData, epochConditions);
+				if(terminate) {
+
+					satisfiedTerminationConditions = new ArrayList<TerminationCondition>();
+					for(TerminationCondition condition: epochConditions) {
+
+						if(condition.shouldTerminate(populationData)) {
+
+							satisfiedTerminationConditions.add(condition);
+						}
+					}
+				}
+
+				epoch++;
+			} while(!terminate);
+		} finally {
+
+			pool.shutdown();
+		}
+
+		//The population is sorted once, at the end
+		IslandEvolution.sortPopulation(evolvedPopulation, fitnessEvaluator.isNatural());
+		evolvedPopulation.add(0, bestCandidate);
+		evolvedPopulation.remove(populationSize);
+
+		return evolvedPopulation;
+	}
+
+	private List<EvaluatedCandidate<T>> getResult(Future<List<EvaluatedCandidate<T>>> result) {
+
+		try {
+
+			return result.get();
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Island evolution interrupted", e);
+		} catch (ExecutionException e) {
+
+			throw new IllegalStateException("Island evolution failed", e.getCause());
+		}
+	}
+
+	/**
+	 * One epoch of an island: the work of an IslandEvolutionMapper call.
+	 */
+	private class IslandTask implements Callable<List<EvaluatedCandidate<T>>> {
+
+		private final int index;
+		private final List<T> population;
+		private final int eliteCount;
+		private final int generationCount;
+		private final int migrationCount;
+		private final String stringifiedConditions;
+		private final List<Queue<EvaluatedCandidate<T>>> inboxes;
+		private final long epochSeed;
+
+		public IslandTask(int index, List<T> population, int eliteCount, int generationCount, int migrationCount,
+				String stringifiedConditions, List<Queue<EvaluatedCandidate<T>>> inboxes, long epochSeed) {
+
+			this.index = index;
+			this.population = population;
+			this.eliteCount = eliteCount;
+			this.generationCount = generationCount;
+			this.migrationCount = migrationCount;
+			this.stringifiedConditions = stringifiedConditions;
+			this.inboxes = inboxes;
+			this.epochSeed = epochSeed;
+		}
+
+		@Override
+		public List<EvaluatedCandidate<T>> call() {
+
+			Random islandRng = RandomStreams.forIsland(epochSeed, index);
+			List<TerminationCondition> conditions = StringUtils.fromString(stringifiedConditions);
+
+			List<EvaluatedCandidate<T>> evolvedPopulation = IslandEvolution.evolveIsland(candidateFactory, evolutionScheme,
+					fitnessEvaluator, selectionStrategy, islandRng, population, eliteCount, generationCount, conditions, null);
+
+			if(doMigration) {
+
+				inboxes.get(IslandEvolution.getMigrationTarget(index, inboxes.size())).addAll(
+						IslandEvolution.selectMigrators(evolvedPopulation, migrationCount, islandRng));
+			}
+
+			return evolvedPopulation;
+		}
+	}
+
+	@Override
+	public T evolve(int populationSize, int eliteCount,
+			TerminationCondition... conditions) {
+
+		return evolve(populationSize, eliteCount, Collections.<T>emptyList(), conditions);
+	}
+
+	@Override
+	public T evolve(int populationSize, int eliteCount,
+			Collection<T> seedCandidates, TerminationCondition... conditions) {
+
+		return evolvePopulation(populationSize, eliteCount, seedCandidates, conditions).get(0).getCandidate();
+	}
+
+	@Override
+	public List<EvaluatedCandidate<T>> evolvePopulation(int populationSize,
+			int eliteCount, TerminationCondition... conditions) {
+
+		return evolvePopulation(populationSize, eliteCount, Collections.<T>emptyList(), conditions);
+	}
+
+	@Override
+	public void addEvolutionObserver(EvolutionObserver<? super T> observer) {
+
+		observers.add(observer);
+	}
+
+	@Override
+	public void removeEvolutionObserver(EvolutionObserver<? super T> observer) {
+
+		observers.remove(observer);
+	}
+
+	@Override
+	public List<TerminationCondition> getSatisfiedTerminationConditions() {
+
+		return satisfiedTerminationConditions;
+	}
+}
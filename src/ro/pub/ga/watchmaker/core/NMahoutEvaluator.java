@@ -26,7 +26,6 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -37,7 +36,9 @@ import org.apache.mahout.common.StringUtils;
 import org.apache.mahout.ga.watchmaker.EvalMapper;
 import org.uncommons.watchmaker.framework.FitnessEvaluator;
 
+import ro.pub.ga.watchmaker.utils.CandidateCodecs;
 import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
+import ro.pub.ga.watchmaker.utils.IslandFitnessKey;
 
 import com.google.common.io.Closeables;
 import com.google.gson.reflect.TypeToken;
@@ -116,7 +117,7 @@ public class NMahoutEvaluator<T> {
     conf.setInt("mapreduce.input.lineinputformat.linespermap", linesPerMap);
     
     TypeToken<EvaluatedCandidateWritable<T>> evalCandidateTypeToken = new TypeToken<EvaluatedCandidateWritable<T>>() {};
-    job.setOutputKeyClass(LongWritable.class);
+    job.setOutputKeyClass(IslandFitnessKey.class);
     job.setOutputValueClass(evalCandidateTypeToken.getRawType());
     
     TypeToken<DistributedFitnessMapper<T>> mapperTypeToken = new TypeToken<DistributedFitnessMapper<T>>() {};
@@ -156,7 +157,7 @@ public class NMahoutEvaluator<T> {
     
     try {
       for (Object candidate : population) {
-        writer.write(StringUtils.toString(candidate));
+        writer.write(CandidateCodecs.toString(candidate));
         writer.newLine();
       }
     } finally {
@@ -25,12 +25,12 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.mahout.common.iterator.sequencefile.PathFilters;
 import org.apache.mahout.common.iterator.sequencefile.SequenceFileValueIterable;
 
 import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
+import ro.pub.ga.watchmaker.utils.IslandFitnessKey;
 
 import com.google.common.collect.Lists;
 import com.google.gson.reflect.TypeToken;
@@ -71,7 +71,7 @@ public class NOutputUtils<T> {
                                        Collection<EvaluatedCandidateWritable<T>> evaluations) throws IOException {
 	  
 	TypeToken<EvaluatedCandidateWritable<T>> evalCandidateTypeToken = new TypeToken<EvaluatedCandidateWritable<T>>() {};
-    SequenceFile.Sorter sorter = new SequenceFile.Sorter(fs, LongWritable.class, evalCandidateTypeToken.getRawType(), conf);
+    SequenceFile.Sorter sorter = new SequenceFile.Sorter(fs, IslandFitnessKey.class, evalCandidateTypeToken.getRawType(), conf);
     
     // merge and sort the outputs
     Path output = new Path(outpath, "output.sorted");
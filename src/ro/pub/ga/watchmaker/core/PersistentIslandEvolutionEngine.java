@@ -0,0 +1,391 @@
+package ro.pub.ga.watchmaker.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.mahout.common.StringUtils;
+import org.uncommons.watchmaker.framework.CandidateFactory;
+import org.uncommons.watchmaker.framework.EvaluatedCandidate;
+import org.uncommons.watchmaker.framework.EvolutionEngine;
+import org.uncommons.watchmaker.framework.EvolutionObserver;
+import org.uncommons.watchmaker.framework.EvolutionaryOperator;
+import org.uncommons.watchmaker.framework.FitnessEvaluator;
+import org.uncommons.watchmaker.framework.PopulationData;
+import org.uncommons.watchmaker.framework.SelectionStrategy;
+import org.uncommons.watchmaker.framework.TerminationCondition;
+
+import ro.pub.ga.watchmaker.utils.CandidateCodecs;
+import ro.pub.ga.watchmaker.utils.SideDataStore;
+
+/**
+ * Island model run on long-lived {@link IslandWorker} processes instead of one MapReduce job per epoch.
+ * The islands stay in the memory of the workers for the whole evolution; each epoch the driver only sends
+ * the migrants and receives, for every island, its best candidate, its fitness statistics and its emigrants.
+ * <p>
+ * The epochs follow {@link IslandEvolution}, as in the other island engines, and the island i is hosted
+ * by the worker i % workers. Like the map tasks, every island draws from its own stream of the epoch
+ * ({@link RandomStreams}) and the workers restore the termination conditions as they were when the engine
+ * was created at the start of every epoch.
+ */
+public class PersistentIslandEvolutionEngine<T> implements EvolutionEngine<T> {
+
+	private final CandidateFactory<T> candidateFactory;
+	private final FitnessEvaluator<? super T> fitnessEvaluator;
+	private final Random rng;
+	private final boolean doMigration;
+	private final int islandCount;
+	private final List<InetSocketAddress> workers;
+
+	private final String stringifiedEvolutionScheme;
+	private final String stringifiedFitnessEvaluator;
+	private final String stringifiedSelectionStrategy;
+	private final String stringifiedCandidateFactory;
+	private final long randomSeed;
+	private final List<EvolutionObserver<? super T>> observers = new ArrayList<EvolutionObserver<? super T>>();
+	private List<TerminationCondition> satisfiedTerminationConditions;
+
+	public PersistentIslandEvolutionEngine(CandidateFactory<T> candidateFactory,
+			EvolutionaryOperator<T> evolutionScheme,
+			FitnessEvaluator<? super T> fitnessEvaluator,
+			SelectionStrategy<? super T> selectionStrategy,
+			Random rng,
+			boolean doMigration,
+			int islandCount,
+			List<InetSocketAddress> workers) {
+
+		this.candidateFactory = candidateFactory;
+		this.fitnessEvaluator = fitnessEvaluator;
+		this.rng = rng;
+		this.doMigration = doMigration;
+		this.islandCount = islandCount;
+		this.workers = new ArrayList<InetSocketAddress>(workers);
+
+		try {
+
+			//The workers load the datasets held by the components from the shared file system
+			SideDataStore sideDataStore = new SideDataStore(FileSystem.get(new Configuration()), SideDataStore.DEFAULT_DIRECTORY);
+			sideDataStore.publish(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy);
+		} catch (IOException e) {
+
+			e.printStackTrace();
+		}
+
+		this.stringifiedEvolutionScheme = StringUtils.toString(evolutionScheme);
+		this.stringifiedFitnessEvaluator = StringUtils.toString(fitnessEvaluator);
+		this.stringifiedSelectionStrategy = StringUtils.toString(selectionStrategy);
+		this.stringifiedCandidateFactory = StringUtils.toString(candidateFactory);
+		this.randomSeed = rng.nextLong();
+	}
+
+	@Override
+	public List<EvaluatedCandidate<T>> evolvePopulation(int populationSize,
+			int eliteCount,
+			Collection<T> seedCandidates,
+			TerminationCondition... conditions) {
+
+		List<T> population = candidateFactory.generateInitialPopulation(populationSize, seedCandidates, rng);
+
+		long startTime = System.currentTimeMillis();
+		int generationCount = IslandEvolution.getEpochGenerationCount(IslandEvolution.getGenerationCount(conditions));
+		int islandEliteCount = (int)Math.ceil(((double)eliteCount) / islandCount);
+		int migrationCount = populationSize / (5 * islandCount);
+		String stringifiedConditions = StringUtils.toString(Arrays.asList(conditions));
+		boolean natural = fitnessEvaluator.isNatural();
+
+		List<List<T>> islands = IslandEvolution.splitPopulation(population, islandCount);
+		int workerCount = Math.min(workers.size(), islandCount);
+
+		//The migrants received by every island, sent with the next EVOLVE command
+		List<List<EvaluatedCandidate<T>>> inboxes = new ArrayList<List<EvaluatedCandidate<T>>>(islandCount);
+		for(int i = 0; i < islandCount; i++) {
+
+			inboxes.add(new ArrayList<EvaluatedCandidate<T>>());
+		}
+
+		List<Connection> connections = new ArrayList<Connection>(workerCount);
+		try {
+
+			for(int w = 0; w < workerCount; w++) {
+
+				Connection connection = new Connection(workers.get(w));
+				connections.add(connection);
+
+				DataOutputStream out = connection.out;
+				out.writeByte(IslandWorkerProtocol.CONFIGURE);
+				Text.writeString(out, stringifiedCandidateFactory);
+				Text.writeString(out, stringifiedEvolutionScheme);
+				Text.writeString(out, stringifiedFitnessEvaluator);
+				Text.writeString(out, stringifiedSelectionStrategy);
+				out.writeLong(randomSeed);
+				Text.writeString(out, stringifiedConditions);
+				WritableUtils.writeVInt(out, generationCount);
+				WritableUtils.writeVInt(out, islandEliteCount);
+				WritableUtils.writeVInt(out, migrationCount);
+				out.writeBoolean(doMigration);
+				WritableUtils.writeVInt(out, islandCount);
+				WritableUtils.writeVInt(out, getHostedIslands(w, workerCount).size());
+				for(int island: getHostedIslands(w, workerCount)) {
+
+					WritableUtils.writeVInt(out, island);
+					IslandWorkerProtocol.writeCandidates(out, islands.get(island));
+				}
+				out.flush();
+			}
+			for(Connection connection: connections) {
+
+				IslandWorkerProtocol.readStatus(connection.in);
+			}
+
+			EvaluatedCandidate<T> bestCandidate = null;
+			boolean terminate;
+			int epoch = 1;
+
+			do {
+
+				//Start the epoch on all the workers before waiting for any of them
+				for(int w = 0; w < workerCount; w++) {
+
+					DataOutputStream out = connections.get(w).out;
+					out.writeByte(IslandWorkerProtocol.EVOLVE);
+					WritableUtils.writeVInt(out, epoch);
+					for(int island: getHostedIslands(w, workerCount)) {
+
+						IslandWorkerProtocol.writeEvaluatedCandidates(out, inboxes.get(island));
+						inboxes.get(island).clear();
+					}
+					out.flush();
+				}
+
+				//Merge the statistics of the islands (Chan et al.) and route the migrants
+				EvaluatedCandidate<T> crtBestCandidate = null;
+				int count = 0;
+				double mean = 0;
+				double m2 = 0;
+				for(int w = 0; w < workerCount; w++) {
+
+					DataInputStream in = connections.get(w).in;
+					IslandWorkerProtocol.readStatus(in);
+					for(int i = getHostedIslands(w, workerCount).size(); i > 0; i--) {
+
+						int island = WritableUtils.readVInt(in);
+						T candidate = CandidateCodecs.readCandidate(in);
+						EvaluatedCandidate<T> islandBest = new EvaluatedCandidate<T>(candidate, in.readDouble());
+						int islandSize = WritableUtils.readVInt(in);
+						double islandMean = in.readDouble();
+						double islandM2 = in.readDouble();
+						List<EvaluatedCandidate<T>> migrants = IslandWorkerProtocol.readEvaluatedCandidates(in);
+
+						if(crtBestCandidate == null || isBetter(islandBest, crtBestCandidate, natural)) {
+
+							crtBestCandidate = islandBest;
+						}
+
+						if(islandSize > 0) {
+
+							int total = count + islandSize;
+							double delta = islandMean - mean;
+							mean += delta * islandSize / total;
+							m2 += islandM2 + delta * delta * ((double)count * islandSize / total);
+							count = total;
+						}
+
+						inboxes.get(IslandEvolution.getMigrationTarget(island, islandCount)).addAll(migrants);
+					}
+				}
+
+				PopulationData<T> populationData = new PopulationData<T>(crtBestCandidate.getCandidate(),
+						crtBestCandidate.getFitness(),
+						mean,
+						Math.sqrt(m2 / count),
+						natural,
+						count,
+						islandEliteCount,
+						epoch * generationCount,
+						System.currentTimeMillis() - startTime);
+
+				if(bestCandidate == null || isBetter(crtBestCandidate, bestCandidate, natural)) {
+
+					bestCandidate = crtBestCandidate;
+				}
+
+				for(EvolutionObserver<? super T> observer: observers) {
+
+					observer.populationUpdate(populationData);
+				}
+
+				//The reducer checks a fresh copy of the conditions each epoch
+				List<TerminationCondition> epochConditions = StringUtils.fromString(stringifiedConditions);
+				terminate = IslandEvolution.shouldTerminate(populationData, epochConditions);
+				if(terminate) {
+
+					satisfiedTerminationConditions = new ArrayList<TerminationCondition>();
+					for(TerminationCondition condition: epochConditions) {
+
+						if(condition.shouldTerminate(populationData)) {
+
+							satisfiedTerminationConditions.add(condition);
+						}
+					}
+				}
+
+				epoch++;
+			} while(!terminate);
+
+			//Collect the islands, with the migrants of the last epoch
+			List<EvaluatedCandidate<T>> evolvedPopulation = new ArrayList<EvaluatedCandidate<T>>(populationSize);
+			for(Connection connection: connections) {
+
+				connection.out.writeByte(IslandWorkerProtocol.COLLECT);
+				connection.out.flush();
+			}
+			for(int w = 0; w < workerCount; w++) {
+
+				DataInputStream in = connections.get(w).in;
+				IslandWorkerProtocol.readStatus(in);
+				for(int island: getHostedIslands(w, workerCount)) {
+
+					List<EvaluatedCandidate<T>> islandPopulation = IslandWorkerProtocol.readEvaluatedCandidates(in);
+					evolvedPopulation.addAll(islandPopulation);
+					evolvedPopulation.addAll(inboxes.get(island));
+				}
+			}
+
+			IslandEvolution.sortPopulation(evolvedPopulation, natural);
+			evolvedPopulation.add(0, bestCandidate);
+			evolvedPopulation.remove(populationSize);
+
+			return evolvedPopulation;
+		} catch (IOException e) {
+
+			throw new IllegalStateException("Island workers failed", e);
+		} finally {
+
+			for(Connection connection: connections) {
+
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Asks every worker process to exit.
+	 */
+	public void shutdownWorkers() {
+
+		for(InetSocketAddress worker: workers) {
+
+			try {
+
+				Connection connection = new Connection(worker);
+				connection.out.writeByte(IslandWorkerProtocol.SHUTDOWN);
+				connection.close();
+			} catch (IOException e) {
+
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private List<Integer> getHostedIslands(int worker, int workerCount) {
+
+		List<Integer> hostedIslands = new ArrayList<Integer>();
+		for(int i = worker; i < islandCount; i += workerCount) {
+
+			hostedIslands.add(i);
+		}
+
+		return hostedIslands;
+	}
+
+	private boolean isBetter(EvaluatedCandidate<T> candidate, EvaluatedCandidate<T> other, boolean natural) {
+
+		return natural ?
+				candidate.getFitness() > other.getFitness() :
+				candidate.getFitness() < other.getFitness();
+	}
+
+	/**
+	 * The connection to a worker, kept open for the whole evolution.
+	 */
+	private static class Connection {
+
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+
+		public Connection(InetSocketAddress address) throws IOException {
+
+			socket = new Socket();
+			socket.connect(address);
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		public void close() {
+
+			try {
+
+				out.flush();
+				socket.close();
+			} catch (IOException e) {
+
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public T evolve(int populationSize, int eliteCount,
+			TerminationCondition... conditions) {
+
+		return evolve(populationSize, eliteCount, Collections.<T>emptyList(), conditions);
+	}
+
+	@Override
+	public T evolve(int populationSize, int eliteCount,
+			Collection<T> seedCandidates, TerminationCondition... conditions) {
+
+		return evolvePopulation(populationSize, eliteCount, seedCandidates, conditions).get(0).getCandidate();
+	}
+
+	@Override
+	public List<EvaluatedCandidate<T>> evolvePopulation(int populationSize,
+			int eliteCount, TerminationCondition... conditions) {
+
+		return evolvePopulation(populationSize, eliteCount, Collections.<T>emptyList(), conditions);
+	}
+
+	@Override
+	public void addEvolutionObserver(EvolutionObserver<? super T> observer) {
+
+		observers.add(observer);
+	}
+
+	@Override
+	public void removeEvolutionObserver(EvolutionObserver<? super T> observer) {
+
+		observers.remove(observer);
+	}
+
+	@Override
+	public List<TerminationCondition> getSatisfiedTerminationConditions() {
+
+		return satisfiedTerminationConditions;
+	}
+}
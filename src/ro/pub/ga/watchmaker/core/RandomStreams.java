@@ -0,0 +1,83 @@
+package ro.pub.ga.watchmaker.core;
+
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+
+import ro.pub.ga.watchmaker.utils.SplitMixRandom;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The random streams of an evolution, all derived from the root seed the engine draws from its generator:
+ * the seed of an epoch (or generation) is derived from the root seed and the epoch, and the streams of the
+ * islands, reducers and partitioners from the seed of the epoch and their index. Every island gets its own
+ * {@link SplitMixRandom}, so the islands explore independently, a run is reproducible whatever the tasks
+ * the islands are assigned to, and the threads of a task never share a generator.
+ */
+public final class RandomStreams {
+
+	//The consumers of the streams of an epoch
+	public static final long ISLAND = 0;
+	public static final long REDUCER = 1;
+	public static final long PARTITIONER = 2;
+	public static final long SAMPLE = 3;
+
+	private RandomStreams() {
+
+	}
+
+	public static long getEpochSeed(long rootSeed, int epoch) {
+
+		return SplitMixRandom.derive(rootSeed, epoch);
+	}
+
+	/**
+	 * Sets the seed of {@code epoch} as {@link Constants#RANDOM_SEED}, for the tasks of its job.
+	 */
+	public static void configure(Configuration conf, long rootSeed, int epoch) {
+
+		conf.setLong(Constants.RANDOM_SEED, getEpochSeed(rootSeed, epoch));
+	}
+
+	/**
+	 * The stream of {@code island} in the epoch of {@code epochSeed}.
+	 */
+	public static Random forIsland(long epochSeed, long island) {
+
+		return new SplitMixRandom(SplitMixRandom.derive(epochSeed, ISLAND, island));
+	}
+
+	public static Random forIsland(Configuration conf, long island) {
+
+		return forIsland(getSeed(conf), island);
+	}
+
+	/**
+	 * The stream of a {@code consumer} of the current task, the task being identified by its index in the job.
+	 */
+	public static Random forTask(Configuration conf, long consumer) {
+
+		int task = Math.max(conf.getInt(MRJobConfig.TASK_PARTITION, 0), 0);
+
+		return new SplitMixRandom(SplitMixRandom.derive(getSeed(conf), consumer, task));
+	}
+
+	/**
+	 * The seed of the fitness sample of the job; the same in every task, so that all the candidates
+	 * of a generation are estimated on the same points.
+	 */
+	public static long getSampleSeed(Configuration conf) {
+
+		return SplitMixRandom.derive(getSeed(conf), SAMPLE);
+	}
+
+	private static long getSeed(Configuration conf) {
+
+		String seed = conf.get(Constants.RANDOM_SEED);
+		Preconditions.checkArgument(seed != null, "'RANDOM_SEED' job parameter not found");
+
+		return Long.parseLong(seed);
+	}
+}
@@ -0,0 +1,128 @@
+package ro.pub.ga.watchmaker.example.clustering;
+
+/**
+ * Asignarea unui punct la cel mai apropiat centru, cu inegalitatea triunghiului pe distantele dintre centre
+ * (lema lui Elkan): daca d(c, c') >= 2 d(x, c), centrul c' nu poate fi mai aproape de x decat c, deci
+ * distanta d(x, c') nu se mai calculeaza. Cautarea porneste de la centrul punctului anterior si parcurge
+ * centrele in ordine, astfel ca rezultatul e acelasi cu al cautarii exhaustive, inclusiv la distante egale.
+ * Pentru putine centre sau o singura dimensiune se face cautarea exhaustiva.
+ */
+class CenterAssignment {
+
+	// sub aceste limite distantele dintre centre costa mai mult decat economisesc
+	static final int MIN_CENTERS = 4;
+	static final int MIN_DIMENSIONS = 2;
+
+	private int nrOfCenters;
+	private int dim;
+	private boolean pruning;
+	private float[] centers;
+	// jumatate din distanta dintre centrele i si j, in halfDistance[i * nrOfCenters + j]
+	private double[] halfDistance = new double[0];
+	// jumatate din distanta pana la cel mai apropiat alt centru
+	private double[] nearestHalf = new double[0];
+	// marja pentru erorile de rotunjire ale distantelor calculate in float
+	private float slack;
+
+	/**
+	 * Pregateste centrele unui candidat; se apeleaza inainte de {@link #nearest} pentru fiecare candidat.
+	 */
+	void prepare(float[] centers, int nrOfCenters, int dim, int nrOfPoints) {
+		this.centers = centers;
+		this.nrOfCenters = nrOfCenters;
+		this.dim = dim;
+		this.pruning = nrOfCenters >= MIN_CENTERS && dim >= MIN_DIMENSIONS && nrOfPoints >= nrOfCenters * nrOfCenters;
+		if (!pruning) {
+			return;
+		}
+
+		if (halfDistance.length < nrOfCenters * nrOfCenters) {
+			halfDistance = new double[nrOfCenters * nrOfCenters];
+			nearestHalf = new double[nrOfCenters];
+		}
+		for (int i = 0; i < nrOfCenters; i++) {
+			nearestHalf[i] = Double.POSITIVE_INFINITY;
+		}
+		for (int i = 0; i < nrOfCenters; i++) {
+			for (int j = i + 1; j < nrOfCenters; j++) {
+				double distance = 0;
+				for (int d = 0; d < dim; d++) {
+					double difference = (double)centers[i * dim + d] - centers[j * dim + d];
+					distance += difference * difference;
+				}
+				double half = Math.sqrt(distance) / 2;
+				halfDistance[i * nrOfCenters + j] = half;
+				halfDistance[j * nrOfCenters + i] = half;
+				nearestHalf[i] = Math.min(nearestHalf[i], half);
+				nearestHalf[j] = Math.min(nearestHalf[j], half);
+			}
+		}
+		slack = 1 + 1e-6f * (dim + 1);
+	}
+
+	/**
+	 * @param points - punctele, pe linii, cu cate pointDim coordonate
+	 * @param point - pozitia primei coordonate a punctului
+	 * @param guess - centrul de la care porneste cautarea, de obicei al punctului anterior
+	 * @return primul centru aflat la distanta minima, ca in cautarea exhaustiva
+	 */
+	int nearest(float[] points, int point, int guess) {
+		if (!pruning) {
+			return nearestExhaustive(points, point);
+		}
+
+		float guessSquared = squaredDistance(points, point, guess);
+		double bound = Math.sqrt(guessSquared) * slack;
+		if (bound < nearestHalf[guess]) {
+			// toate celelalte centre sunt strict mai departe
+			return guess;
+		}
+
+		float minSquared = Float.POSITIVE_INFINITY;
+		float minDistance = Float.MAX_VALUE;
+		int centerIndex = 0;
+		boolean found = false;
+		int guessRow = guess * nrOfCenters;
+		for (int i = 0; i < nrOfCenters; i++) {
+			if (halfDistance[guessRow + i] > bound
+					|| (found && halfDistance[centerIndex * nrOfCenters + i] > minDistance * slack)) {
+				continue;
+			}
+			float squared = (i == guess) ? guessSquared : squaredDistance(points, point, i);
+			if (squared < minSquared) {
+				float distance = (float)Math.sqrt(squared);
+				if (distance < minDistance) {
+					minSquared = squared;
+					minDistance = distance;
+					centerIndex = i;
+					found = true;
+				}
+			}
+		}
+		return centerIndex;
+	}
+
+	// se compara patratele distantelor, radacina se calculeaza doar cand se gaseste un minim nou,
+	// ca doua distante egale dupa rotunjire sa aleaga tot primul centru
+	private int nearestExhaustive(float[] points, int point) {
+		float minSquared = Float.POSITIVE_INFINITY;
+		float minDistance = Float.MAX_VALUE;
+		int centerIndex = 0;
+		for (int i = 0; i < nrOfCenters; i++) {
+			float squared = squaredDistance(points, point, i);
+			if (squared < minSquared) {
+				float distance = (float)Math.sqrt(squared);
+				if (distance < minDistance) {
+					minSquared = squared;
+					minDistance = distance;
+					centerIndex = i;
+				}
+			}
+		}
+		return centerIndex;
+	}
+
+	private float squaredDistance(float[] points, int point, int center) {
+		return CenterListEvaluator.getSquaredDistance(centers, center * dim, points, point, dim);
+	}
+}
@@ -1,5 +1,6 @@
 package ro.pub.ga.watchmaker.example.clustering;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -7,18 +8,28 @@ import java.util.Random;
 
 import org.uncommons.watchmaker.framework.factories.AbstractCandidateFactory;
 
-public class CenterCandidateFactory<T> extends AbstractCandidateFactory<ArrayList<T>> {
+import ro.pub.ga.watchmaker.utils.SideData;
+import ro.pub.ga.watchmaker.utils.SideDataProvider;
+import ro.pub.ga.watchmaker.utils.SideDataStore;
 
-	private List<ArrayList<T>> points;
+public class CenterCandidateFactory<T> extends AbstractCandidateFactory<ArrayList<T>> implements SideDataProvider {
+
+	private SideData<List<ArrayList<T>>> pointsData;
 	private int nrOfCenters;
 	
 	public CenterCandidateFactory(List<ArrayList<T>> points, int nrOfCenters) {
-		this.points = points;
+		this.pointsData = new SideData<List<ArrayList<T>>>(points);
 		this.nrOfCenters = nrOfCenters;
 	}
 	
+	@Override
+	public void publishSideData(SideDataStore store) throws IOException {
+		store.publish(pointsData);
+	}
+	
 	@Override
 	public ArrayList<T> generateRandomCandidate(Random rng) {
+		List<ArrayList<T>> points = pointsData.get();
 		HashSet<Integer> usedIndexes = new HashSet<Integer>();
 		ArrayList<T> candidate = new ArrayList<T>();
 		for (int i = 0 ; i < nrOfCenters; i++) {
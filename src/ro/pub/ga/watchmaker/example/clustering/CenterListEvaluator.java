@@ -1,123 +1,369 @@
 package ro.pub.ga.watchmaker.example.clustering;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.uncommons.watchmaker.framework.FitnessEvaluator;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
-public class CenterListEvaluator implements FitnessEvaluator<List<Float>> {
-	private List<ArrayList<Float>> pointsSet;
+import ro.pub.ga.watchmaker.core.IslandCounters;
+import ro.pub.ga.watchmaker.utils.BatchFitnessEvaluator;
+import ro.pub.ga.watchmaker.utils.ColumnarDataset;
+import ro.pub.ga.watchmaker.utils.ColumnarDatasetFormat;
+import ro.pub.ga.watchmaker.utils.SideData;
+import ro.pub.ga.watchmaker.utils.SideDataProvider;
+import ro.pub.ga.watchmaker.utils.SideDataStore;
+import ro.pub.ga.watchmaker.utils.SplitMixRandom;
+
+public class CenterListEvaluator implements BatchFitnessEvaluator<List<Float>>, SideDataProvider {
+	// esantionul cel mai mic pe care se estimeaza fitness-ul
+	public static final int MIN_SAMPLE_SIZE = 256;
+	// cuantila normala a intervalului de incredere de 95% raportat pentru fitness-ul estimat
+	private static final double CONFIDENCE_Z = 1.96;
+	
+	private SideData<ColumnarDataset> points;
 	private int nrOfCenters;
-	private boolean modifyCandidateFlag = false;
+	private transient volatile Rows rows;
+	// vectorii de lucru ai fiecarui thread, refacuti cand se schimba setul de puncte
+	private transient volatile ThreadLocal<Scratch> threadScratch;
+	// evaluatorul esantionat (vezi withSample): 0 inseamna fitness exact, pe toate punctele
+	private transient int sampleSize;
+	private transient long sampleSeed;
+	private transient AtomicLong sampledEvaluations;
+	private transient AtomicLong boundPpm;
 	
 	public CenterListEvaluator(List<ArrayList<Float>> pointsSet, int nrOfCenters) {
-		this.pointsSet = pointsSet;
+		this.points = new SideData<ColumnarDataset>(toDataset(pointsSet), new ColumnarDatasetFormat());
+		this.nrOfCenters = nrOfCenters;
+	}
+	
+	private CenterListEvaluator(SideData<ColumnarDataset> points, int nrOfCenters, int sampleSize, long sampleSeed) {
+		this.points = points;
 		this.nrOfCenters = nrOfCenters;
+		this.sampleSize = sampleSize;
+		this.sampleSeed = sampleSeed;
+		this.sampledEvaluations = new AtomicLong();
+		this.boundPpm = new AtomicLong();
+	}
+	
+	/**
+	 * Evaluatorul care estimeaza fitness-ul pe un esantion aleator din puncte, acelasi pentru acelasi seed:
+	 * suma distantelor esantionului inmultita cu nr de puncte / marimea esantionului. Centrele candidatilor
+	 * se actualizeaza doar cu punctele esantionului (un pas de k-means pe mini-batch).
+	 *
+	 * @param fraction - fractiunea din puncte, cel putin MIN_SAMPLE_SIZE puncte; de la 1 in sus fitness-ul e exact
+	 * @return acest evaluator, daca esantionul ar cuprinde toate punctele
+	 */
+	public CenterListEvaluator withSample(double fraction, long seed) {
+		int nrOfPoints = points.get().getRowCount();
+		int size = (int)Math.min(Math.max(Math.ceil(fraction * nrOfPoints), MIN_SAMPLE_SIZE), nrOfPoints);
+		if (fraction >= 1 || size >= nrOfPoints) {
+			return this;
+		}
+		return new CenterListEvaluator(points, nrOfCenters, size, seed);
+	}
+	
+	public boolean isSampled() {
+		return sampleSize > 0;
+	}
+	
+	// adauga la contoarele jobului evaluarile estimate si intervalele lor de incredere
+	public void reportSample(TaskAttemptContext context) {
+		long evaluations = getSampledEvaluations();
+		if (evaluations > 0) {
+			context.getCounter(IslandCounters.SAMPLED_EVALUATIONS).increment(evaluations);
+			context.getCounter(IslandCounters.SAMPLE_BOUND_PPM).increment(getBoundPpm());
+			System.out.println("Fitness estimated on " + sampleSize + " points for " + evaluations + " candidates, mean 95% bound +/-"
+					+ (getBoundPpm() / evaluations / 1e4) + "%");
+		}
+	}
+	
+	// evaluarile estimate pe esantion
+	public long getSampledEvaluations() {
+		return sampledEvaluations == null ? 0 : sampledEvaluations.get();
+	}
+	
+	// suma semi-latimilor relative ale intervalelor de incredere ale evaluarilor estimate, in milionimi
+	public long getBoundPpm() {
+		return boundPpm == null ? 0 : boundPpm.get();
+	}
+	
+	// punctele duplicate sunt eliminate, cum faceau inainte HashSet-urile per centru
+	static ColumnarDataset toDataset(List<ArrayList<Float>> pointsSet) {
+		List<ArrayList<Float>> distinctPoints = new ArrayList<ArrayList<Float>>(new LinkedHashSet<ArrayList<Float>>(pointsSet));
+		int dim = distinctPoints.isEmpty() ? 0 : distinctPoints.get(0).size();
+		ColumnarDataset.Builder builder = new ColumnarDataset.Builder(distinctPoints.size(), dim, ColumnarDataset.FLOAT, false);
+		for (int j = 0; j < distinctPoints.size(); j++) {
+			for (int d = 0; d < dim; d++) {
+				builder.set(j, d, distinctPoints.get(j).get(d));
+			}
+		}
+		return builder.build();
+	}
+	
+	@Override
+	public void publishSideData(SideDataStore store) throws IOException {
+		store.publish(points);
 	}
 	
 	@Override
 	public double getFitness(List<Float> candidate,
 			List<? extends List<Float>> population) {
 		
-		ArrayList<HashSet<ArrayList<Float>>> pointAssignment = new ArrayList<HashSet<ArrayList<Float>>>();
-		for (int i = 0; i < nrOfCenters; i++) {
-			pointAssignment.add(new HashSet<ArrayList<Float>>());
+		return getFitness(candidate, false, getScratch());
+	}
+	
+	// setul de puncte si vectorii de lucru se iau o singura data pentru tot batch-ul
+	@Override
+	public double[] getBatchFitness(List<? extends List<Float>> candidates) {
+		return getBatchFitness(candidates, false);
+	}
+	
+	public double[] getBatchFitnessAndUpdateCandidates(List<? extends List<Float>> candidates) {
+		return getBatchFitness(candidates, true);
+	}
+	
+	private double[] getBatchFitness(List<? extends List<Float>> candidates, boolean modifyCandidate) {
+		Scratch scratch = getScratch();
+		double[] fitness = new double[candidates.size()];
+		for (int i = 0; i < fitness.length; i++) {
+			fitness[i] = getFitness(candidates.get(i), modifyCandidate, scratch);
 		}
-		
-		// create arrayList with centers
-		ArrayList<ArrayList<Float>> centers = new ArrayList<ArrayList<Float>>();
-		int dim = candidate.size() / nrOfCenters;
-		for (int i = 0; i < nrOfCenters; i++) {
-			ArrayList<Float> center = new ArrayList<Float>();
-			for (int j = i * dim; j < (i + 1) * dim; j++) {
-				center.add(new Float(candidate.get(j).floatValue()));
+		return fitness;
+	}
+	
+	// punctele, copiate o singura data din setul mapat in memorie intr-un vector float[] pe linii
+	private Rows getRows() {
+		ColumnarDataset pointsSet = points.get();
+		Rows current = rows;
+		if (current == null || current.source != pointsSet) {
+			current = new Rows(pointsSet);
+			if (sampleSize > 0) {
+				current = current.sample(sampleSize, sampleSeed);
 			}
-			centers.add(center);
+			rows = current;
 		}
-
-		//---------------------
-		StringBuilder sb = new StringBuilder();
-        sb.append("[Fitness]Fitness for:");
-        sb.append("\n[Fitness]");
-        int k = 0;
-		for (Float f : candidate) {
-			if (k%dim == 0) {
-				sb.append("   ");
+		return current;
+	}
+	
+	// vectorii de lucru ai threadului curent; evaluarile cate un candidat nu mai aloca nimic
+	private Scratch getScratch() {
+		Rows current = getRows();
+		ThreadLocal<Scratch> local = threadScratch;
+		if (local == null) {
+			synchronized (this) {
+				local = threadScratch;
+				if (local == null) {
+					local = new ThreadLocal<Scratch>();
+					threadScratch = local;
+				}
 			}
-			k++;
-			sb.append(f + " ");
 		}
-		//---------------------
+		Scratch scratch = local.get();
+		if (scratch == null || scratch.rows != current) {
+			scratch = new Scratch(current, nrOfCenters);
+			local.set(scratch);
+		}
+		return scratch;
+	}
+	
+	// modifyCandidate e parametru, nu camp, ca evaluatorul sa poata fi folosit din mai multe threaduri
+	private double getFitness(List<Float> candidate, boolean modifyCandidate, Scratch scratch) {
+		
+		float[] pointValues = scratch.rows.values;
+		int nrOfPoints = scratch.rows.count;
+		int pointDim = scratch.rows.dim;
+		
+		// centrele, unul dupa altul, in vectorul de lucru
+		int dim = candidate.size() / nrOfCenters;
+		float[] centers = scratch.centers(nrOfCenters * dim);
+		for (int j = 0; j < nrOfCenters * dim; j++) {
+			centers[j] = candidate.get(j).floatValue();
+		}
 		
 		// asigneaza fiecare punct din pointsSet unui centru - cel mai aproapiat ca distanta
-		//pt fiecare centru voi crea un hashSet
-		for (int j = 0; j < pointsSet.size(); j++) {
-			ArrayList<Float> point = pointsSet.get(j);
-			// cauta cel mai apropiat centru existent 
-			Float minDistance = Float.MAX_VALUE;
-			int centerIndex = 0;
-			for (int i = 0; i < centers.size(); i++) {
-				ArrayList<Float> center = centers.get(i);
-				Float distance = getDistance(center, point);
-				if (distance < minDistance) {
-					minDistance = distance;
-					centerIndex = i;
-				}
+		int[] assignedCenter = scratch.assignedCenter;
+		int[] assignedCount = scratch.assignedCount;
+		float[] sums = scratch.sums(nrOfCenters * dim);
+		Arrays.fill(assignedCount, 0);
+		System.arraycopy(centers, 0, sums, 0, nrOfCenters * dim);
+		CenterAssignment assignment = scratch.assignment;
+		assignment.prepare(centers, nrOfCenters, dim, nrOfPoints);
+		int centerIndex = 0;
+		for (int j = 0; j < nrOfPoints; j++) {
+			int point = j * pointDim;
+			// cautarea porneste de la centrul punctului anterior
+			centerIndex = assignment.nearest(pointValues, point, centerIndex);
+			assignedCenter[j] = centerIndex;
+			assignedCount[centerIndex]++;
+			// sumele pe centru pornesc de la valorile din candidate, punctele se aduna in ordinea lor
+			int sum = centerIndex * dim;
+			for (int d = 0; d < dim; d++) {
+				sums[sum + d] += pointValues[point + d];
 			}
-			pointAssignment.get(centerIndex).add(point);
 		}
 		
 		// calculeaza si seteaza noile centre ca medie aritmetica
-		// folosind valorile din hashset si din candidate
-		for (int i = 0; i < centers.size(); i++) {
+		// folosind punctele asignate si valorile din candidate
+		for (int i = 0; i < nrOfCenters; i++) {
 			for (int d = 0; d < dim; d++) {
-				Float avg = new Float(centers.get(i).get(d));
-				for (ArrayList<Float> point : pointAssignment.get(i)) {
-					avg += point.get(d);
-				}
-				avg = avg / (pointAssignment.get(i).size() + 1);
+				float avg = sums[i * dim + d] / (assignedCount[i] + 1);
 				// update in candidate and centers (in centers because we use later for fitness computation
-				if (modifyCandidateFlag) {
+				if (modifyCandidate) {
 					candidate.set(i * dim + d, avg);
 				}
-				centers.get(i).set(d, avg);
+				centers[i * dim + d] = avg;
 			}
 		}
 		
+		// grupeaza indecsii punctelor dupa centru: punctele centrului i sunt in
+		// assignedPoints[assignmentStart[i]] ... assignedPoints[assignmentStart[i + 1] - 1]
+		int[] assignmentStart = scratch.assignmentStart;
+		int[] nextPosition = scratch.nextPosition;
+		int[] assignedPoints = scratch.assignedPoints;
+		for (int i = 0; i < nrOfCenters; i++) {
+			assignmentStart[i + 1] = assignmentStart[i] + assignedCount[i];
+		}
+		System.arraycopy(assignmentStart, 0, nextPosition, 0, nrOfCenters);
+		for (int j = 0; j < nrOfPoints; j++) {
+			assignedPoints[nextPosition[assignedCenter[j]]++] = j;
+		}
+		
 		// calculeaza fitness ca suma distantelor pt fiecare centru la pc asignate lui
-		Float fitness = new Float(0);
-		for (int i = 0; i < centers.size(); i++) {
-			ArrayList<Float> center = centers.get(i);
-			for (ArrayList<Float> point : pointAssignment.get(i)) {
-				fitness += getDistance(center, point);
+		float fitness = 0;
+		double squaredDistances = 0;
+		for (int i = 0; i < nrOfCenters; i++) {
+			for (int p = assignmentStart[i]; p < assignmentStart[i + 1]; p++) {
+				float distance = (float)Math.sqrt(getSquaredDistance(centers, i * dim, pointValues, assignedPoints[p] * pointDim, dim));
+				fitness += distance;
+				squaredDistances += (double)distance * distance;
 			}
 		}
-		/*System.out.println("Fitness " + fitness);
-		*/
-		
-		sb.append(" => " + fitness);
-		//System.out.println(sb.toString());
 		
-		return fitness;
+		if (scratch.rows.totalCount == nrOfPoints) {
+			return fitness;
+		}
+		return estimateFitness(fitness, squaredDistances, nrOfPoints, scratch.rows.totalCount);
+	}
+	
+	// totalul estimat din esantion si semi-latimea relativa a intervalului de incredere,
+	// cu corectia pentru populatie finita
+	private double estimateFitness(double sampleSum, double sampleSquares, int n, int total) {
+		double mean = sampleSum / n;
+		double variance = (n > 1) ? Math.max(sampleSquares / n - mean * mean, 0) * n / (n - 1) : 0;
+		double estimate = mean * total;
+		double bound = CONFIDENCE_Z * total * Math.sqrt(variance / n * (1 - (double)n / total));
+		sampledEvaluations.incrementAndGet();
+		if (estimate > 0) {
+			boundPpm.addAndGet(Math.round(bound / estimate * 1e6));
+		}
+		return estimate;
 	}
 	
 	public double getFitnessAndUpdateCandidate(List<Float> candidate,
 			List<? extends List<Float>> population) {
-		modifyCandidateFlag = true;
-		double fitness = getFitness(candidate, population);
-		modifyCandidateFlag = false;
-		return fitness;
+		return getFitness(candidate, true, getScratch());
 	}
 	
-	public Float getDistance(ArrayList<Float> p1, ArrayList<Float> p2) {
+	static float getSquaredDistance(float[] centers, int center, float[] pointValues, int point, int dim) {
+		float distance = 0;
+		for (int i = 0; i < dim; i++) {
+			float difference = centers[center + i] - pointValues[point + i];
+			distance += difference * difference;
+		}
+		return distance;
+	}
+	
+	public float getDistance(List<Float> p1, List<Float> p2) {
 		float distance = 0;
 		for (int i = 0; i < p1.size(); i++) {
-			distance += ((p1.get(i) - p2.get(i)) * (p1.get(i) - p2.get(i)));
+			float difference = p1.get(i) - p2.get(i);
+			distance += difference * difference;
+		}
+		return (float)Math.sqrt(distance);
+	}
+	
+	// copia pe linii a setului de puncte: coordonata d a punctului j e in values[j * dim + d]
+	private static class Rows {
+		private final ColumnarDataset source;
+		private final float[] values;
+		private final int count;
+		private final int dim;
+		// punctele setului din care s-a luat esantionul
+		private final int totalCount;
+		
+		Rows(ColumnarDataset source) {
+			this(source, source.toFloatRows(), source.getRowCount(), source.getColumnCount(), source.getRowCount());
+		}
+		
+		private Rows(ColumnarDataset source, float[] values, int count, int dim, int totalCount) {
+			this.source = source;
+			this.values = values;
+			this.count = count;
+			this.dim = dim;
+			this.totalCount = totalCount;
+		}
+		
+		// esantion fara repetitie (Fisher-Yates partial), cu punctele in ordinea din set
+		Rows sample(int size, long seed) {
+			Random rng = new SplitMixRandom(seed);
+			int[] indices = new int[count];
+			for (int j = 0; j < count; j++) {
+				indices[j] = j;
+			}
+			for (int j = 0; j < size; j++) {
+				int other = j + rng.nextInt(count - j);
+				int index = indices[other];
+				indices[other] = indices[j];
+				indices[j] = index;
+			}
+			Arrays.sort(indices, 0, size);
+			float[] sampleValues = new float[size * dim];
+			for (int j = 0; j < size; j++) {
+				System.arraycopy(values, indices[j] * dim, sampleValues, j * dim, dim);
+			}
+			return new Rows(source, sampleValues, size, dim, count);
+		}
+	}
+	
+	// vectorii de lucru ai unui apel sau ai unui batch; nu se partajeaza intre threaduri
+	private static class Scratch {
+		private final Rows rows;
+		private final int[] assignedCenter;
+		private final int[] assignedPoints;
+		private final int[] assignedCount;
+		private final int[] assignmentStart;
+		private final int[] nextPosition;
+		private final CenterAssignment assignment = new CenterAssignment();
+		private float[] centers = new float[0];
+		private float[] sums = new float[0];
+		
+		Scratch(Rows rows, int nrOfCenters) {
+			this.rows = rows;
+			this.assignedCenter = new int[rows.count];
+			this.assignedPoints = new int[rows.count];
+			this.assignedCount = new int[nrOfCenters];
+			this.assignmentStart = new int[nrOfCenters + 1];
+			this.nextPosition = new int[nrOfCenters];
+		}
+		
+		float[] centers(int length) {
+			if (centers.length < length) {
+				centers = new float[length];
+			}
+			return centers;
+		}
+		
+		float[] sums(int length) {
+			if (sums.length < length) {
+				sums = new float[length];
+			}
+			return sums;
 		}
-		return new Float(Math.sqrt(distance));
 	}
 
 	@Override
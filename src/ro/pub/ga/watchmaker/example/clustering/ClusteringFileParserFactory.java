@@ -1,11 +1,17 @@
 package ro.pub.ga.watchmaker.example.clustering;
 
-import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
@@ -22,9 +28,10 @@ import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.NamedVector;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorWritable;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+
+import ro.pub.ga.watchmaker.utils.ColumnarDataset;
+
+import com.google.gson.stream.JsonReader;
 
 public class ClusteringFileParserFactory {
 	
@@ -49,66 +56,309 @@ public class ClusteringFileParserFactory {
 	
 	private static class FarmInputFileParser implements ClusteringFileParser<Float> {
 
+		// fisierele citite de un thread o data
+		private static final int PARSER_CHUNK_SIZE = 64;
+		private static final int PARSER_THREADS_PER_CORE = 4;
+		
 		private ArrayList<SensorCharacteristics> sensorsCharacteristics = new ArrayList<ClusteringFileParserFactory.FarmInputFileParser.SensorCharacteristics>();
 		String greenhouseName;
 		
 		@Override
 		public List<ArrayList<Float>> parseFiles(String filesPath) throws IOException {
+			ColumnarDataset dataset = parseDataset(filesPath);
+			int dim = dataset.getColumnCount();
+			List<ArrayList<Float>> points = new ArrayList<ArrayList<Float>>(dataset.getRowCount());
+			for (int j = 0; j < dataset.getRowCount(); j++) {
+				ArrayList<Float> point = new ArrayList<Float>(dim);
+				for (int d = 0; d < dim; d++) {
+					point.add(dataset.getFloat(j, d));
+				}
+				points.add(point);
+			}
+			
+			// write points to vectorWritable
+			//writePointsToHDFSSequenceFileFormat(points);
+			// comparatia cu o rulare mahout se face doar daca rezultatul ei e in director
 			FileSystem fs = FileSystem.get(new Configuration());
-			FileStatus[] status = fs.listStatus(new Path(filesPath));
-		   
-			List<ArrayList<Float>> points = new ArrayList<ArrayList<Float>>();
+			if (fs.exists(new Path(filesPath + "/part-r-00000")) && fs.exists(new Path(filesPath + "/part-m-00000"))) {
+				readSeqFile(filesPath);
+			}
+			return points;
+		}
+		
+		/**
+		 * Punctele din fisierele input* ale directorului: din copia binara locala (PointCache), daca fisierele
+		 * nu s-au schimbat de la ultima citire, altfel citite in paralel si salvate in copia binara.
+		 */
+		public ColumnarDataset parseDataset(String filesPath) throws IOException {
+			FileSystem fs = FileSystem.get(new Configuration());
+			Path directory = fs.makeQualified(new Path(filesPath));
+			
+			// fisierele se listeaza o singura data, in ordinea numelor
+			List<FileStatus> files = new ArrayList<FileStatus>();
+			for (FileStatus fileStatus : fs.listStatus(directory)) {
+				if (fileStatus.isFile() && fileStatus.getPath().getName().startsWith("input")) {
+					files.add(fileStatus);
+				}
+			}
+			Collections.sort(files, new Comparator<FileStatus>() {
+				@Override
+				public int compare(FileStatus first, FileStatus second) {
+					return first.getPath().getName().compareTo(second.getPath().getName());
+				}
+			});
+			
+			PointCache cache = new PointCache(directory.toString(), files);
+			List<String> schema = new ArrayList<String>();
+			ColumnarDataset dataset = cache.load(schema);
+			if (dataset != null) {
+				setSchema(schema);
+				System.out.println("Read " + dataset.getRowCount() + " points of " + files.size() + " files from the point cache");
+				return dataset;
+			}
+			
+			dataset = readPoints(fs, files);
+			cache.store(dataset, getSchema());
+			return dataset;
+		}
+		
+		private ColumnarDataset readPoints(final FileSystem fs, final List<FileStatus> files) throws IOException {
+			long startTime = System.currentTimeMillis();
+			// primul fisier nevid seteaza si caracteristicile senzorilor ce trebuie respectate de 
+			// celelalte fisiere
+			int first = 0;
+			SensorRecord firstRecord = null;
+			while (firstRecord == null && first < files.size()) {
+				firstRecord = readValidRecord(fs, files.get(first++).getPath(), null);
+			}
+			if (firstRecord == null) {
+				return new ColumnarDataset.Builder(0, 0, ColumnarDataset.FLOAT, false).build();
+			}
+			greenhouseName = firstRecord.name;
+			sensorsCharacteristics.clear();
+			for (int i = 0; i < firstRecord.types.size(); i++) {
+				sensorsCharacteristics.add(new SensorCharacteristics(firstRecord.types.get(i), firstRecord.units.get(i)));
+			}
+			
+			// celelalte fisiere se citesc in paralel, pe bucati; deschiderea unui fisier inseamna mai ales
+			// asteptare dupa namenode si datanode, deci se folosesc mai multe threaduri decat procesoare
+			final float[][] values = new float[files.size()][];
+			values[first - 1] = firstRecord.values;
+			List<Callable<Void>> chunks = new ArrayList<Callable<Void>>();
+			for (int from = first; from < files.size(); from += PARSER_CHUNK_SIZE) {
+				final int chunkStart = from;
+				final int chunkEnd = Math.min(from + PARSER_CHUNK_SIZE, files.size());
+				chunks.add(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						for (int j = chunkStart; j < chunkEnd; j++) {
+							SensorRecord record = readValidRecord(fs, files.get(j).getPath(), sensorsCharacteristics);
+							if (record != null) {
+								values[j] = record.values;
+							}
+						}
+						return null;
+					}
+				});
+			}
+			int threads = Math.max(Runtime.getRuntime().availableProcessors() * PARSER_THREADS_PER_CORE, 1);
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				for (Future<Void> chunk : pool.invokeAll(chunks)) {
+					chunk.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Reading the input files was interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IOException("Reading the input files failed", e.getCause());
+			} finally {
+				pool.shutdown();
+			}
 			
-			int fileCount = 0;
-			String line;
-			//for (File file : (new File(filesPath)).listFiles()) {
-			for (FileStatus fileStatus : status) {
-				if(!fileStatus.getPath().getName().startsWith("input"))
-					continue;
-				ArrayList<Float> point = new ArrayList<Float>();
-				fileCount++;
-				System.out.println("Reading file " + fileStatus.getPath());
-				BufferedReader in =
-					new BufferedReader(new InputStreamReader(fs.open(fileStatus.getPath())));
-					//new BufferedReader(new FileReader(file.getAbsolutePath()));
+			int nrOfPoints = 0;
+			for (float[] point : values) {
+				if (point != null) {
+					nrOfPoints++;
+				}
+			}
+			int dim = sensorsCharacteristics.size();
+			ColumnarDataset.Builder builder = new ColumnarDataset.Builder(nrOfPoints, dim, ColumnarDataset.FLOAT, false);
+			int row = 0;
+			for (float[] point : values) {
+				if (point != null) {
+					for (int d = 0; d < dim; d++) {
+						builder.set(row, d, point[d]);
+					}
+					row++;
+				}
+			}
+			System.out.println("Read " + nrOfPoints + " points of " + files.size() + " files with " + threads + " threads in "
+					+ (System.currentTimeMillis() - startTime) + " ms");
+			return builder.build();
+		}
+		
+		/**
+		 * @param schema - senzorii pe care trebuie sa ii aiba fisierul, in ordine; null pentru primul fisier
+		 * @return inregistrarea fisierului, sau null daca fisierul e gol sau nu e valid
+		 */
+		private static SensorRecord readValidRecord(FileSystem fs, Path file, List<SensorCharacteristics> schema) {
+			try {
+				SensorRecord record = readRecord(fs, file);
+				if (record == null) {
+					return null;
+				}
+				if (record.types.isEmpty()) {
+					throw new IOException("No sensors in " + file);
+				}
+				if (schema != null) {
+					if (record.types.size() != schema.size()) {
+						throw new IOException("Data from " + file + " does not respect the sensor characteristics: "
+								+ record.types.size() + " sensors instead of " + schema.size());
+					}
+					for (int i = 0; i < schema.size(); i++) {
+						if (!schema.get(i).equals(record.types.get(i), record.units.get(i))) {
+							throw new IOException("Data from " + file + " does not respect the sensor characteristics");
+						}
+					}
+				}
+				return record;
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			} catch (IllegalStateException e) {
+				// JsonReader: alt tip de valoare decat cel asteptat
+				System.out.println("Malformed input file " + file + ": " + e.getMessage());
+				return null;
+			}
+		}
+		
+		// citeste cu un parser JSON incremental doar campurile folosite: record.sdata[0].name si
+		// stype, units si value ale fiecarui senzor din record.sdata[0].sensors
+		private static SensorRecord readRecord(FileSystem fs, Path file) throws IOException {
+			JsonReader reader = new JsonReader(new InputStreamReader(fs.open(file), "UTF-8"));
+			reader.setLenient(true);
+			try {
 				try {
-					line = in.readLine();
-					if (line == null) continue;
-					// primul fisier seteaza si caracteristicile senzorilor ce trebuie respectate de 
-					// celelalte fisiere
-					if (fileCount == 1) {
-						parseFirstFile(line);
+					reader.peek();
+				} catch (EOFException e) {
+					// fisier gol
+					return null;
+				}
+				SensorRecord record = null;
+				reader.beginObject();
+				while (reader.hasNext()) {
+					if ("record".equals(reader.nextName())) {
+						record = readSensorData(reader);
+					} else {
+						reader.skipValue();
 					}
-					JSONObject input = new JSONObject(line);
-					JSONObject record = input.getJSONObject("record");
-					JSONArray sdata = record.getJSONArray("sdata");
+				}
+				if (record == null) {
+					throw new IOException("No sensor data in " + file);
+				}
+				return record;
+			} finally {
+				reader.close();
+			}
+		}
+		
+		private static SensorRecord readSensorData(JsonReader reader) throws IOException {
+			SensorRecord record = null;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if ("sdata".equals(reader.nextName())) {
+					reader.beginArray();
 					// should be only one
-					JSONObject data = sdata.getJSONObject(0);
-					/*if (!greenhouseName.equals(data.getString("name"))) {
-						throw new JSONException("Data not from the same greenhouse");
-					}*/
-					JSONArray sensors = data.getJSONArray("sensors");
-					for (int i = 0; i < sensors.length(); i++) {
-						String sensorType = sensors.getJSONObject(i).getString("stype");
-						String sensorUnits = sensors.getJSONObject(i).getString("units");
-						// check sensor
-						if (!sensorsCharacteristics.get(i).equals(sensorType, sensorUnits)) {
-							throw new JSONException("Data doesn not respect sensor characteristics");
+					if (reader.hasNext()) {
+						record = readSensors(reader);
+					}
+					while (reader.hasNext()) {
+						reader.skipValue();
+					}
+					reader.endArray();
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			return record;
+		}
+		
+		private static SensorRecord readSensors(JsonReader reader) throws IOException {
+			SensorRecord record = new SensorRecord();
+			List<Float> values = new ArrayList<Float>();
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if ("name".equals(name)) {
+					record.name = reader.nextString();
+				} else if ("sensors".equals(name)) {
+					reader.beginArray();
+					while (reader.hasNext()) {
+						String type = null;
+						String units = null;
+						Float value = null;
+						reader.beginObject();
+						while (reader.hasNext()) {
+							String field = reader.nextName();
+							if ("stype".equals(field)) {
+								type = reader.nextString();
+							} else if ("units".equals(field)) {
+								units = reader.nextString();
+							} else if ("value".equals(field)) {
+								value = (float)reader.nextDouble();
+							} else {
+								reader.skipValue();
+							}
+						}
+						reader.endObject();
+						if (type == null || units == null || value == null) {
+							throw new IOException("Sensor without stype, units or value");
 						}
-						point.add(new Float(sensors.getJSONObject(i).getDouble("value")));
+						record.types.add(type);
+						record.units.add(units);
+						values.add(value);
 					}
-					points.add(point);
-				} catch (JSONException e) {
-					e.printStackTrace();
+					reader.endArray();
+				} else {
+					reader.skipValue();
 				}
 			}
-			
-			// write points to vectorWritable
-			//writePointsToHDFSSequenceFileFormat(points);
-			readSeqFile(filesPath);
-			return points;
+			reader.endObject();
+			record.values = new float[values.size()];
+			for (int i = 0; i < record.values.length; i++) {
+				record.values[i] = values.get(i);
+			}
+			return record;
 		}
 		
+		// numele serei, apoi tipul si unitatile fiecarui senzor, separate prin tab
+		private List<String> getSchema() {
+			List<String> schema = new ArrayList<String>();
+			schema.add(greenhouseName == null ? "" : greenhouseName);
+			for (SensorCharacteristics sc : sensorsCharacteristics) {
+				schema.add(sc.type + "\t" + sc.units);
+			}
+			return schema;
+		}
+		
+		private void setSchema(List<String> schema) {
+			sensorsCharacteristics.clear();
+			greenhouseName = schema.isEmpty() ? null : schema.get(0);
+			for (String line : schema.subList(Math.min(1, schema.size()), schema.size())) {
+				int tab = line.indexOf('\t');
+				sensorsCharacteristics.add(new SensorCharacteristics(line.substring(0, tab), line.substring(tab + 1)));
+			}
+		}
+		
+		// campurile folosite dintr-un fisier de intrare
+		private static class SensorRecord {
+			String name;
+			List<String> types = new ArrayList<String>();
+			List<String> units = new ArrayList<String>();
+			float[] values;
+		}
 		
 		//WRITE WITH MAHOUT 0.9
 		private void writePointsToHDFSSequenceFileFormat(List<ArrayList<Float>> points) throws IOException {
@@ -202,26 +452,6 @@ public class ClusteringFileParserFactory {
 		}
 		
 		
-		private void parseFirstFile(String string) {
-			try {
-				JSONObject input = new JSONObject(string);
-				JSONObject record = input.getJSONObject("record");
-				JSONArray sdata = record.getJSONArray("sdata");
-				// should be only one
-				JSONObject data = sdata.getJSONObject(0);
-				greenhouseName = data.getString("name");
-				JSONArray sensors = data.getJSONArray("sensors");
-				for (int i = 0; i < sensors.length(); i++) {
-					sensorsCharacteristics.add(
-							new SensorCharacteristics(
-									sensors.getJSONObject(i).getString("stype"),
-									sensors.getJSONObject(i).getString("units")));
-				}
-			} catch (JSONException e) {
-				e.printStackTrace();
-			}
-		}
-		
 		private static class SensorCharacteristics {
 			String type;
 			String units;
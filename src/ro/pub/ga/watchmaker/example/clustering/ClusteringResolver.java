@@ -30,6 +30,7 @@ public class ClusteringResolver extends Configured  implements Tool{
 
 	  private static FitnessEvaluator<List<Float>> evaluator;
 	  private static Options options;
+	  private static final String SHARDED_POINTS_DIRECTORY = "sharded_points";
 	  
 	  public static void main(String[] args) throws Exception {
 		  
@@ -58,6 +59,11 @@ public class ClusteringResolver extends Configured  implements Tool{
 		  options.addOption("c", true, "number of centers[mandatory]");
 		  options.addOption("masterslaveislands", false, "perform evolution using masterslaveislands model(default)");
 		  options.addOption("micromacroislands", false, "perform evolution using distributed fitness evolution model");
+		  options.addOption("sharded", true, "evaluate the fitness with MapReduce jobs over this number of point shards" +
+		  			"(the population evolves on the driver)");
+		  
+		  options.addOption("sample", true, "estimate the fitness of the first generations on this fraction of the points" +
+		  			"(masterslaveislands model; the fraction grows until the fitness is exact)");
 		  
 		  options.addOption("conf", true, "path to the hadoop configuration folder[mandatory]");
 		  options.addOption("s", true, "number of slaves");
@@ -244,13 +250,38 @@ public class ClusteringResolver extends Configured  implements Tool{
 			  points = new ArrayList<ArrayList<Float>>(points.subList(0, Math.min(numberOfPoints, points.size())));
 			  System.out.println("Points used: " + fileParser.getPointsString(points));
 			  
-			  evaluator = new CenterListEvaluator(points, numberOfCenters);
+			  if(cmd.hasOption("sharded")) {
+				  int shards;
+				  try {
+					  shards = Integer.parseInt(cmd.getOptionValue("sharded"));
+				  } catch (Exception e) {
+					  System.out.println("Bad number of shards! It should be an integer value.");
+					  formatter.printHelp("Clustering", options);
+					  return -1;
+				  }
+				  // punctele se scriu o singura data, in fragmente; fiecare generatie se evalueaza cu joburi peste ele
+				  evaluator = ShardedCenterListEvaluator.writeShards(points, numberOfCenters, SHARDED_POINTS_DIRECTORY, shards);
+				  evolutionType = EvolutionType.ShardedFitness;
+			  }
+			  else {
+				  evaluator = new CenterListEvaluator(points, numberOfCenters);
+			  }
 			  
 			  EvolutionaryClusteringResolver clusteringResolver = new EvolutionaryClusteringResolver(
 					  evaluator, new RouletteWheelSelection(),
 			          populationSize, elitism, elitismType, generations,
 			          numberOfCenters, true, true, true, evolutionType, slaves);
 			  
+			  if(cmd.hasOption("sample")) {
+				  try {
+					  clusteringResolver.setFitnessSampleFraction(Double.parseDouble(cmd.getOptionValue("sample")));
+				  } catch (Exception e) {
+					  System.out.println("Bad sample fraction! It should be a real value.");
+					  formatter.printHelp("Clustering", options);
+					  return -1;
+				  }
+			  }
+			  
 			  startTime = System.currentTimeMillis();
 			  
 			  List<Float> result = clusteringResolver.calculateCenters(points, new ProgressListener() {
@@ -53,6 +53,8 @@ public class EvolutionaryClusteringResolver {
 
 	private final int nrOfCenters;
 
+	private double fitnessSampleFraction;
+
 	public EvolutionaryClusteringResolver(FitnessEvaluator<List<Float>> evaluator,
 			SelectionStrategy<? super List<Float>> selectionStrategy,
 					int populationSize,
@@ -162,7 +164,18 @@ public class EvolutionaryClusteringResolver {
 	private EvolutionEngine<ArrayList<Float>> getEngine(CandidateFactory<ArrayList<Float>> candidateFactory,
 			EvolutionaryOperator<ArrayList<Float>> pipeline,
 			Random rng) {
-		return new DistributedHybridEvolutionEngine<ArrayList<Float>>(candidateFactory, pipeline, evaluator,
+		DistributedHybridEvolutionEngine<ArrayList<Float>> engine = new DistributedHybridEvolutionEngine<ArrayList<Float>>(candidateFactory, pipeline, evaluator,
 				selectionStrategy, rng, evolutionType, elitismType, ApplicationType.Clustering, true, slaves);
+		engine.setFitnessSampleFraction(fitnessSampleFraction);
+		return engine;
+	}
+
+	public double getFitnessSampleFraction() {
+		return fitnessSampleFraction;
+	}
+
+	// fractiunea din puncte pe care se estimeaza fitness-ul in primele generatii; 0 pentru fitness exact
+	public void setFitnessSampleFraction(double fitnessSampleFraction) {
+		this.fitnessSampleFraction = fitnessSampleFraction;
 	}
 }
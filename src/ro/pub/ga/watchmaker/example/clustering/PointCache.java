@@ -0,0 +1,129 @@
+package ro.pub.ga.watchmaker.example.clustering;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.hadoop.fs.FileStatus;
+
+import ro.pub.ga.watchmaker.utils.ColumnarDataset;
+
+/**
+ * Copia binara, pe discul local, a punctelor citite dintr-un director de intrare: punctele intr-un fisier
+ * ColumnarDataset, incarcat de rularile urmatoare cu un singur mmap, si descrierea senzorilor intr-un fisier
+ * text. Amprenta directorului (numele, lungimea si data modificarii fisierelor) se scrie ultima; daca fisierele
+ * de intrare se schimba, amprenta nu mai corespunde si punctele se citesc din nou.
+ */
+class PointCache {
+
+	public static final String DEFAULT_DIRECTORY = "point_cache";
+
+	private static final String POINTS = "points";
+	private static final String SCHEMA = "schema";
+	private static final String FINGERPRINT = "fingerprint";
+	private static final String UTF8 = "UTF-8";
+
+	private final File directory;
+	private final String fingerprint;
+
+	/**
+	 * @param inputPath - directorul de intrare, calificat
+	 * @param files - fisierele de intrare, sortate
+	 */
+	PointCache(String inputPath, List<FileStatus> files) {
+		this.directory = new File(new File(System.getProperty("java.io.tmpdir"), DEFAULT_DIRECTORY), DigestUtils.sha256Hex(inputPath));
+		StringBuilder listing = new StringBuilder(inputPath);
+		for (FileStatus file : files) {
+			listing.append('\n').append(file.getPath().getName()).append(' ').append(file.getLen()).append(' ').append(file.getModificationTime());
+		}
+		this.fingerprint = DigestUtils.sha256Hex(listing.toString());
+	}
+
+	/**
+	 * @param schema - primeste numele serei si, pe cate o linie, tipul si unitatile fiecarui senzor
+	 * @return punctele, sau null daca nu exista o copie pentru fisierele de intrare de acum
+	 */
+	ColumnarDataset load(List<String> schema) {
+		File points = new File(directory, POINTS);
+		if (!fingerprint.equals(readFingerprint()) || !points.exists()) {
+			return null;
+		}
+		try {
+			schema.addAll(readLines(new File(directory, SCHEMA)));
+			return ColumnarDataset.map(points);
+		} catch (IOException e) {
+			e.printStackTrace();
+			schema.clear();
+			return null;
+		}
+	}
+
+	void store(ColumnarDataset points, List<String> schema) throws IOException {
+		directory.mkdirs();
+		// amprenta veche se sterge prima, cea noua se scrie ultima: o copie scrisa pe jumatate nu e folosita
+		new File(directory, FINGERPRINT).delete();
+		// fisierul poate fi mapat de o alta rulare, deci se inlocuieste, nu se rescrie
+		File tmpPoints = new File(directory, POINTS + ".tmp");
+		OutputStream out = new FileOutputStream(tmpPoints);
+		try {
+			points.write(out);
+		} finally {
+			out.close();
+		}
+		if (!tmpPoints.renameTo(new File(directory, POINTS))) {
+			throw new IOException("Could not write the point cache " + directory);
+		}
+		StringBuilder lines = new StringBuilder();
+		for (String line : schema) {
+			lines.append(line).append('\n');
+		}
+		writeText(new File(directory, SCHEMA), lines.toString());
+		writeText(new File(directory, FINGERPRINT), fingerprint);
+	}
+
+	private String readFingerprint() {
+		File file = new File(directory, FINGERPRINT);
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			List<String> lines = readLines(file);
+			return lines.isEmpty() ? null : lines.get(0);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			in.close();
+		}
+		return lines;
+	}
+
+	private static void writeText(File file, String text) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+		try {
+			out.write(text);
+		} finally {
+			out.close();
+		}
+	}
+}
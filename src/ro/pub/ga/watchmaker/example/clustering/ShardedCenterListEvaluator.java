@@ -0,0 +1,279 @@
+package ro.pub.ga.watchmaker.example.clustering;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.NLineInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+
+import ro.pub.ga.watchmaker.core.Constants;
+import ro.pub.ga.watchmaker.utils.BatchFitnessEvaluator;
+import ro.pub.ga.watchmaker.utils.ColumnarDataset;
+
+/**
+ * Evaluarea data-paralela a centrelor: punctele sunt impartite in fragmente (fisiere ColumnarDataset),
+ * cate unul per map task, iar un batch de candidati se evalueaza cu doua joburi:
+ * - primul asigneaza punctele fiecarui fragment la centrele fiecarui candidat si trimite, per candidat,
+ *   numarul si suma punctelor fiecarui centru; reducerul aduna sumele partiale, iar centrele noi se
+ *   calculeaza ca in CenterListEvaluator: (centru + suma punctelor) / (nr de puncte + 1)
+ * - al doilea asigneaza din nou punctele, la centrele initiale, si aduna distantele pana la centrele noi;
+ *   totalul este fitness-ul candidatului.
+ * Setul de puncte nu mai trebuie sa incapa intr-un task. Sumele se fac in double si pe fragmente, deci
+ * fitness-ul poate diferi de al CenterListEvaluator in ultimele zecimale.
+ * Evaluatorul porneste joburi, deci se foloseste doar in driver (EvolutionType.ShardedFitness).
+ */
+public class ShardedCenterListEvaluator implements BatchFitnessEvaluator<List<Float>> {
+
+	public static final String SHARD_LIST = "shards";
+
+	static final int PHASE_SUMS = 0;
+	static final int PHASE_DISTANCES = 1;
+
+	private final String directory;
+	private final int nrOfCenters;
+	private int batchNumber;
+
+	/**
+	 * @param directory - directorul cu fragmentele scrise de {@link #writeShards}
+	 */
+	public ShardedCenterListEvaluator(String directory, int nrOfCenters) {
+		this.directory = directory;
+		this.nrOfCenters = nrOfCenters;
+	}
+
+	/**
+	 * Imparte punctele (fara duplicate, ca in CenterListEvaluator) in nrOfShards fragmente de marime egala,
+	 * in directory, si lista lor in directory/shards.
+	 */
+	public static ShardedCenterListEvaluator writeShards(List<ArrayList<Float>> pointsSet, int nrOfCenters,
+			String directory, int nrOfShards) throws IOException {
+		ColumnarDataset points = CenterListEvaluator.toDataset(pointsSet);
+		FileSystem fs = FileSystem.get(new Configuration());
+		Path root = fs.makeQualified(new Path(directory));
+		fs.delete(root, true);
+
+		int nrOfPoints = points.getRowCount();
+		int dim = points.getColumnCount();
+		StringBuilder shardList = new StringBuilder();
+		for (int s = 0; s < nrOfShards; s++) {
+			int from = (int)((long)nrOfPoints * s / nrOfShards);
+			int to = (int)((long)nrOfPoints * (s + 1) / nrOfShards);
+			if (from == to) {
+				continue;
+			}
+			ColumnarDataset.Builder builder = new ColumnarDataset.Builder(to - from, dim, ColumnarDataset.FLOAT, false);
+			for (int j = from; j < to; j++) {
+				for (int d = 0; d < dim; d++) {
+					builder.set(j - from, d, points.getFloat(j, d));
+				}
+			}
+			Path shard = new Path(root, "shard_" + s);
+			FSDataOutputStream out = fs.create(shard, true);
+			try {
+				builder.build().write(out);
+			} finally {
+				out.close();
+			}
+			shardList.append(shard.toString()).append('\n');
+		}
+
+		FSDataOutputStream out = fs.create(new Path(root, SHARD_LIST), true);
+		try {
+			out.write(shardList.toString().getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		System.out.println("[ShardedCenterListEvaluator] " + nrOfPoints + " points in " + Math.min(nrOfShards, nrOfPoints) + " shards");
+
+		return new ShardedCenterListEvaluator(root.toString(), nrOfCenters);
+	}
+
+	@Override
+	public double getFitness(List<Float> candidate, List<? extends List<Float>> population) {
+		return evaluate(Collections.singletonList(candidate), false)[0];
+	}
+
+	@Override
+	public double[] getBatchFitness(List<? extends List<Float>> candidates) {
+		return evaluate(candidates, false);
+	}
+
+	public double[] getBatchFitnessAndUpdateCandidates(List<? extends List<Float>> candidates) {
+		return evaluate(candidates, true);
+	}
+
+	private synchronized double[] evaluate(List<? extends List<Float>> candidates, boolean modifyCandidate) {
+		if (candidates.isEmpty()) {
+			return new double[0];
+		}
+
+		try {
+			Configuration conf = new Configuration();
+			FileSystem fs = FileSystem.get(conf);
+			Path batch = new Path(directory, "batch_" + batchNumber++);
+			fs.delete(batch, true);
+
+			float[][] centers = new float[candidates.size()][];
+			for (int i = 0; i < centers.length; i++) {
+				List<Float> candidate = candidates.get(i);
+				centers[i] = new float[candidate.size()];
+				for (int j = 0; j < centers[i].length; j++) {
+					centers[i][j] = candidate.get(j).floatValue();
+				}
+			}
+			Path centersFile = new Path(batch, "centers");
+			writeCenters(conf, centersFile, centers);
+
+			// primul job: numarul si suma punctelor asignate fiecarui centru
+			Vector[] sums = runJob(conf, PHASE_SUMS, batch, centersFile, null, centers.length);
+			float[][] updatedCenters = new float[centers.length][];
+			for (int i = 0; i < centers.length; i++) {
+				int dim = centers[i].length / nrOfCenters;
+				updatedCenters[i] = new float[centers[i].length];
+				for (int c = 0; c < nrOfCenters; c++) {
+					double count = (sums[i] != null) ? sums[i].get(c) : 0;
+					for (int d = 0; d < dim; d++) {
+						double sum = (sums[i] != null) ? sums[i].get(nrOfCenters + c * dim + d) : 0;
+						updatedCenters[i][c * dim + d] = (float)((centers[i][c * dim + d] + sum) / (count + 1));
+					}
+				}
+			}
+			Path updatedCentersFile = new Path(batch, "updated_centers");
+			writeCenters(conf, updatedCentersFile, updatedCenters);
+
+			// al doilea job: distantele punctelor pana la centrele noi
+			Vector[] distances = runJob(conf, PHASE_DISTANCES, batch, centersFile, updatedCentersFile, centers.length);
+			fs.delete(batch, true);
+
+			double[] fitness = new double[centers.length];
+			for (int i = 0; i < fitness.length; i++) {
+				fitness[i] = (distances[i] != null) ? distances[i].get(0) : 0;
+				if (modifyCandidate) {
+					List<Float> candidate = candidates.get(i);
+					for (int j = 0; j < updatedCenters[i].length; j++) {
+						candidate.set(j, updatedCenters[i][j]);
+					}
+				}
+			}
+			return fitness;
+		} catch (IOException e) {
+			throw new IllegalStateException("Sharded fitness evaluation failed", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Sharded fitness evaluation interrupted", e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("Sharded fitness evaluation failed", e);
+		}
+	}
+
+	// un map task per fragment; combinerul si reducerul aduna vectorii partiali ai fiecarui candidat
+	private Vector[] runJob(Configuration conf, int phase, Path batch, Path centersFile, Path updatedCentersFile,
+			int nrOfCandidates) throws IOException, InterruptedException, ClassNotFoundException {
+		Job job = Job.getInstance(conf, "sharded clustering fitness " + batch.getName() + " phase " + phase);
+		job.setJarByClass(ShardedCenterListEvaluator.class);
+		Configuration jobConf = job.getConfiguration();
+		jobConf.setInt(Constants.SHARDED_PHASE, phase);
+		jobConf.setInt(Constants.SHARDED_NUM_CENTERS, nrOfCenters);
+		jobConf.set(Constants.SHARDED_CENTERS, centersFile.toString());
+		if (updatedCentersFile != null) {
+			jobConf.set(Constants.SHARDED_UPDATED_CENTERS, updatedCentersFile.toString());
+		}
+
+		Path output = new Path(batch, "phase_" + phase);
+		NLineInputFormat.addInputPath(job, new Path(directory, SHARD_LIST));
+		NLineInputFormat.setNumLinesPerSplit(job, 1);
+		job.setInputFormatClass(NLineInputFormat.class);
+		SequenceFileOutputFormat.setOutputPath(job, output);
+		job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+		job.setMapperClass(ShardedCenterMapper.class);
+		job.setCombinerClass(VectorSumReducer.class);
+		job.setReducerClass(VectorSumReducer.class);
+		job.setOutputKeyClass(IntWritable.class);
+		job.setOutputValueClass(VectorWritable.class);
+		job.setNumReduceTasks(1);
+
+		if (!job.waitForCompletion(true)) {
+			throw new IOException("Job " + job.getJobName() + " failed");
+		}
+
+		Vector[] totals = new Vector[nrOfCandidates];
+		FileSystem fs = output.getFileSystem(conf);
+		IntWritable key = new IntWritable();
+		VectorWritable value = new VectorWritable();
+		for (FileStatus part : fs.globStatus(new Path(output, "part-*"))) {
+			SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(part.getPath()));
+			try {
+				while (reader.next(key, value)) {
+					totals[key.get()] = value.get();
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return totals;
+	}
+
+	// centrele candidatilor, cheia fiind indexul candidatului in batch
+	static void writeCenters(Configuration conf, Path file, float[][] centers) throws IOException {
+		SequenceFile.Writer writer = SequenceFile.createWriter(conf, SequenceFile.Writer.file(file),
+				SequenceFile.Writer.keyClass(IntWritable.class), SequenceFile.Writer.valueClass(VectorWritable.class));
+		try {
+			for (int i = 0; i < centers.length; i++) {
+				Vector vector = new DenseVector(centers[i].length);
+				for (int j = 0; j < centers[i].length; j++) {
+					vector.setQuick(j, centers[i][j]);
+				}
+				writer.append(new IntWritable(i), new VectorWritable(vector));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	static float[][] readCenters(Configuration conf, Path file) throws IOException {
+		List<float[]> centers = new ArrayList<float[]>();
+		IntWritable key = new IntWritable();
+		VectorWritable value = new VectorWritable();
+		SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(file));
+		try {
+			while (reader.next(key, value)) {
+				Vector vector = value.get();
+				float[] candidateCenters = new float[vector.size()];
+				for (int j = 0; j < candidateCenters.length; j++) {
+					candidateCenters[j] = (float)vector.getQuick(j);
+				}
+				centers.add(candidateCenters);
+			}
+		} finally {
+			reader.close();
+		}
+		return centers.toArray(new float[centers.size()][]);
+	}
+
+	public String getDirectory() {
+		return directory;
+	}
+
+	public int getNrOfCenters() {
+		return nrOfCenters;
+	}
+
+	@Override
+	public boolean isNatural() {
+		return false;
+	}
+}
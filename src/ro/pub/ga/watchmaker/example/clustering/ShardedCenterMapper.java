@@ -0,0 +1,102 @@
+package ro.pub.ga.watchmaker.example.clustering;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.VectorWritable;
+
+import ro.pub.ga.watchmaker.core.Constants;
+import ro.pub.ga.watchmaker.utils.ColumnarDataset;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Mapperul joburilor ShardedCenterListEvaluator: primeste calea unui fragment de puncte si scrie, pentru
+ * fiecare candidat din batch, vectorul partial al fragmentului:
+ * - in prima faza numarul de puncte al fiecarui centru, apoi suma punctelor fiecarui centru
+ * - in a doua faza suma distantelor punctelor pana la centrul nou al centrului caruia ii sunt asignate
+ */
+public class ShardedCenterMapper extends Mapper<LongWritable, Text, IntWritable, VectorWritable> {
+
+	private int phase;
+	private int nrOfCenters;
+	private float[][] centers;
+	private float[][] updatedCenters;
+
+	@Override
+	protected void setup(Context context) throws IOException, InterruptedException {
+		Configuration conf = context.getConfiguration();
+		Preconditions.checkArgument(conf.get(Constants.SHARDED_CENTERS) != null, "'SHARDED_CENTERS' job parameter not found");
+
+		phase = conf.getInt(Constants.SHARDED_PHASE, ShardedCenterListEvaluator.PHASE_SUMS);
+		nrOfCenters = conf.getInt(Constants.SHARDED_NUM_CENTERS, 1);
+		centers = ShardedCenterListEvaluator.readCenters(conf, new Path(conf.get(Constants.SHARDED_CENTERS)));
+		if (phase == ShardedCenterListEvaluator.PHASE_DISTANCES) {
+			Preconditions.checkArgument(conf.get(Constants.SHARDED_UPDATED_CENTERS) != null, "'SHARDED_UPDATED_CENTERS' job parameter not found");
+			updatedCenters = ShardedCenterListEvaluator.readCenters(conf, new Path(conf.get(Constants.SHARDED_UPDATED_CENTERS)));
+		}
+	}
+
+	@Override
+	protected void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+		String shard = value.toString().trim();
+		if (shard.isEmpty()) {
+			return;
+		}
+
+		ColumnarDataset points = readShard(context.getConfiguration(), new Path(shard));
+		float[] pointValues = points.toFloatRows();
+		int nrOfPoints = points.getRowCount();
+		int pointDim = points.getColumnCount();
+
+		CenterAssignment assignment = new CenterAssignment();
+		for (int i = 0; i < centers.length; i++) {
+			int dim = centers[i].length / nrOfCenters;
+			assignment.prepare(centers[i], nrOfCenters, dim, nrOfPoints);
+			DenseVector partial;
+			if (phase == ShardedCenterListEvaluator.PHASE_SUMS) {
+				// numarul de puncte al centrelor, apoi sumele lor, in double ca sa se poata aduna intre fragmente
+				partial = new DenseVector(nrOfCenters + nrOfCenters * dim);
+				int centerIndex = 0;
+				for (int j = 0; j < nrOfPoints; j++) {
+					int point = j * pointDim;
+					centerIndex = assignment.nearest(pointValues, point, centerIndex);
+					partial.setQuick(centerIndex, partial.getQuick(centerIndex) + 1);
+					int sum = nrOfCenters + centerIndex * dim;
+					for (int d = 0; d < dim; d++) {
+						partial.setQuick(sum + d, partial.getQuick(sum + d) + pointValues[point + d]);
+					}
+				}
+			} else {
+				double distance = 0;
+				int centerIndex = 0;
+				for (int j = 0; j < nrOfPoints; j++) {
+					int point = j * pointDim;
+					centerIndex = assignment.nearest(pointValues, point, centerIndex);
+					distance += Math.sqrt(CenterListEvaluator.getSquaredDistance(updatedCenters[i], centerIndex * dim, pointValues, point, dim));
+				}
+				partial = new DenseVector(new double[] { distance });
+			}
+			context.write(new IntWritable(i), new VectorWritable(partial));
+		}
+	}
+
+	// fragmentul se copiaza in directorul de lucru al taskului si se mapeaza in memorie
+	private static ColumnarDataset readShard(Configuration conf, Path shard) throws IOException {
+		File localFile = File.createTempFile(shard.getName(), ".tmp", new File("."));
+		try {
+			shard.getFileSystem(conf).copyToLocalFile(false, shard, new Path(localFile.getAbsolutePath()), true);
+			return ColumnarDataset.map(localFile);
+		} finally {
+			// maparea ramane valida si dupa stergerea fisierului
+			localFile.delete();
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package ro.pub.ga.watchmaker.example.clustering;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.VectorWritable;
+
+/**
+ * Aduna vectorii partiali ai unui candidat, scrisi de ShardedCenterMapper pentru fiecare fragment;
+ * e si combinerul joburilor.
+ */
+public class VectorSumReducer extends Reducer<IntWritable, VectorWritable, IntWritable, VectorWritable> {
+
+	@Override
+	protected void reduce(IntWritable key, Iterable<VectorWritable> values, Context context) throws IOException, InterruptedException {
+		Vector total = null;
+		for (VectorWritable value : values) {
+			// valoarea e refolosita de iterator, deci prima se copiaza
+			total = (total == null) ? value.get().clone() : total.plus(value.get());
+		}
+		context.write(key, new VectorWritable(total));
+	}
+}
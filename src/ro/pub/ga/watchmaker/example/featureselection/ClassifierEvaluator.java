@@ -1,21 +1,62 @@
 package ro.pub.ga.watchmaker.example.featureselection;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.uncommons.maths.binary.BitString;
-import org.uncommons.watchmaker.framework.FitnessEvaluator;
 
 import ro.pub.ga.watchmaker.example.featureselection.NaiveBayesClassifier.FeatureSummary.FeatureType;
+import ro.pub.ga.watchmaker.utils.BatchFitnessEvaluator;
+import ro.pub.ga.watchmaker.utils.ColumnarDataset;
+import ro.pub.ga.watchmaker.utils.ColumnarDatasetFormat;
+import ro.pub.ga.watchmaker.utils.SideData;
+import ro.pub.ga.watchmaker.utils.SideDataProvider;
+import ro.pub.ga.watchmaker.utils.SideDataStore;
 
-public class ClassifierEvaluator implements FitnessEvaluator<BitString> {
+public class ClassifierEvaluator implements BatchFitnessEvaluator<BitString>, SideDataProvider {
 
-	private ClassifierInput input;
+	private SideData<ColumnarDataset> trainingData;
+	private SideData<ColumnarDataset> testData;
+	private ArrayList<FeatureType> featureTypes;
 	
 	public ClassifierEvaluator(ClassifierInput inputSets) {
-		this.input = inputSets;
+		this.trainingData = new SideData<ColumnarDataset>(toDataset(inputSets.trainingSet), new ColumnarDatasetFormat());
+		this.testData = new SideData<ColumnarDataset>(toDataset(inputSets.testSet), new ColumnarDatasetFormat());
+		this.featureTypes = inputSets.featureTypes;
+	}
+	
+	// one double column per feature and the class-id column; the rows are grouped by class
+	private static ColumnarDataset toDataset(HashMap<Integer, List<ClassifiedData>> set) {
+		int rows = 0, columns = 0;
+		for (List<ClassifiedData> data : set.values()) {
+			rows += data.size();
+			for (ClassifiedData d : data) {
+				columns = Math.max(columns, d.getData().size());
+			}
+		}
+		
+		ColumnarDataset.Builder builder = new ColumnarDataset.Builder(rows, columns, ColumnarDataset.DOUBLE, true);
+		int row = 0;
+		for (Map.Entry<Integer, List<ClassifiedData>> entry : set.entrySet()) {
+			for (ClassifiedData d : entry.getValue()) {
+				for (int i = 0; i < d.getData().size(); i++) {
+					builder.set(row, i, d.getData().get(i));
+				}
+				builder.setClassId(row, d.getClassId());
+				row++;
+			}
+		}
+		return builder.build();
+	}
+	
+	@Override
+	public void publishSideData(SideDataStore store) throws IOException {
+		store.publish(trainingData);
+		store.publish(testData);
 	}
 	
 	@Override
@@ -27,34 +68,61 @@ public class ClassifierEvaluator implements FitnessEvaluator<BitString> {
 		}
 		
 		System.out.println("bitstring " + bitString.toString());
-		// create input for NaiveBayes - parse selected features
-		HashMap<Integer, List<ClassifiedData>> trainingSet = new HashMap<Integer, List<ClassifiedData>>();
-		HashMap<Integer, List<ClassifiedData>> testSet = new HashMap<Integer, List<ClassifiedData>>();
-		for(Map.Entry<Integer, List<ClassifiedData>> entry : input.trainingSet.entrySet()) {
-			List<ClassifiedData> data = new ArrayList<ClassifiedData>();
-			for (ClassifiedData d : entry.getValue())
-				data.add(d.filter(bitString));
-			//System.out.println("class " + entry.getKey() + " nr " + data.size());
-			trainingSet.put(entry.getKey(), data);
-		}
-		
-		for(Map.Entry<Integer, List<ClassifiedData>> entry : input.testSet.entrySet()) {
-			List<ClassifiedData> data = new ArrayList<ClassifiedData>();
-			for (ClassifiedData d : entry.getValue())
-				data.add(d.filter(bitString));
-			testSet.put(entry.getKey(), data);
-		}
+		ColumnarDataset trainingSet = trainingData.get();
+		ColumnarDataset testSet = testData.get();
 		
+		// the columns selected by the bitstring and their types
+		int featureCount = Math.min(Math.min(featureTypes.size(), trainingSet.getColumnCount()), bitString.getLength());
+		int[] features = new int[bitString.countSetBits()];
+		int selectedCount = 0;
 		ArrayList<FeatureType> filteredFeatureTypes = new ArrayList<NaiveBayesClassifier.FeatureSummary.FeatureType>();
-		for(int i = 0 ; i < Math.min(input.featureTypes.size(), bitString.getLength()); i++) {
-			if (bitString.getBit(i))
-				filteredFeatureTypes.add(input.featureTypes.get(i));
+		for(int i = 0 ; i < featureCount; i++) {
+			if (bitString.getBit(i)) {
+				features[selectedCount++] = i;
+				filteredFeatureTypes.add(featureTypes.get(i));
+			}
 		}
 		
-		NaiveBayesClassifier naiveBayesClassifier = new NaiveBayesClassifier(trainingSet, testSet, filteredFeatureTypes);
+		NaiveBayesClassifier naiveBayesClassifier = new NaiveBayesClassifier(trainingSet, testSet, 
+				Arrays.copyOf(features, selectedCount), filteredFeatureTypes);
 		return naiveBayesClassifier.getAccuracy() * (double)100;
 	}
 
+	// the classifier is trained once, on all the features, for the whole batch;
+	// every bitstring is then tested with the summaries of its features
+	@Override
+	public double[] getBatchFitness(List<? extends BitString> candidates) {
+		ColumnarDataset trainingSet = trainingData.get();
+		ColumnarDataset testSet = testData.get();
+		
+		int featureCount = Math.min(featureTypes.size(), trainingSet.getColumnCount());
+		int[] allFeatures = new int[featureCount];
+		for (int i = 0; i < featureCount; i++) {
+			allFeatures[i] = i;
+		}
+		NaiveBayesClassifier classifier = new NaiveBayesClassifier(trainingSet, testSet, allFeatures,
+				new ArrayList<FeatureType>(featureTypes.subList(0, featureCount)));
+		HashMap<Integer, List<NaiveBayesClassifier.FeatureSummary>> summary = classifier.trainClassifier();
+		
+		double[] fitness = new double[candidates.size()];
+		for (int c = 0; c < fitness.length; c++) {
+			BitString bitString = candidates.get(c);
+			if (bitString.countSetBits() == 0) {
+				fitness[c] = 0;
+				continue;
+			}
+			int[] features = new int[bitString.countSetBits()];
+			int selectedCount = 0;
+			for (int i = 0; i < Math.min(featureCount, bitString.getLength()); i++) {
+				if (bitString.getBit(i)) {
+					features[selectedCount++] = i;
+				}
+			}
+			fitness[c] = classifier.getAccuracy(summary, Arrays.copyOf(features, selectedCount)) * (double)100;
+		}
+		return fitness;
+	}
+
 	@Override
 	public boolean isNatural() {
 		return true;
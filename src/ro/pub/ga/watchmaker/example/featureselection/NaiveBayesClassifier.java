@@ -3,11 +3,14 @@ package ro.pub.ga.watchmaker.example.featureselection;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.uncommons.maths.binary.BitString;
 
+import ro.pub.ga.watchmaker.utils.ColumnarDataset;
+
 //http://machinelearningmastery.com/naive-bayes-classifier-scratch-python/
 
 public class NaiveBayesClassifier {
@@ -15,6 +18,10 @@ public class NaiveBayesClassifier {
 	HashMap<Integer, List<ClassifiedData>> trainingSet, testSet;
 	ArrayList<FeatureSummary.FeatureType> featureTypes;
 	
+	// columnar mode: the datasets are read in place and only the given columns are used
+	ColumnarDataset trainingData, testData;
+	int[] features;
+	
 	HashMap<Integer, Integer> classNrOfInstancesTraining = new HashMap<Integer, Integer>();
 	Integer totalNrOfInstances = 0;
 	
@@ -26,6 +33,18 @@ public class NaiveBayesClassifier {
 		this.featureTypes = featureTypes;
 	}
 	
+	/**
+	 * @param features - the columns of the datasets used by the classifier
+	 * @param featureTypes - the types of the used columns, in the same order
+	 */
+	public NaiveBayesClassifier(ColumnarDataset trainingData, ColumnarDataset testData,
+			int[] features, ArrayList<FeatureSummary.FeatureType> featureTypes) {
+		this.trainingData = trainingData;
+		this.testData = testData;
+		this.features = features;
+		this.featureTypes = featureTypes;
+	}
+	
 	public FeatureSummary summarizeGaussianFeature(List<ClassifiedData> data, int i) {
 		double mean = 0, stdev = 0;
 		for (ClassifiedData d : data) {
@@ -55,6 +74,32 @@ public class NaiveBayesClassifier {
 		return new FeatureSummary.BernoulliFeatureSummary(countMap, data.size());
 	}
 	
+	public FeatureSummary summarizeGaussianFeature(int[] rows, int i) {
+		double mean = 0, stdev = 0;
+		for (int row : rows) {
+			mean += trainingData.getDouble(row, features[i]);
+		}
+		mean = mean / rows.length;
+		
+		for (int row : rows) {
+			double value = trainingData.getDouble(row, features[i]);
+			stdev += (mean - value) * (mean - value);
+		}
+		
+		stdev = Math.sqrt(stdev / (rows.length));
+		return new FeatureSummary.GaussianFeatureSummary(mean, stdev);
+	}
+	
+	public FeatureSummary summarizeBernoulliFeature(int[] rows, int i) {
+		HashMap<Double, Integer> countMap = new HashMap<Double, Integer>();
+		for (int row : rows) {
+			Double val = trainingData.getDouble(row, features[i]);
+			Integer count = countMap.get(val);
+			countMap.put(val, (count == null) ? 1 : count + 1);
+		}
+		return new FeatureSummary.BernoulliFeatureSummary(countMap, rows.length);
+	}
+	
 	public FeatureSummary summarizeFeature(List<ClassifiedData> data, int i) {
 		if (featureTypes.get(i) == FeatureSummary.FeatureType.Gaussian) {
 			return summarizeGaussianFeature(data, i);
@@ -76,6 +121,9 @@ public class NaiveBayesClassifier {
 	}
 	
 	public HashMap<Integer, List<FeatureSummary>> trainClassifier() {
+		if (trainingData != null) {
+			return trainColumnarClassifier();
+		}
 		HashMap<Integer, List<FeatureSummary>> summary = new HashMap<Integer, List<FeatureSummary>>();
 		for (Map.Entry<Integer, List<ClassifiedData>> entry : trainingSet.entrySet()) {
 			//System.out.println("For class " + entry.getKey());
@@ -90,6 +138,46 @@ public class NaiveBayesClassifier {
 		return summary;
 	}
 		
+	private HashMap<Integer, List<FeatureSummary>> trainColumnarClassifier() {
+		HashMap<Integer, List<FeatureSummary>> summary = new HashMap<Integer, List<FeatureSummary>>();
+		for (Map.Entry<Integer, int[]> entry : groupRowsByClass(trainingData).entrySet()) {
+			int[] rows = entry.getValue();
+			List<FeatureSummary> classSummary = new ArrayList<NaiveBayesClassifier.FeatureSummary>(features.length);
+			for (int i = 0; i < features.length; i++) {
+				if (featureTypes.get(i) == FeatureSummary.FeatureType.Gaussian) {
+					classSummary.add(summarizeGaussianFeature(rows, i));
+				} else {
+					classSummary.add(summarizeBernoulliFeature(rows, i));
+				}
+			}
+			summary.put(entry.getKey(), classSummary);
+			classNrOfInstancesTraining.put(entry.getKey(), rows.length);
+			totalNrOfInstances += rows.length;
+		}
+		return summary;
+	}
+	
+	// the row indices of every class, in dataset order
+	private static Map<Integer, int[]> groupRowsByClass(ColumnarDataset data) {
+		Map<Integer, Integer> counts = new LinkedHashMap<Integer, Integer>();
+		for (int row = 0; row < data.getRowCount(); row++) {
+			Integer count = counts.get(data.getClassId(row));
+			counts.put(data.getClassId(row), (count == null) ? 1 : count + 1);
+		}
+		Map<Integer, int[]> rowsByClass = new LinkedHashMap<Integer, int[]>();
+		for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+			rowsByClass.put(entry.getKey(), new int[entry.getValue()]);
+			entry.setValue(0);
+		}
+		for (int row = 0; row < data.getRowCount(); row++) {
+			Integer classId = data.getClassId(row);
+			int position = counts.get(classId);
+			rowsByClass.get(classId)[position] = row;
+			counts.put(classId, position + 1);
+		}
+		return rowsByClass;
+	}
+		
 	private double calculateProbability(Double value, FeatureSummary summary) {
 		if (summary.type == FeatureSummary.FeatureType.Bernoulli) {
 			FeatureSummary.BernoulliFeatureSummary bernoulliFeatureSummary = (FeatureSummary.BernoulliFeatureSummary) summary;
@@ -111,17 +199,17 @@ public class NaiveBayesClassifier {
 		}
 	}
 	
-	private double calculateClassProbability(Integer classId, List<FeatureSummary> summary, List<Double> inputData) {
+	private double calculateClassProbability(Integer classId, List<FeatureSummary> summary, double[] inputData) {
 		double probability = 1;
-		for (int i = 0; i < inputData.size(); i++) {
-			double p = calculateProbability(inputData.get(i), summary.get(i));
+		for (int i = 0; i < inputData.length; i++) {
+			double p = calculateProbability(inputData[i], summary.get(i));
 			probability *= p;
 		}
 		probability *= ((double)classNrOfInstancesTraining.get(classId) / totalNrOfInstances);
 		return probability;
 	}
 	
-	private Integer predict(HashMap<Integer, List<FeatureSummary>> summary, List<Double> inputData) {
+	private Integer predict(HashMap<Integer, List<FeatureSummary>> summary, double[] inputData) {
 		double bestProbability = 0;
 		Integer predictedClass = 0;
 		
@@ -132,7 +220,7 @@ public class NaiveBayesClassifier {
 		
 		for (Map.Entry<Integer, List<FeatureSummary>> entry : summary.entrySet()) {
 			double classProbability = calculateClassProbability(entry.getKey(), entry.getValue(), inputData);
-			if (!Double.isNaN((double)classProbability) && classProbability > bestProbability) {
+			if (!Double.isNaN(classProbability) && classProbability > bestProbability) {
 				bestProbability = classProbability;
 				predictedClass = entry.getKey();
 			}
@@ -140,7 +228,18 @@ public class NaiveBayesClassifier {
 		return predictedClass;
 	}
 	
+	private Integer predict(HashMap<Integer, List<FeatureSummary>> summary, List<Double> inputData) {
+		double[] values = new double[inputData.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = inputData.get(i);
+		}
+		return predict(summary, values);
+	}
+	
 	public Score testClassifier(HashMap<Integer, List<FeatureSummary>> summary) {
+		if (testData != null) {
+			return testColumnarClassifier(summary);
+		}
 		double a = 0, b = 0, c = 0, d = 0;
 		
 		double correct = 0, incorrect = 0;
@@ -178,12 +277,67 @@ public class NaiveBayesClassifier {
 		return new Score(a, b, c, d);
 	}
 	
+	private Score testColumnarClassifier(HashMap<Integer, List<FeatureSummary>> summary) {
+		double correct = 0, incorrect = 0, a = 0, b = 0, c = 0, d = 0;
+		double[] inputData = new double[features.length];
+		
+		for (int row = 0; row < testData.getRowCount(); row++) {
+			for (int i = 0; i < features.length; i++) {
+				inputData[i] = testData.getDouble(row, features[i]);
+			}
+			int classID = predict(summary, inputData);
+			int actualClassID = testData.getClassId(row);
+			if (classID == actualClassID) {
+				correct ++;
+				if (classID < 0)
+					a ++;
+				else 
+					d ++;
+			} else {
+				incorrect ++;
+				if (actualClassID < 0)
+					b ++;
+				else
+					c++;
+			}
+		}
+		
+		if (summary.size() != 2) {
+			return new Score(correct, incorrect, 0, 0);
+		}
+		return new Score(a, b, c, d);
+	}
+	
 	public double getAccuracy() {
 		HashMap<Integer, List<FeatureSummary>> summary = trainClassifier();
 		Score score = testClassifier(summary);
 		return score.getAccuracy();
 	}
 	
+	/**
+	 * Accuracy of the classifier restricted to some columns, reusing the summary of a classifier trained on
+	 * columns 0 ... n-1: the features are summarized independently, so the summaries of the selected 
+	 * columns are the ones a classifier trained on them alone would compute.
+	 * 
+	 * @param summary - returned by trainClassifier() on this classifier
+	 * @param selectedFeatures - the selected columns, in increasing order
+	 */
+	public double getAccuracy(HashMap<Integer, List<FeatureSummary>> summary, int[] selectedFeatures) {
+		HashMap<Integer, List<FeatureSummary>> selectedSummary = new HashMap<Integer, List<FeatureSummary>>();
+		for (Map.Entry<Integer, List<FeatureSummary>> entry : summary.entrySet()) {
+			List<FeatureSummary> classSummary = new ArrayList<NaiveBayesClassifier.FeatureSummary>(selectedFeatures.length);
+			for (int feature : selectedFeatures) {
+				classSummary.add(entry.getValue().get(feature));
+			}
+			selectedSummary.put(entry.getKey(), classSummary);
+		}
+		
+		NaiveBayesClassifier selected = new NaiveBayesClassifier(trainingData, testData, selectedFeatures, null);
+		selected.classNrOfInstancesTraining = classNrOfInstancesTraining;
+		selected.totalNrOfInstances = totalNrOfInstances;
+		return selected.testClassifier(selectedSummary).getAccuracy();
+	}
+	
 	static abstract class FeatureSummary {
 		static enum FeatureType {
 			Bernoulli, Gaussian
@@ -11,36 +11,49 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
-import org.apache.mahout.common.HadoopUtil;
 import org.apache.mahout.common.StringUtils;
 import org.uncommons.watchmaker.framework.CandidateFactory;
 import org.uncommons.watchmaker.framework.EvaluatedCandidate;
 import org.uncommons.watchmaker.framework.EvolutionEngine;
 import org.uncommons.watchmaker.framework.EvolutionObserver;
-import org.uncommons.watchmaker.framework.EvolutionUtils;
 import org.uncommons.watchmaker.framework.EvolutionaryOperator;
 import org.uncommons.watchmaker.framework.FitnessEvaluator;
+import org.uncommons.watchmaker.framework.GenerationalEvolutionEngine;
 import org.uncommons.watchmaker.framework.PopulationData;
 import org.uncommons.watchmaker.framework.SelectionStrategy;
 import org.uncommons.watchmaker.framework.TerminationCondition;
 
 import ro.pub.ga.watchmaker.core.Constants;
+import ro.pub.ga.watchmaker.core.CostAwareInputFormat;
+import ro.pub.ga.watchmaker.core.EvaluationCost;
+import ro.pub.ga.watchmaker.core.RandomStreams;
+import ro.pub.ga.watchmaker.core.IslandCounters;
+import ro.pub.ga.watchmaker.example.clustering.CenterListEvaluator;
+import ro.pub.ga.watchmaker.example.clustering.ShardedCenterListEvaluator;
 import ro.pub.ga.watchmaker.utils.AssignedCandidateWritable;
+import ro.pub.ga.watchmaker.utils.BatchFitnessEvaluator;
+import ro.pub.ga.watchmaker.utils.EpochDirectories;
 import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
 import ro.pub.ga.watchmaker.utils.FSUtils;
+import ro.pub.ga.watchmaker.utils.IslandFitnessKey;
+import ro.pub.ga.watchmaker.utils.IslandSummary;
+import ro.pub.ga.watchmaker.utils.PopulationInputFormat;
+import ro.pub.ga.watchmaker.utils.PopulationOutputFormat;
 import ro.pub.ga.watchmaker.utils.PopulationWritable;
+import ro.pub.ga.watchmaker.utils.SideDataStore;
 
+import com.google.common.base.Preconditions;
 import com.google.gson.reflect.TypeToken;
 
 public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
@@ -50,6 +63,9 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 	private final static int NUMBER_OF_MICROPOPULATIONS_HARDCODED = 9;
 	private final static int NUMBER_OF_MACROPOPULATIONS_HARDCODED = 3;
 	private final static int NUMBER_OF_GENERATIONS_PER_EPOCH_HARDCODED = 5;
+	// generatiile fara imbunatatire dupa care esantionul pentru fitness creste mai repede
+	private final static int SAMPLE_STALL_GENERATIONS = 2;
+	private final static double DEFAULT_SAMPLE_GROWTH = 1.5;
 	
 	private final CandidateFactory<T> candidateFactory;
 	private final EvolutionaryOperator<T> evolutionScheme;
@@ -62,20 +78,33 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 	private ApplicationType applicationType = ApplicationType.Unknown;
 	private final boolean doMigration;
 	private int slaveNumber;
+	// 0 - reducerii citesc toata subpopulatia
+	private int reduceTopN;
+	private int taskThreads;
+	private int evaluationBatchSize;
+	private int fitnessCacheSize;
+	private double fitnessSampleFraction;
+	private double fitnessSampleGrowth = DEFAULT_SAMPLE_GROWTH;
+	// fractiunea din puncte pe care se estimeaza fitness-ul in generatia curenta
+	private double currentSampleFraction = 1;
+	// modelul timpului de evaluare, masurat in generatia anterioara (modelul master-slave)
+	private EvaluationCost evaluationCost;
 
 	private List<EvolutionObserver<? super T>> observers;
 
 	private FSUtils fsUtils;
+	private SideDataStore sideDataStore;
 
 	private String stringifiedEvolutinScheme;
 	private String stringifiedFitnessEvaluator;
 	private String stringifiedSelectionStrategy;
-	private String stringifiedRNG;
+	// radacina fluxurilor aleatoare ale taskurilor (vezi RandomStreams)
+	private final long randomSeed;
 	private String stringifiedElitismType;
 	private String stringifiedCandidateFactory;
 	
 	public enum EvolutionType {
-    	MasterSlaveIslands, MicroMacroSubpopulations
+    	MasterSlaveIslands, MicroMacroSubpopulations, ShardedFitness
     };
     
     // what candidates are kept from one generation to another
@@ -112,6 +141,10 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		try {
 			this.fsUtils = new FSUtils(FileSystem.get(new Configuration()));
 			this.slaveNumber = getNumberOfSlaves(confDirectory);
+
+			// publish the datasets held by the components before they are serialized
+			this.sideDataStore = new SideDataStore(FileSystem.get(new Configuration()), SideDataStore.DEFAULT_DIRECTORY);
+			sideDataStore.publish(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -122,7 +155,7 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		this.stringifiedEvolutinScheme = StringUtils.toString(evolutionScheme);
 		this.stringifiedFitnessEvaluator = StringUtils.toString(fitnessEvaluator);
 		this.stringifiedSelectionStrategy = StringUtils.toString(selectionStrategy);
-		this.stringifiedRNG = StringUtils.toString(rng);
+		this.randomSeed = rng.nextLong();
 		this.stringifiedElitismType = StringUtils.toString(elitismType);
 	}
 
@@ -151,6 +184,10 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		try {
 			this.fsUtils = new FSUtils(FileSystem.get(new Configuration()));
 			this.slaveNumber = slaves;
+
+			// publish the datasets held by the components before they are serialized
+			this.sideDataStore = new SideDataStore(FileSystem.get(new Configuration()), SideDataStore.DEFAULT_DIRECTORY);
+			sideDataStore.publish(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -162,7 +199,7 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		this.stringifiedFitnessEvaluator = StringUtils.toString(fitnessEvaluator);
 		this.stringifiedSelectionStrategy = StringUtils.toString(selectionStrategy);
 		this.stringifiedElitismType = StringUtils.toString(elitismType);
-		this.stringifiedRNG = StringUtils.toString(rng);
+		this.randomSeed = rng.nextLong();
 	}
 
 	@Override
@@ -205,6 +242,13 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 				e.printStackTrace();
 			}
 			break;
+		case ShardedFitness:
+			try {
+				return evolvePopulationUsingShardedFitness(populationSize, eliteCount, candidateFactory.generateInitialPopulation(populationSize, seedCandidates, rng), conditions);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			break;
 		}
 		return null;
 	}
@@ -220,41 +264,85 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		numberOfSubpopulations = NUMBER_OF_SUBPOPULATIONS_HARDCODED;
 		int migrationCount = MIGRATION_COUNT_HARDCODED;
 		
-		Path inputPath = new Path("input");
-		Path outputPath = new Path("output");
+		// fiecare job citeste subpopulatiile din directorul epocii anterioare
+		EpochDirectories epochs = new EpochDirectories(FileSystem.get(new Configuration()), EpochDirectories.DEFAULT_DIRECTORY);
 		long startTime = System.currentTimeMillis();
 		EvaluatedCandidate<T> bestCandidate = null;
 		EvaluatedCandidate<T> crtBestCandidate;
 
-		Job job = Job.getInstance();
-		job.setJarByClass(this.getClass());
-
-		Configuration conf = job.getConfiguration();     
-		HadoopUtil.delete(conf, inputPath);
-		HadoopUtil.delete(conf, outputPath);
+		epochs.clear();
 
-		writeSubpopulationsToFiles(splitPopulation(new ArrayList<T>(seedCandidates), numberOfSubpopulations), "input");
+		writeSubpopulationsToFiles(splitPopulation(new ArrayList<T>(seedCandidates), numberOfSubpopulations),
+				epochs.getEpochDirectory(0).toString());
 		
-		List<EvaluatedCandidate<T>> evolvedPopulation = null;
+		PopulationData<T> populationData = null;
 		
+		// doar fitness-ul clustering-ului stie sa se estimeze pe un esantion
+		currentSampleFraction = (fitnessSampleFraction > 0 && fitnessEvaluator instanceof CenterListEvaluator) ? Math.min(fitnessSampleFraction, 1) : 1;
+		int stalledGenerations = 0;
+		// cel mai bun candidat are fitness-ul recalculat exact de driver, nu cel raportat de mapperi
+		boolean rescoredBest = false;
 		int generationCount = 0;
 		do {
 			generationCount++;
 			Job newJob = prepareJobForMasterSlaveIslandsModel(generationCount, populationSize, eliteCount,
 					migrationCount,
 					startTime, numberOfSubpopulations,
-					conditions);
+					epochs, conditions);
 			newJob.waitForCompletion(true);
+			// intrarea acestei generatii nu mai e necesara
+			epochs.release(generationCount - 1);
+
+			checkJobCounters(newJob, numberOfSubpopulations);
+			// timpii de evaluare masurati de mapperi impart intrarea generatiei urmatoare
+			EvaluationCost cost = EvaluationCost.fit(newJob.getCounters());
+			if (cost != null) {
+				evaluationCost = cost;
+				System.out.println("Evaluation cost: " + cost.getPerCandidate() + " us per candidate + "
+						+ cost.getPerUnit() + " us per unit of size");
+			}
 
-			crtBestCandidate = getBestCandidate("output");
+			// driverul citeste doar rezumatele subpopulatiilor, populatia se citeste o data, la final
+			IslandSummary<T> summary = getSummary(epochs.getEpochDirectory(generationCount), numberOfSubpopulations);
+			crtBestCandidate = summary.getBestCandidate();
+			populationData = summary.toPopulationData(eliteCount, generationCount, startTime);
+			if (currentSampleFraction < 1) {
+				// fitness-ul estimat pe esantion se inlocuieste cu cel exact inainte ca cel mai bun candidat sa fie raportat;
+				// media si dispersia raman estimate pe esantion
+				crtBestCandidate = new EvaluatedCandidate<T>(crtBestCandidate.getCandidate(),
+						fitnessEvaluator.getFitness(crtBestCandidate.getCandidate(), null));
+				populationData = new PopulationData<T>(crtBestCandidate.getCandidate(), crtBestCandidate.getFitness(),
+						populationData.getMeanFitness(), populationData.getFitnessStandardDeviation(), populationData.isNaturalFitness(),
+						populationData.getPopulationSize(), populationData.getEliteCount(), populationData.getGenerationNumber(),
+						populationData.getElapsedTime());
+				printSampleCounters(newJob);
+				rescoredBest = true;
+			} else if (rescoredBest) {
+				// getFitness face inca un pas de actualizare a centrelor pe un candidat deja actualizat de mapper,
+				// deci nu se compara cu fitness-ul raportat de mapperi: cel mai bun candidat se reia de la prima generatie exacta
+				bestCandidate = null;
+				rescoredBest = false;
+			}
+			EvaluatedCandidate<T> previousBestCandidate = bestCandidate;
 			bestCandidate = getBetterCandidate(crtBestCandidate, bestCandidate);
+			stalledGenerations = (bestCandidate == previousBestCandidate) ? stalledGenerations + 1 : 0;
+			
+			// esantionul creste cu fiecare generatie, si mai repede cand cel mai bun candidat nu se mai imbunatateste
+			if (currentSampleFraction < 1) {
+				currentSampleFraction *= fitnessSampleGrowth;
+				if (stalledGenerations >= SAMPLE_STALL_GENERATIONS) {
+					currentSampleFraction *= fitnessSampleGrowth;
+					stalledGenerations = 0;
+				}
+				currentSampleFraction = Math.min(currentSampleFraction, 1);
+			}
 			
-			evolvedPopulation = getEvolvedPopulation("output");
-			updateIslandEvolutionObservers(evolvedPopulation, eliteCount, generationCount, startTime);	
-		} while(!checkTerminationStatus(evolvedPopulation, eliteCount, generationCount, startTime, conditions));
+			updateIslandEvolutionObservers(populationData);	
+		} while(!checkTerminationStatus(populationData, conditions));
+		epochs.close();
 
 		// face merge la toata subpopulatiile evaluate
-		List<EvaluatedCandidate<T>> result = getEvolvedPopulation("output");
+		List<EvaluatedCandidate<T>> result = getEvolvedPopulation(epochs.getEpochDirectory(generationCount).toString());
 		
 		result.add(0, bestCandidate);
 		result.remove(result.size() - 1);
@@ -275,19 +363,17 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 			int migrationCount,
 			long startTime,
 			int numberOfSubpopulations,
+			EpochDirectories epochs,
 			TerminationCondition... conditions) throws IOException {
 
-		Path inputPath = new Path("input");
-		Path outputPath = new Path("output");
 		Job job = Job.getInstance();
 		job.setJarByClass(this.getClass());
 		
 		Configuration conf = job.getConfiguration();
-		if (generationCount > 1)
-			copyOutputToInput("output", "input");
 
 		configureJobForMasterSlaveIslandsModel(job, conf, eliteCount, startTime,
-				generationCount, populationSize, migrationCount, inputPath, outputPath, numberOfSubpopulations,
+				generationCount, populationSize, migrationCount,
+				epochs.getInputPath(generationCount), epochs.getEpochDirectory(generationCount), numberOfSubpopulations,
 				conditions);
 
 		return job;
@@ -312,7 +398,8 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		conf.set(Constants.EVOLUTION_SCHEME_PROPERTY, stringifiedEvolutinScheme);
 		conf.set(Constants.FITNESS_EVALUATOR_PROPERTY, stringifiedFitnessEvaluator);
 		conf.set(Constants.SELECTION_STRATEGY_PROPERTY, stringifiedSelectionStrategy);
-		conf.set(Constants.RANDOM_GENERATOR_PROPERTY, stringifiedRNG);
+		addSideDataToJob(job);
+		RandomStreams.configure(conf, randomSeed, generationCount);
 		conf.setInt(Constants.GENERATION_COUNT_PROPERTY, generationCount);
 		// nr de indivizi ce se pastreaza de la o generatie la alta per subpopulatie 
 		conf.setInt(Constants.ELITE_COUNT_PROPERTY, ((int)Math.ceil(((double)eliteCount) / numberOfSubpopulations)));
@@ -327,10 +414,23 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		conf.setInt(Constants.NUM_SLAVES, slaveNumber);
 		conf.setInt(Constants.NUM_SUBPOPULATIONS, numberOfSubpopulations);
 		conf.set(Constants.APPLICATION_TYPE, StringUtils.toString(applicationType));
+		// fiecare reducer trebuie sa pastreze cel putin subpopulatia lui, altfel populatia scade cu fiecare generatie
+		Preconditions.checkArgument(reduceTopN <= 0 || reduceTopN >= (populationSize + numberOfSubpopulations - 1) / numberOfSubpopulations,
+				"reduceTopN " + reduceTopN + " is below the size of a subpopulation, " + populationSize + " / " + numberOfSubpopulations);
+		conf.setInt(Constants.REDUCE_TOP_N, reduceTopN);
+		conf.setFloat(Constants.FITNESS_SAMPLE_FRACTION, (float)currentSampleFraction);
+		configureMapTasks(conf);
+		if (evaluationCost != null) {
+			evaluationCost.configure(conf);
+		}
+		// sloturile libere de map, cerute la fiecare generatie; 0 inseamna cate unul per slave
+		conf.setInt(Constants.MAP_SLOTS, CostAwareInputFormat.getFreeMapSlots(conf));
 
 		TypeToken<EvaluatedCandidateWritable<T>> evalCandidateTypeToken = new TypeToken<EvaluatedCandidateWritable<T>>() {};
-		job.setMapOutputKeyClass(LongWritable.class);
+		job.setMapOutputKeyClass(IslandFitnessKey.class);
 		job.setMapOutputValueClass(evalCandidateTypeToken.getRawType());
+		//group on the island only, the reducers receive the candidates ranked by fitness
+		job.setGroupingComparatorClass(IslandFitnessKey.IslandComparator.class);
 		job.setOutputKeyClass(LongWritable.class);
 		job.setOutputValueClass(Text.class);
 
@@ -341,7 +441,8 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		job.setReducerClass((Class<? extends Reducer>) reducerTypeToken.getRawType());
 		job.setNumReduceTasks(numberOfSubpopulations); 
 		
-		job.setInputFormatClass(TextInputFormat.class);
+		// split-uri de cost estimat egal, dupa timpii de evaluare ai generatiei anterioare
+		job.setInputFormatClass(CostAwareInputFormat.class);
 	}
 
 	
@@ -362,25 +463,19 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		int migrationCount = MIGRATION_COUNT_HARDCODED;
 		int nrGenerationsPerEpoch = NUMBER_OF_GENERATIONS_PER_EPOCH_HARDCODED;
 		
-		Path inputPath = new Path("input");
-		Path outputPath = new Path("output");
+		EpochDirectories epochs = new EpochDirectories(FileSystem.get(new Configuration()), EpochDirectories.DEFAULT_DIRECTORY);
 		
 		long startTime = System.currentTimeMillis();
 		
 		EvaluatedCandidate<T> bestCandidate = null;
 		EvaluatedCandidate<T> crtBestCandidate;
 
-		Job job = Job.getInstance();
-		job.setJarByClass(this.getClass());
-
-		Configuration conf = job.getConfiguration();     
-		HadoopUtil.delete(conf, inputPath);
-		HadoopUtil.delete(conf, outputPath);
+		epochs.clear();
 	
 		writeMicroPopulationsToFiles(splitPopulationIntoMicroPopulations(new ArrayList<T>(seedCandidates),
-				numberOfMicroPopulations, numberOfMacroPopulations), "input");
+				numberOfMicroPopulations, numberOfMacroPopulations), epochs.getEpochDirectory(0).toString());
 		
-		List<EvaluatedCandidate<T>> evolvedPopulation = null;
+		PopulationData<T> populationData = null;
 		
 		int epochCount = 0;
 		do {
@@ -390,19 +485,29 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 					migrationCount,
 					startTime, numberOfMicroPopulations,
 					numberOfMacroPopulations,
-					conditions);
+					epochs, conditions);
 			newJob.waitForCompletion(true);
+			epochs.release(epochCount - 1);
+
+			checkJobCounters(newJob, numberOfMacroPopulations);
 
-			crtBestCandidate = getBestCandidate("output");
+			IslandSummary<T> summary = getSummary(epochs.getEpochDirectory(epochCount), numberOfMacroPopulations);
+			crtBestCandidate = summary.getBestCandidate();
 			bestCandidate = getBetterCandidate(crtBestCandidate, bestCandidate);
 			
-			evolvedPopulation = getEvolvedPopulation("output");
-			
-			updateIslandEvolutionObservers(evolvedPopulation, eliteCount, nrGenerationsPerEpoch * epochCount, startTime);	
-		} while(!checkTerminationStatus(evolvedPopulation, eliteCount, nrGenerationsPerEpoch * epochCount, startTime, conditions));
+			populationData = summary.toPopulationData(eliteCount, nrGenerationsPerEpoch * epochCount, startTime);
+			updateIslandEvolutionObservers(populationData);	
+		} while(!checkTerminationStatus(populationData, conditions));
+		epochs.close();
 
 		// face merge la toata subpopulatiile evaluate
-		List<EvaluatedCandidate<T>> result = getEvolvedPopulation("output");
+		List<EvaluatedCandidate<T>> result = getEvolvedPopulation(epochs.getEpochDirectory(epochCount).toString());
+		// reducerii nu mai sorteaza macropopulatiile
+		if (fitnessEvaluator.isNatural()) {
+			Collections.sort(result, Collections.reverseOrder());
+		} else {
+			Collections.sort(result);
+		}
 		
 		result.add(0, bestCandidate);
 		result.remove(result.size() - 1);
@@ -417,19 +522,17 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 			long startTime,
 			int numberOfMicroIslands,
 			int numberOfMacroIslands,
+			EpochDirectories epochs,
 			TerminationCondition... conditions) throws IOException {
 
-		Path inputPath = new Path("input");
-		Path outputPath = new Path("output");
 		Job job = Job.getInstance();
 		job.setJarByClass(this.getClass());
 		
 		Configuration conf = job.getConfiguration();
-		if (epochCount > 1)
-			copyOutputToInput("output", "input");
 
 		configureJobForMicroMacroIslandsModel(job, conf, eliteCount, startTime,
-				generationCount, epochCount, migrationCount, inputPath, outputPath, numberOfMicroIslands,
+				generationCount, epochCount, migrationCount,
+				epochs.getInputPath(epochCount), epochs.getEpochDirectory(epochCount), numberOfMicroIslands,
 				numberOfMacroIslands, conditions);
 
 		return job;
@@ -455,7 +558,8 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		conf.set(Constants.EVOLUTION_SCHEME_PROPERTY, stringifiedEvolutinScheme);
 		conf.set(Constants.FITNESS_EVALUATOR_PROPERTY, stringifiedFitnessEvaluator);
 		conf.set(Constants.SELECTION_STRATEGY_PROPERTY, stringifiedSelectionStrategy);
-		conf.set(Constants.RANDOM_GENERATOR_PROPERTY, stringifiedRNG);
+		addSideDataToJob(job);
+		RandomStreams.configure(conf, randomSeed, epochCount);
 		conf.setInt(Constants.GENERATION_COUNT_PROPERTY, generationCount);
 		conf.setInt(Constants.ELITE_COUNT_PROPERTY, ((int)Math.ceil(((double)eliteCount) / numberOfMicroIslands)));
 		conf.set(Constants.ELITISM_TYPE, stringifiedElitismType);
@@ -470,6 +574,7 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		conf.setInt(Constants.NUM_SLAVES, slaveNumber);
 		conf.setInt(Constants.NUM_MICROISLANDS, numberOfMicroIslands);
 		conf.setInt(Constants.NUM_MACROISLANDS, numberOfMacroIslands);
+		configureMapTasks(conf);
 		conf.setInt(Constants.CURRENT_EPOCH, epochCount);
 		conf.set(Constants.APPLICATION_TYPE, StringUtils.toString(applicationType));
 		
@@ -486,16 +591,80 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		job.setReducerClass((Class<? extends Reducer>) reducerTypeToken.getRawType());
 		job.setNumReduceTasks(numberOfMacroIslands); 
 		
-		job.setInputFormatClass(TextInputFormat.class);
+		job.setInputFormatClass(PopulationInputFormat.class);
+	}
+	
+	/* ------------------------------- ShardedFitness--------------------------------*/
+	
+	// populatia evolueaza in driver, iar fiecare generatie se evalueaza cu un singur apel getBatchFitness;
+	// pentru ShardedCenterListEvaluator apelul ruleaza joburile peste fragmentele setului de puncte
+	public List<EvaluatedCandidate<T>> evolvePopulationUsingShardedFitness(int populationSize,
+			int eliteCount,
+			Collection<T> seedCandidates,
+			TerminationCondition... conditions) {
+
+		ShardedFitnessEngine<T> engine = new ShardedFitnessEngine<T>(candidateFactory, evolutionScheme, fitnessEvaluator,
+				selectionStrategy, rng, applicationType == ApplicationType.Clustering);
+		engine.setSingleThreaded(true);
+		for (EvolutionObserver<? super T> observer : observers) {
+			engine.addEvolutionObserver(observer);
+		}
+
+		List<EvaluatedCandidate<T>> result = engine.evolvePopulation(populationSize, eliteCount, seedCandidates, conditions);
+		System.out.println("Best candidate fitness " + result.get(0).getFitness());
+		return result;
+	}
+
+	/**
+	 * GenerationalEvolutionEngine evaluating each generation with one call to the batch evaluator, so that
+	 * a data-parallel evaluator runs its jobs once per generation and not once per candidate.
+	 */
+	private static class ShardedFitnessEngine<T> extends GenerationalEvolutionEngine<T> {
+
+		private final FitnessEvaluator<? super T> fitnessEvaluator;
+		// clustering: centrele candidatilor se actualizeaza la evaluare, ca in MasterSlaveIslandsMapper
+		private final boolean updateCandidates;
+
+		public ShardedFitnessEngine(CandidateFactory<T> candidateFactory,
+				EvolutionaryOperator<T> evolutionScheme,
+				FitnessEvaluator<? super T> fitnessEvaluator,
+				SelectionStrategy<? super T> selectionStrategy,
+				Random rng,
+				boolean updateCandidates) {
+
+			super(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng);
+			this.fitnessEvaluator = fitnessEvaluator;
+			this.updateCandidates = updateCandidates;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected List<EvaluatedCandidate<T>> evaluatePopulation(List<T> population) {
+
+			double[] fitness;
+			if (updateCandidates && fitnessEvaluator instanceof ShardedCenterListEvaluator) {
+				fitness = ((ShardedCenterListEvaluator)fitnessEvaluator).getBatchFitnessAndUpdateCandidates((List<? extends List<Float>>)population);
+			} else if (fitnessEvaluator instanceof BatchFitnessEvaluator) {
+				fitness = ((BatchFitnessEvaluator<? super T>)fitnessEvaluator).getBatchFitness(population);
+			} else {
+				fitness = new double[population.size()];
+				for (int i = 0; i < fitness.length; i++) {
+					fitness[i] = fitnessEvaluator.getFitness(population.get(i), population);
+				}
+			}
+
+			List<EvaluatedCandidate<T>> evaluatedPopulation = new ArrayList<EvaluatedCandidate<T>>(population.size());
+			for (int i = 0; i < fitness.length; i++) {
+				evaluatedPopulation.add(new EvaluatedCandidate<T>(population.get(i), fitness[i]));
+			}
+			return evaluatedPopulation;
+		}
 	}
 	
 	/* --------------------------------------- Utils ----------------------------------------*/
 	
-	private boolean checkTerminationStatus(List<EvaluatedCandidate<T>> evolvedPopulation,
-			int eliteCount, int generationCount, long startTime, TerminationCondition... conditions) {
+	private boolean checkTerminationStatus(PopulationData<T> populationData, TerminationCondition... conditions) {
 
-		PopulationData<T> populationData = EvolutionUtils.getPopulationData(evolvedPopulation,
-				fitnessEvaluator.isNatural(), eliteCount, generationCount, startTime);
 		for (TerminationCondition condition : conditions) {
 			if (condition.shouldTerminate(populationData)) {
 				System.out.println("[Oana] termination condition satisfied");
@@ -566,68 +735,102 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 	// scrie indivizii cate unul per linie in fisier coresp subpop lui
 	public void writeSubpopulationsToFiles(List<AssignedCandidateWritable<T>> assignedCandidates, String inputFolder) {
 
-		String subFolder = inputFolder;
-		File subDirectory = new File(subFolder);
-		if(!subDirectory.exists()) {
-			subDirectory.mkdir();
-		} 
-		else {
-			try {
-				FileUtils.deleteDirectory(subDirectory);
-				FileUtils.forceMkdir(subDirectory);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
+		fsUtils.mkdir(inputFolder);
 
-		// vreau nr_slaves fisiere - in fiecare scriu nr de indivizi / nr_slaves
-		int slice_dim = (int)Math.ceil(assignedCandidates.size() / slaveNumber);
-		for (int i = 0; i < slaveNumber; i++) {
-			StringBuilder sb = new StringBuilder();
-			for(int j = i * slice_dim; j < Math.min((i+1) * slice_dim, assignedCandidates.size()); j++) {
-				sb.append(StringUtils.toString(assignedCandidates.get(j)) + "\n");
+		// FILES_PER_SLAVE fisiere per slave, ca CostAwareInputFormat sa poata echilibra split-urile
+		// un record per individ, cheia fiind indexul subpopulatiei
+		int nrOfFiles = slaveNumber * CostAwareInputFormat.FILES_PER_SLAVE;
+		int slice_dim = (int)Math.ceil((double)assignedCandidates.size() / nrOfFiles);
+		try {
+			writeAssignedCandidates(new Configuration(), inputFolder + "/subpopulation_", slice_dim, nrOfFiles, assignedCandidates);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	// scrie indivizii in nrOfFiles fisiere de cate splitSize indivizi, pentru CostAwareInputFormat;
+	// numele fiecarui fisier retine numarul si dimensiunea indivizilor
+	public static <T> void writeAssignedCandidates(Configuration conf, String filePrefix, int splitSize, int nrOfFiles,
+			List<AssignedCandidateWritable<T>> assignedCandidates) throws IOException {
+		LongWritable key = new LongWritable();
+		EvaluatedCandidateWritable<T> value = new EvaluatedCandidateWritable<T>();
+		for (int i = 0; i < nrOfFiles; i++) {
+			List<AssignedCandidateWritable<T>> slice = assignedCandidates.subList(
+					Math.min(i * splitSize, assignedCandidates.size()), Math.min((i+1) * splitSize, assignedCandidates.size()));
+			List<T> candidates = new ArrayList<T>(slice.size());
+			if (slice.isEmpty()) {
+				continue;
+			}
+			for (AssignedCandidateWritable<T> assignedCandidate : slice) {
+				candidates.add(assignedCandidate.getCandidate());
+			}
+			SequenceFile.Writer writer = PopulationOutputFormat.createWriter(conf,
+					new Path(CostAwareInputFormat.fileName(filePrefix, i, candidates)));
+			try {
+				for (AssignedCandidateWritable<T> assignedCandidate : slice) {
+					key.set(assignedCandidate.getAssignedSubpopulation());
+					value.setCandidate(assignedCandidate.getCandidate());
+					writer.append(key, value);
+				}
+			} finally {
+				writer.close();
 			}
-			fsUtils.writeToFile(subDirectory.getPath() + "/input_" + i, sb.toString());
 		}
 	}
 	
 	public void writeMicroPopulationsToFiles(List<PopulationWritable<T>> micropopulations, String inputFolder) {
 		 
-		 String subFolder = inputFolder;
-		 File subDirectory = new File(subFolder);
-		 if(!subDirectory.exists()) {
-			 subDirectory.mkdir();
-		 } 
-		 else {
-			 try {
-				FileUtils.deleteDirectory(subDirectory);
-				FileUtils.forceMkdir(subDirectory);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		 }
+		 fsUtils.mkdir(inputFolder);
 		 
-		 for(int i = 0; i < micropopulations.size(); i++) {
-			fsUtils.writeToFile(subDirectory.getPath() + "/subpopulation_" + i, StringUtils.toString(micropopulations.get(i)));
+		 // cheia fiecarui individ este indexul micropopulatiei: micro * nr_macro + macro
+		 try {
+			 Configuration conf = new Configuration();
+			 for(int i = 0; i < micropopulations.size(); i++) {
+				PopulationOutputFormat.writeCandidates(conf, new Path(inputFolder, "subpopulation_" + i), 
+						i, micropopulations.get(i).getPopulation());
+			 }
+		 } catch (IOException e) {
+			 e.printStackTrace();
 		 }
 	 }
 
-	//returneaza cel mai bun candidat din cei mai buni din subpopulatii
-	private EvaluatedCandidate<T> getBestCandidate(String outpath) {
-		EvaluatedCandidate<T> bestCandidate = null;
-		try {
-			FileSystem fs = FileSystem.get(new Configuration());
-			FileStatus[] status = fs.listStatus(new Path(outpath));
-			for(int i = 0; i < status.length; i++) {
-				if(status[i].getPath().getName().startsWith("best_candidate_")) {
-					EvaluatedCandidate<T> crtCandidate = StringUtils.fromString(fsUtils.readFromFile(status[i].getPath().toString()));
-					bestCandidate = getBetterCandidate(bestCandidate, crtCandidate);
-				}
-			}
-		} catch(Exception e) {
-			e.printStackTrace();
+	// face merge la rezumatele scrise de reduceri (summary_0 .. summary_n-1): best candidate, medie si dispersie
+	private IslandSummary<T> getSummary(Path outpath, int islands) throws IOException {
+		return IslandSummary.readSummaries(new Configuration(), outpath, "summary_", islands);
+	}
+
+	private void configureMapTasks(Configuration conf) {
+		if (taskThreads > 0) {
+			// se cer de la YARN atatea core-uri cate foloseste mapperul
+			conf.setInt(Constants.TASK_THREADS, taskThreads);
+			conf.setInt(MRJobConfig.MAP_CPU_VCORES, taskThreads);
+		}
+		if (evaluationBatchSize > 0) {
+			conf.setInt(Constants.EVALUATION_BATCH_SIZE, evaluationBatchSize);
+		}
+		conf.setInt(Constants.FITNESS_CACHE_SIZE, fitnessCacheSize);
+	}
+
+	// verifica din contoarele jobului ca toate insulele au fost scrise
+	private void checkJobCounters(Job job, int expectedIslands) throws IOException {
+		Counters counters = job.getCounters();
+		long islands = counters.findCounter(IslandCounters.ISLANDS).getValue();
+		System.out.println("[Driver] islands " + islands + ", individuals " + counters.findCounter(IslandCounters.INDIVIDUALS).getValue() +
+				", evaluations " + counters.findCounter(IslandCounters.EVALUATIONS).getValue() +
+				", avoided by the fitness cache " + counters.findCounter(IslandCounters.CACHE_HITS).getValue());
+		if (islands != expectedIslands) {
+			throw new IOException("Expected " + expectedIslands + " islands, the job wrote " + islands);
+		}
+	}
+
+	// media intervalelor de incredere ale fitness-ului estimat pe esantion
+	private void printSampleCounters(Job job) throws IOException {
+		Counters counters = job.getCounters();
+		long sampled = counters.findCounter(IslandCounters.SAMPLED_EVALUATIONS).getValue();
+		if (sampled > 0) {
+			System.out.println("[Driver] fitness estimated on " + (currentSampleFraction * 100) + "% of the points for " + sampled +
+					" candidates, mean 95% bound +/-" + (counters.findCounter(IslandCounters.SAMPLE_BOUND_PPM).getValue() / sampled / 1e4) + "%");
 		}
-		return bestCandidate;
 	}
 
 	// ar trebui mutat in Evaluated Candidate dar nu avem si fitnessEvaluator acolo
@@ -656,52 +859,94 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 	private List<EvaluatedCandidate<T>> getEvolvedPopulation(String outpath){
 		List<EvaluatedCandidate<T>> population = new ArrayList<EvaluatedCandidate<T>>();
 		try {
-			FileSystem fs = FileSystem.get(new Configuration());
-			FileStatus[] status = fs.listStatus(new Path(outpath));
-			for(int i = 0; i < status.length; i++) {
-				if(status[i].getPath().getName().startsWith("evolved_population_")) {
-					List<EvaluatedCandidate<T>> evolvedSubpopulation = StringUtils.fromString(fsUtils.readFromFile(status[i].getPath().toString()));
-					population.addAll(evolvedSubpopulation);
-				}
-			}
+			population = PopulationInputFormat.readPopulations(new Configuration(), new Path(outpath), "evolved_population_");
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
 		return population;
 	}
 
-	private void copyOutputToInput(String outpath, String inpath) {
+	// update la oberveri cu datele agregate ale subpopulatiilor
+	private void updateIslandEvolutionObservers(PopulationData<T> populationData) {
+		for(EvolutionObserver<? super T> observer: observers) {
+			observer.populationUpdate(populationData);
+		}
+	}
 
-		try {
-			FileSystem fs = FileSystem.get(new Configuration());
+	public int getReduceTopN() {
+		return reduceTopN;
+	}
 
-			fs.delete(new Path(inpath), true);
-			fs.mkdirs(new Path(inpath));
+	/**
+	 * Limits the reducers to the best {@code reduceTopN} candidates of each subpopulation;
+	 * 0 disables the limit. The limit may not be lower than the size of a subpopulation, 
+	 * populationSize / numberOfSubpopulations rounded up, checked when the job is configured.
+	 */
+	public void setReduceTopN(int reduceTopN) {
+		this.reduceTopN = reduceTopN;
+	}
 
-			FileStatus[] status = fs.listStatus(new Path(outpath));
-			String data = null;
-			for(int i = 0; i < status.length; i++) {
-				if(status[i].getPath().getName().startsWith("subpopulation_")) {
-					data = fsUtils.readFromFile(status[i].getPath().toString());
-					fsUtils.writeToFile(inpath + "/" + status[i].getPath().getName(), data);
-				}
-			}
-			fs.delete(new Path(outpath), true);
-		} catch(Exception e) {
-			e.printStackTrace();
-		}
+	public int getTaskThreads() {
+		return taskThreads;
 	}
 
-	// face merge la subpop si update la oberveri
-	private void updateIslandEvolutionObservers(List<EvaluatedCandidate<T>> evaluatedPopulation,
-			int eliteCount, int generationCount, long startTime) {
-		//TODO we don;t need
-		Collections.sort(evaluatedPopulation);
-		PopulationData<T> populationData = EvolutionUtils.getPopulationData(evaluatedPopulation,
-				fitnessEvaluator.isNatural(), eliteCount, generationCount, startTime);
-		for(EvolutionObserver<? super T> observer: observers) {
-			observer.populationUpdate(populationData);
-		}
+	/**
+	 * Sets the threads of each mapper, used to evaluate the fitness (and to evolve the islands of
+	 * the split concurrently); 0 uses the virtual cores configured for the map containers.
+	 */
+	public void setTaskThreads(int taskThreads) {
+		this.taskThreads = taskThreads;
+	}
+
+	public int getEvaluationBatchSize() {
+		return evaluationBatchSize;
+	}
+
+	/**
+	 * Sets the number of candidates the master-slave mappers evaluate together;
+	 * 0 uses BatchEvaluation.DEFAULT_BATCH_SIZE.
+	 */
+	public void setEvaluationBatchSize(int evaluationBatchSize) {
+		this.evaluationBatchSize = evaluationBatchSize;
+	}
+
+	public int getFitnessCacheSize() {
+		return fitnessCacheSize;
+	}
+
+	/**
+	 * Sets the entries of the fitness cache of each task (see CachingFitnessEvaluator); 0, the default,
+	 * disables the cache. Only for evaluators whose fitness does not depend on the rest of the population.
+	 */
+	public void setFitnessCacheSize(int fitnessCacheSize) {
+		this.fitnessCacheSize = fitnessCacheSize;
+	}
+
+	public double getFitnessSampleFraction() {
+		return fitnessSampleFraction;
+	}
+
+	/**
+	 * Estimates the clustering fitness of the first generations of the master-slave model on this fraction
+	 * of the points (CenterListEvaluator.withSample); the fraction grows with every generation, faster when the
+	 * best candidate stalls, up to the exact fitness. The best candidates are re-scored exactly before they are
+	 * reported, while the reported mean and standard deviation stay estimates on the sample. The re-scored fitness
+	 * is not comparable to the one the mappers report, so the best candidate is tracked again from the first exact
+	 * generation. 0, the default, or 1 evaluates every generation exactly.
+	 */
+	public void setFitnessSampleFraction(double fitnessSampleFraction) {
+		this.fitnessSampleFraction = fitnessSampleFraction;
+	}
+
+	public double getFitnessSampleGrowth() {
+		return fitnessSampleGrowth;
+	}
+
+	/**
+	 * Sets the factor the sample fraction grows by with every generation; 1.5 by default.
+	 */
+	public void setFitnessSampleGrowth(double fitnessSampleGrowth) {
+		this.fitnessSampleGrowth = fitnessSampleGrowth;
 	}
 
 	@Override
@@ -719,6 +964,12 @@ public class DistributedHybridEvolutionEngine<T> implements EvolutionEngine<T> {
 		return null;
 	}
 
+	private void addSideDataToJob(Job job) {
+		if(sideDataStore != null) {
+			sideDataStore.addToJob(job);
+		}
+	}
+
 	public static int getNumberOfSlaves(String confDirectory) throws IOException {
 		BufferedReader reader = new BufferedReader(new FileReader(new File(confDirectory + "/slaves")));
 		int slaves = 0;
@@ -1,29 +1,39 @@
 package ro.pub.ga.watchmaker.hybrid.core;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.mahout.common.StringUtils;
 import org.uncommons.watchmaker.framework.FitnessEvaluator;
 
+import ro.pub.ga.watchmaker.core.BatchEvaluation;
 import ro.pub.ga.watchmaker.core.Constants;
+import ro.pub.ga.watchmaker.core.EvaluationCost;
+import ro.pub.ga.watchmaker.core.RandomStreams;
 import ro.pub.ga.watchmaker.example.clustering.CenterListEvaluator;
 import ro.pub.ga.watchmaker.hybrid.core.DistributedHybridEvolutionEngine.ApplicationType;
-import ro.pub.ga.watchmaker.utils.AssignedCandidateWritable;
+import ro.pub.ga.watchmaker.utils.BatchFitnessEvaluator;
 import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
+import ro.pub.ga.watchmaker.utils.IslandFitnessKey;
 
 import com.google.common.base.Preconditions;
 
-public class MasterSlaveIslandsMapper<T> extends Mapper<LongWritable,Text,LongWritable, EvaluatedCandidateWritable<T>> {
+public class MasterSlaveIslandsMapper<T> extends Mapper<LongWritable,EvaluatedCandidateWritable<T>,IslandFitnessKey, EvaluatedCandidateWritable<T>> {
 
 	private FitnessEvaluator<Object> evaluator;
 	private Integer numIndividuals;
 	private Configuration conf;
 	private ApplicationType applicationType;
+	private CenterListEvaluator sampledEvaluator;
+	private int batchSize;
+	private ForkJoinPool pool;
+	private final EvaluationCost.Recorder costRecorder = new EvaluationCost.Recorder();
 	
 	@Override
 	public void setup(Context context) throws IOException, InterruptedException {
@@ -36,40 +46,117 @@ public class MasterSlaveIslandsMapper<T> extends Mapper<LongWritable,Text,LongWr
 		evaluator = StringUtils.fromString(evlstr);
 		numIndividuals = 0;
 		applicationType = StringUtils.fromString(conf.get(Constants.APPLICATION_TYPE));
+		if (applicationType == ApplicationType.Clustering) {
+			// Optimization for Clustering apps - we modify the candidate when evaluating
+			// in primele generatii fitness-ul se estimeaza pe un esantion din puncte
+			sampledEvaluator = ((CenterListEvaluator)((Object)evaluator)).withSample(
+					conf.getFloat(Constants.FITNESS_SAMPLE_FRACTION, 1), RandomStreams.getSampleSeed(conf));
+			evaluator = new UpdatingCenterListEvaluator(sampledEvaluator);
+		}
+		else {
+			// clustering-ul modifica candidatul, deci nu poate folosi cache-ul
+			evaluator = BatchEvaluation.withCache(evaluator, conf);
+		}
+		batchSize = BatchEvaluation.getBatchSize(conf);
+		pool = BatchEvaluation.createPool(conf);
 		super.setup(context);
 	}
 
+	// citeste cate batchSize recorduri, le evalueaza in paralel si le scrie in ordinea citirii
+	@Override
+	public void run(Context context) throws IOException, InterruptedException {
+		setup(context);
+		try {
+			List<Long> subpopulations = new ArrayList<Long>(batchSize);
+			List<T> candidates = new ArrayList<T>(batchSize);
+			while (context.nextKeyValue()) {
+				// cheia este indexul subpopulatiei; valoarea e refolosita de record reader, se pastreaza doar candidatul
+				subpopulations.add(context.getCurrentKey().get());
+				candidates.add(context.getCurrentValue().getCandidate());
+				if (candidates.size() == batchSize) {
+					evaluateBatch(subpopulations, candidates, context);
+					subpopulations.clear();
+					candidates.clear();
+				}
+			}
+			evaluateBatch(subpopulations, candidates, context);
+		} finally {
+			cleanup(context);
+		}
+	}
+
 	@Override
 	public void map(LongWritable key,
-			Text value,
+			EvaluatedCandidateWritable<T> value,
 			Context context) throws IOException, InterruptedException {
+		evaluateBatch(Collections.singletonList(key.get()), Collections.singletonList(value.getCandidate()), context);
+	}
 
-		//iau candidatul
-		AssignedCandidateWritable<T> assignedCandidate = StringUtils.fromString(value.toString());
-		// preiau indexul subpopulatiei
-		Long subpopulationIndex = (Long)assignedCandidate.getAssignedSubpopulation();
+	private void evaluateBatch(List<Long> subpopulations, List<T> candidates, Context context) throws IOException, InterruptedException {
+		if (candidates.isEmpty()) {
+			return;
+		}
 		//evaluez
-		double fitness = 0;
-		if (applicationType == ApplicationType.Clustering) {
-			System.out.println("[Mapper] Clustering app => modify the candidate while getting fitness");
-			// Optimization for Clustering apps - we modify the candidate when evaluating
-			CenterListEvaluator centerListEvaluator = (CenterListEvaluator)((Object)evaluator);
-			fitness = centerListEvaluator.getFitnessAndUpdateCandidate((List<Float>)assignedCandidate.getCandidate(), null);
-		} else {
-			fitness = evaluator.getFitness(assignedCandidate.getCandidate(), null);
+		double[] fitness = BatchEvaluation.evaluate(evaluator, candidates, pool, costRecorder);
+		BatchEvaluation.countEvaluations(evaluator, context, candidates.size());
+		for (int i = 0; i < fitness.length; i++) {
+			//scriu pt reducer; cheia contine si fitness-ul ca reducerul sa primeasca subpopulatia sortata
+			context.write(new IslandFitnessKey(subpopulations.get(i), fitness[i], evaluator.isNatural()),
+					new EvaluatedCandidateWritable<T>(candidates.get(i), fitness[i]));
 		}
-		//scriu pt reducer
-		context.write(new LongWritable(subpopulationIndex), new EvaluatedCandidateWritable<T>(assignedCandidate.getCandidate(), fitness));
-		numIndividuals++;
-		System.out.println("candidate from subpop " + subpopulationIndex + " evaluated with fitness " + fitness + "\n");
+		numIndividuals += candidates.size();
+		System.out.println("[Mapper] batch of " + candidates.size() + " candidates evaluated");
 	}
 
 	@Override
 	protected void cleanup(
-			Mapper<LongWritable, Text, LongWritable, EvaluatedCandidateWritable<T>>.Context context)
+			Mapper<LongWritable, EvaluatedCandidateWritable<T>, IslandFitnessKey, EvaluatedCandidateWritable<T>>.Context context)
 	throws IOException, InterruptedException {
 		super.cleanup(context);
+		BatchEvaluation.reportCache(evaluator, context);
+		if (sampledEvaluator != null) {
+			sampledEvaluator.reportSample(context);
+		}
+		// timpii de evaluare, pentru impartirea intrarii generatiei urmatoare
+		costRecorder.report(context);
+		if (pool != null) {
+			pool.shutdown();
+		}
 		java.net.InetAddress localMachine = java.net.InetAddress.getLocalHost();
 		System.out.println("[Mapper:" + localMachine.getHostName() +"]Number of processed individuals: " + numIndividuals);
 	}
+
+	// evaluatorul aplicatiilor de clustering: modifica centrele candidatului cand il evalueaza
+	private static class UpdatingCenterListEvaluator implements BatchFitnessEvaluator<Object> {
+		private final CenterListEvaluator evaluator;
+
+		public UpdatingCenterListEvaluator(CenterListEvaluator evaluator) {
+			this.evaluator = evaluator;
+		}
+
+		@Override
+		public double getFitness(Object candidate, List<? extends Object> population) {
+			return evaluator.getFitnessAndUpdateCandidate(toCenters(candidate), null);
+		}
+
+		@Override
+		public double[] getBatchFitness(List<? extends Object> candidates) {
+			List<List<Float>> centers = new ArrayList<List<Float>>(candidates.size());
+			for (Object candidate : candidates) {
+				centers.add(toCenters(candidate));
+			}
+			return evaluator.getBatchFitnessAndUpdateCandidates(centers);
+		}
+
+		@Override
+		public boolean isNatural() {
+			return evaluator.isNatural();
+		}
+
+		// aplicatia de clustering are candidati List<Float>; tipul elementelor nu se poate verifica
+		@SuppressWarnings("unchecked")
+		private static List<Float> toCenters(Object candidate) {
+			return (List<Float>)candidate;
+		}
+	}
 }
@@ -9,6 +9,7 @@ import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -20,14 +21,23 @@ import org.uncommons.watchmaker.framework.FitnessEvaluator;
 import org.uncommons.watchmaker.framework.PopulationData;
 import org.uncommons.watchmaker.framework.SelectionStrategy;
 
+import ro.pub.ga.watchmaker.core.BatchEvaluation;
 import ro.pub.ga.watchmaker.core.Constants;
+import ro.pub.ga.watchmaker.core.CostAwareInputFormat;
+import ro.pub.ga.watchmaker.core.IslandCounters;
+import ro.pub.ga.watchmaker.core.RandomStreams;
 import ro.pub.ga.watchmaker.example.NRouteEvaluator;
+import ro.pub.ga.watchmaker.example.clustering.CenterListEvaluator;
 import ro.pub.ga.watchmaker.hybrid.core.DistributedHybridEvolutionEngine.ElitismType;
 import ro.pub.ga.watchmaker.utils.AssignedCandidateWritable;
+import ro.pub.ga.watchmaker.utils.CachingFitnessEvaluator;
 import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
 import ro.pub.ga.watchmaker.utils.FSUtils;
+import ro.pub.ga.watchmaker.utils.IslandFitnessKey;
+import ro.pub.ga.watchmaker.utils.IslandSummary;
+import ro.pub.ga.watchmaker.utils.PopulationOutputFormat;
 
-public class MasterSlaveIslandsReducer<T> extends Reducer<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, Text> {
+public class MasterSlaveIslandsReducer<T> extends Reducer<IslandFitnessKey, EvaluatedCandidateWritable<T>, LongWritable, Text> {
 
 	private static final boolean RANDOM_MIGRATION_AND_FILLING = true;
 	
@@ -41,6 +51,7 @@ public class MasterSlaveIslandsReducer<T> extends Reducer<LongWritable, Evaluate
 	private boolean doMigration;
 	private int migrationCount;
 	private ElitismType elitismType;
+	private int topN;
 	
 	private int numberOfSubpopulations;
 	private int slaveNumber;
@@ -49,21 +60,31 @@ public class MasterSlaveIslandsReducer<T> extends Reducer<LongWritable, Evaluate
 	
 	private FSUtils fsUtils;
 	private String outpath;
+	private Configuration conf;
+	private CenterListEvaluator sampledEvaluator;
 
 	@Override
 	protected void setup(
-			Reducer<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, Text>.Context context)
+			Reducer<IslandFitnessKey, EvaluatedCandidateWritable<T>, LongWritable, Text>.Context context)
 	throws IOException, InterruptedException {
 
-		Configuration conf = context.getConfiguration();
+		conf = context.getConfiguration();
 		
 		java.net.InetAddress localMachine = java.net.InetAddress.getLocalHost();
 		System.out.println("[Reducer " + localMachine.getHostName() + "]");
 		
 		selectionStrategy = StringUtils.fromString(conf.get(Constants.SELECTION_STRATEGY_PROPERTY));
-		fitnessEvaluator = StringUtils.fromString(conf.get(Constants.FITNESS_EVALUATOR_PROPERTY));
+		FitnessEvaluator<T> evaluator = StringUtils.fromString(conf.get(Constants.FITNESS_EVALUATOR_PROPERTY));
+		if (evaluator instanceof CenterListEvaluator) {
+			// urmasii se estimeaza pe acelasi esantion ca parintii evaluati de mapperi
+			sampledEvaluator = ((CenterListEvaluator)evaluator).withSample(
+					conf.getFloat(Constants.FITNESS_SAMPLE_FRACTION, 1), RandomStreams.getSampleSeed(conf));
+			evaluator = asCandidateEvaluator(sampledEvaluator);
+		}
+		fitnessEvaluator = BatchEvaluation.withCache(evaluator, conf);
 		evolutionaryOperator = StringUtils.fromString(conf.get(Constants.EVOLUTION_SCHEME_PROPERTY));
-		rng = StringUtils.fromString(conf.get(Constants.RANDOM_GENERATOR_PROPERTY));
+		// fluxul aleator al acestui reducer in generatia curenta
+		rng = RandomStreams.forTask(conf, RandomStreams.REDUCER);
 		
 		generationCount = conf.getInt(Constants.GENERATION_COUNT_PROPERTY, 0);
 		startTime = conf.getLong(Constants.START_TIME, 0);
@@ -78,6 +99,7 @@ public class MasterSlaveIslandsReducer<T> extends Reducer<LongWritable, Evaluate
 		if(doMigration) {
 			migrationCount = conf.getInt(Constants.MIGRATION_COUNT_PROPERTY, 0);
 		}
+		topN = conf.getInt(Constants.REDUCE_TOP_N, 0);
 		
 		fsUtils = new FSUtils(FileSystem.get(conf));
 		outpath = conf.get("mapreduce.output.fileoutputformat.outputdir");
@@ -86,12 +108,12 @@ public class MasterSlaveIslandsReducer<T> extends Reducer<LongWritable, Evaluate
 
 	@Override
 	protected void reduce(
-			LongWritable arg0,
+			IslandFitnessKey arg0,
 			Iterable<EvaluatedCandidateWritable<T>> arg1,
-			Reducer<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, Text>.Context arg2)
+			Reducer<IslandFitnessKey, EvaluatedCandidateWritable<T>, LongWritable, Text>.Context arg2)
 	throws IOException, InterruptedException {
 		
-		subpopulationIndex = arg0.get();
+		subpopulationIndex = arg0.getIsland();
 
 		List<EvaluatedCandidate<T>> subpopulation = new ArrayList<EvaluatedCandidate<T>>();
 		Iterator<EvaluatedCandidateWritable<T>> iterator = arg1.iterator();
@@ -99,18 +121,19 @@ public class MasterSlaveIslandsReducer<T> extends Reducer<LongWritable, Evaluate
 
 		List<EvaluatedCandidate<T>> newSubpopulation = new ArrayList<EvaluatedCandidate<T>>();
 		
-		while(iterator.hasNext()) {
+		// subpopulatia vine deja sortata (cel mai bun primul); se citesc doar primii topN
+		while(iterator.hasNext() && (topN <= 0 || subpopulation.size() < topN)) {
 			crtCandidate = iterator.next();
 			subpopulation.add(new EvaluatedCandidate<T>(crtCandidate.getCandidate(), crtCandidate.getFitness()));
+			// urmasii identici cu un parinte iau fitness-ul din cache
+			if (fitnessEvaluator instanceof CachingFitnessEvaluator) {
+				((CachingFitnessEvaluator<T>)fitnessEvaluator).remember(crtCandidate.getCandidate(), crtCandidate.getFitness());
+			}
 		}
 		
 		System.out.println("[Oana] [Generation " + generationCount + " Reducer - dim subpopulatie " + subpopulationIndex + " = " + subpopulation.size());
 		
 		int parentsNumber = Math.max(subpopulation.size() / 2, 2);
-
-		Collections.sort(subpopulation);
-		if (fitnessEvaluator.isNatural())
-			Collections.reverse(subpopulation);
 		
 		//Select the parents in order to generate the offsprings;
 		List<T> parents = selectionStrategy.select(subpopulation, fitnessEvaluator.isNatural(), parentsNumber, rng);
@@ -131,6 +154,7 @@ public class MasterSlaveIslandsReducer<T> extends Reducer<LongWritable, Evaluate
 			);
 		}
 		newSubpopulation.addAll(evaluatedOffsprings);
+		BatchEvaluation.countEvaluations(fitnessEvaluator, arg2, offsprings.size());
 		
 		// Elitism
 		// eliteCount represents eliteCount% individuals from population that are copied to the next generation
@@ -170,14 +194,27 @@ public class MasterSlaveIslandsReducer<T> extends Reducer<LongWritable, Evaluate
 		}
 		
 		System.out.println("Best Candidate from subpop " + subpopulationIndex + " has fitness " + newSubpopulation.get(0).getFitness());
-		writeSubpopulationToFiles(newSubpopulation, newSubpopulation.get(0));
+		writeSubpopulationToFiles(newSubpopulation);
+		arg2.getCounter(IslandCounters.ISLANDS).increment(1);
+		arg2.getCounter(IslandCounters.INDIVIDUALS).increment(newSubpopulation.size());
+	}
+
+	@Override
+	protected void cleanup(
+			Reducer<IslandFitnessKey, EvaluatedCandidateWritable<T>, LongWritable, Text>.Context context)
+	throws IOException, InterruptedException {
+		BatchEvaluation.reportCache(fitnessEvaluator, context);
+		if (sampledEvaluator != null) {
+			sampledEvaluator.reportSample(context);
+		}
+		super.cleanup(context);
 	}
 
 	// scrie datele despre subpopulatie in fisierele corespunzatoare
-	public void writeSubpopulationToFiles(List<EvaluatedCandidate<T>> subpopulation, EvaluatedCandidate<T> bestCandidate) {
+	public void writeSubpopulationToFiles(List<EvaluatedCandidate<T>> subpopulation) throws IOException {
 		fsUtils.mkdir(outpath, false);
 		// population data ar trebui sa nu ia in considerare migrarile
-		writeBestCandidateToFile(new EvaluatedCandidate<T>(bestCandidate.getCandidate(), bestCandidate.getFitness()));
+		writeSummaryToFile(subpopulation);
 		writeEvolvedSubpopulationToFile(subpopulation);
 		// does the migration too
 		List<AssignedCandidateWritable<T>> assignedCandidates = assignCandidates(subpopulation);
@@ -224,29 +261,34 @@ public class MasterSlaveIslandsReducer<T> extends Reducer<LongWritable, Evaluate
 	}
 	
 	// scrie subpopulatia in subpopulation_i
-	public void writeSubpopulationToFile(List<AssignedCandidateWritable<T>> assignedCandidates) {
+	public void writeSubpopulationToFile(List<AssignedCandidateWritable<T>> assignedCandidates) throws IOException {
 		// impart in fisere
-		int nrOfFiles = numberOfSubpopulations >= slaveNumber ?
-				1 : (int)Math.ceil((float)slaveNumber / (float)numberOfSubpopulations);
+		// FILES_PER_SLAVE fisiere per slave in total, ca CostAwareInputFormat sa poata echilibra split-urile
+		int nrOfFiles = (int)Math.ceil((float)slaveNumber * CostAwareInputFormat.FILES_PER_SLAVE / (float)numberOfSubpopulations);
 		System.out.println("[Reducer] writing to " + nrOfFiles + " files (slaveNR " + slaveNumber + ", nrsub" + numberOfSubpopulations);
 		int splitSize = assignedCandidates.size() / nrOfFiles + 1;
-		for (int i = 0; i < nrOfFiles; i++) {
-			StringBuilder sb = new StringBuilder();
-			for (int j = i * splitSize; j < Math.min((i+1) * splitSize, assignedCandidates.size()); j++) {
-				sb.append(StringUtils.toString(assignedCandidates.get(j)) + "\n");
-			}
-			fsUtils.writeToFile(outpath + "/subpopulation_" + subpopulationIndex + "_" + i, sb.toString());
-		}
+		DistributedHybridEvolutionEngine.writeAssignedCandidates(conf, outpath + "/subpopulation_" + subpopulationIndex + "_",
+				splitSize, nrOfFiles, assignedCandidates);
 	}
 
-	// scrie best cadidate al subpopulatiei in best_candidate_i
-	public void writeBestCandidateToFile(EvaluatedCandidate<T> bestCandidate) {
-		fsUtils.writeToFile(outpath + "/best_candidate_" + subpopulationIndex, StringUtils.toString(bestCandidate));
+	// scrie rezumatul subpopulatiei (best candidate, medie, dispersie) in summary_i
+	public void writeSummaryToFile(List<EvaluatedCandidate<T>> subpopulation) throws IOException {
+		IslandSummary<T> summary = new IslandSummary<T>(fitnessEvaluator.isNatural());
+		for (EvaluatedCandidate<T> candidate : subpopulation) {
+			summary.add(candidate);
+		}
+		summary.write(conf, new Path(outpath, "summary_" + subpopulationIndex));
 	}
 
 	// scrie subpopulatia evaluata
-	public void writeEvolvedSubpopulationToFile(List<EvaluatedCandidate<T>> subpopulation) {
-		fsUtils.writeToFile(outpath + "/evolved_population_" + subpopulationIndex, StringUtils.toString(subpopulation));
+	public void writeEvolvedSubpopulationToFile(List<EvaluatedCandidate<T>> subpopulation) throws IOException {
+		PopulationOutputFormat.writePopulation(conf, new Path(outpath, "evolved_population_" + subpopulationIndex),
+				subpopulationIndex, subpopulation);
+	}
+
+	// aplicatia de clustering are candidati List<Float>, deci T este List<Float>; nu se poate verifica la rulare
+	@SuppressWarnings("unchecked")
+	private static <T> FitnessEvaluator<T> asCandidateEvaluator(FitnessEvaluator<List<Float>> evaluator) {
+		return (FitnessEvaluator<T>)(FitnessEvaluator<?>)evaluator;
 	}
-	
 }
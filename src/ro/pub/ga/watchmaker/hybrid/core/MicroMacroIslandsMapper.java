@@ -2,12 +2,14 @@ package ro.pub.ga.watchmaker.hybrid.core;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.mahout.common.StringUtils;
 import org.uncommons.watchmaker.framework.CandidateFactory;
@@ -21,11 +23,15 @@ import org.uncommons.watchmaker.framework.SelectionStrategy;
 import org.uncommons.watchmaker.framework.TerminationCondition;
 import org.uncommons.watchmaker.framework.termination.GenerationCount;
 
+import ro.pub.ga.watchmaker.core.BatchEvaluation;
 import ro.pub.ga.watchmaker.core.Constants;
+import ro.pub.ga.watchmaker.core.IslandEvolution;
+import ro.pub.ga.watchmaker.core.RandomStreams;
 import ro.pub.ga.watchmaker.hybrid.core.DistributedHybridEvolutionEngine.ElitismType;
+import ro.pub.ga.watchmaker.utils.EvaluatedCandidateWritable;
 import ro.pub.ga.watchmaker.utils.PopulationWritable;
 
-public class MicroMacroIslandsMapper<T> extends Mapper<LongWritable, Text, LongWritable, PopulationWritable<EvaluatedCandidate<T>>> {
+public class MicroMacroIslandsMapper<T> extends Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>> {
 
 	private CandidateFactory<T> candidateFactory;
 	private EvolutionaryOperator<T> evolutionScheme;
@@ -40,18 +46,20 @@ public class MicroMacroIslandsMapper<T> extends Mapper<LongWritable, Text, LongW
 	private int numberOfMacropopulations;
 	private ElitismType elitismType;
 	private int currentEpoch;
+	// indivizii fiecarei micropopulatii din split, in ordinea citirii
+	private Map<Long, List<T>> micropopulations;
+	private ForkJoinPool pool;
 	
 	@Override
 	protected void setup(
-			Mapper<LongWritable, Text, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
+			Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
 			throws IOException, InterruptedException {
 		Configuration conf = context.getConfiguration();
 		this.candidateFactory = StringUtils.fromString(conf.get(Constants.CANDIDATE_FACTORY_PROPERTY));
 		this.evolutionScheme = StringUtils.fromString(conf.get(Constants.EVOLUTION_SCHEME_PROPERTY));
-		this.fitnessEvaluator = StringUtils.fromString(conf.get(Constants.FITNESS_EVALUATOR_PROPERTY));
+		this.fitnessEvaluator = BatchEvaluation.withCache(StringUtils.<FitnessEvaluator<? super T>>fromString(conf.get(Constants.FITNESS_EVALUATOR_PROPERTY)), conf);
 		this.selectionStrategy = StringUtils.fromString(conf.get(Constants.SELECTION_STRATEGY_PROPERTY));
 		this.terminationConditions = new ArrayList<TerminationCondition>((List<TerminationCondition>)StringUtils.fromString(conf.get(Constants.TERMINATION_CONDITIONS)));
-		this.rng = StringUtils.fromString(conf.get(Constants.RANDOM_GENERATOR_PROPERTY));
 		this.generationCount = conf.getInt(Constants.GENERATION_COUNT_PROPERTY, -1);
 		this.eliteCount = conf.getInt(Constants.ELITE_COUNT_PROPERTY, 0);
 		if (eliteCount != -1) {
@@ -63,30 +71,64 @@ public class MicroMacroIslandsMapper<T> extends Mapper<LongWritable, Text, LongW
 		}
 		this.numberOfMacropopulations = conf.getInt(Constants.NUM_MACROISLANDS, -1);
 		this.currentEpoch = conf.getInt(Constants.CURRENT_EPOCH, -1);
+		this.micropopulations = new LinkedHashMap<Long, List<T>>();
+		int threads = IslandEvolution.getTaskThreads(conf);
+		this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
 		super.setup(context);
 	}
 	
 	@Override
 	protected void map(
 			LongWritable key,
-			Text value,
-			Mapper<LongWritable, Text, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
+			EvaluatedCandidateWritable<T> value,
+			Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
 			throws IOException, InterruptedException {
 		
-		//Extract the population from the input value
-		PopulationWritable<T> population = StringUtils.fromString(value.toString());
-		Integer micropopulationIndex = (Integer)population.getDataValue(Constants.MICROPOPULATION_INDEX);
-		Integer macropopulationIndex = (Integer)population.getDataValue(Constants.MACROPOPULATION_INDEX);
+		// un record per individ; se aduna micropopulatia inainte de evolutie
+		List<T> micropopulation = micropopulations.get(key.get());
+		if (micropopulation == null) {
+			micropopulation = new ArrayList<T>();
+			micropopulations.put(key.get(), micropopulation);
+		}
+		micropopulation.add(value.getCandidate());
+	}
+	
+	@Override
+	protected void cleanup(
+			Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
+			throws IOException, InterruptedException {
+		for (Map.Entry<Long, List<T>> micropopulation : micropopulations.entrySet()) {
+			// cheia este micro * nr_macro + macro
+			long index = micropopulation.getKey();
+			// fiecare micropopulatie are propriul flux aleator in epoca curenta
+			rng = RandomStreams.forIsland(context.getConfiguration(), index);
+			evolveMicropopulation((int)(index / numberOfMacropopulations), (int)(index % numberOfMacropopulations),
+					new PopulationWritable<T>(micropopulation.getValue()), context);
+		}
+		if (pool != null) {
+			pool.shutdown();
+		}
+		BatchEvaluation.reportCache(fitnessEvaluator, context);
+		super.cleanup(context);
+	}
+	
+	private void evolveMicropopulation(
+			Integer micropopulationIndex,
+			Integer macropopulationIndex,
+			PopulationWritable<T> population,
+			final Mapper<LongWritable, EvaluatedCandidateWritable<T>, LongWritable, PopulationWritable<EvaluatedCandidate<T>>>.Context context)
+			throws IOException, InterruptedException {
 		
 		java.net.InetAddress localMachine = java.net.InetAddress.getLocalHost();
 		System.out.println("[Oana][Mapper]" +localMachine.getHostName() + " population micro " + micropopulationIndex + 
 				" macro " + macropopulationIndex + " nr of candidates " + population.getPopulation().size());
 		
-		//Create a single threaded GenerationalEvolutionEngine
-		GenerationalEvolutionEngine<T> engine = new GenerationalEvolutionEngine<T>(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng);
-		engine.setSingleThreaded(true);
+		// fitness-ul se evalueaza pe pool-ul taskului (single threaded daca taskul are un singur core)
+		GenerationalEvolutionEngine<T> engine = IslandEvolution.createEngine(candidateFactory, evolutionScheme, fitnessEvaluator, selectionStrategy, rng, pool);
 		engine.addEvolutionObserver(new EvolutionObserver<T>() {
 			public void populationUpdate(PopulationData<? extends T> data) {
+				// toata populatia e evaluata la fiecare generatie
+				BatchEvaluation.countEvaluations(fitnessEvaluator, context, data.getPopulationSize());
 				System.out.println("[Oana][Mapper] Generation number: " + data.getGenerationNumber() + ", Best fitness: " + data.getBestCandidateFitness() + ", Mean fitness: " + data.getMeanFitness());
 			}
 		});
@@ -2,12 +2,12 @@ package ro.pub.ga.watchmaker.hybrid.core;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -16,7 +16,10 @@ import org.uncommons.watchmaker.framework.EvaluatedCandidate;
 import org.uncommons.watchmaker.framework.FitnessEvaluator;
 
 import ro.pub.ga.watchmaker.core.Constants;
+import ro.pub.ga.watchmaker.core.IslandCounters;
 import ro.pub.ga.watchmaker.utils.FSUtils;
+import ro.pub.ga.watchmaker.utils.IslandSummary;
+import ro.pub.ga.watchmaker.utils.PopulationOutputFormat;
 import ro.pub.ga.watchmaker.utils.PopulationWritable;
 
 public class MicroMacroIslandsReducer<T> extends Reducer<LongWritable, PopulationWritable<EvaluatedCandidate<T>>, LongWritable, Text>  {
@@ -26,18 +29,21 @@ public class MicroMacroIslandsReducer<T> extends Reducer<LongWritable, Populatio
 	private Boolean doMigration;
 	private String outpath;
 	private FSUtils fsUtils;
+	private Configuration conf;
+	private int numberOfMacropopulations;
 	
 	@Override
 	protected void setup(
 			Reducer<LongWritable, PopulationWritable<EvaluatedCandidate<T>>, LongWritable, Text>.Context context)
 			throws IOException, InterruptedException {
 		
-		Configuration conf = context.getConfiguration();
+		conf = context.getConfiguration();
 		
 		fitnessEvaluator = StringUtils.fromString(conf.get(Constants.FITNESS_EVALUATOR_PROPERTY));
 		doMigration = conf.getBoolean(Constants.MIGRATION_PROPERTY, false);
 		outpath = conf.get("mapreduce.output.fileoutputformat.outputdir");
 		fsUtils = new FSUtils(FileSystem.get(conf));
+		numberOfMacropopulations = conf.getInt(Constants.NUM_MACROISLANDS, 1);
 		
 		super.setup(context);
 	}
@@ -77,46 +83,40 @@ public class MicroMacroIslandsReducer<T> extends Reducer<LongWritable, Populatio
 			evolvedPopulation.addToPopulation(populations.get(i).getPopulation());
 		}
 		
-		//Sort the individuals in the evolved population according to the fitness values
-		if (fitnessEvaluator.isNatural()) {
-			Collections.sort(evolvedPopulation.getPopulation(), Collections.reverseOrder());
-		} else {
-			Collections.sort(evolvedPopulation.getPopulation());
-		}
-		
+		// populatia nu se mai sorteaza: rezumatul e calculat din mers, driverul sorteaza o data, la final
 		// Write population to files
 		fsUtils.mkdir(outpath, false);
-		EvaluatedCandidate<T> bestCandidate = evolvedPopulation.getPopulation().get(0);
-		writeBestCandidateToFile(new EvaluatedCandidate<T>(bestCandidate.getCandidate(), bestCandidate.getFitness()));
+		writeSummaryToFile(evolvedPopulation.getPopulation());
 		writeEvolvedMacropopulationToFile(evolvedPopulation.getPopulation());
 		writeMicropopulationsToFile(populations);
+		arg2.getCounter(IslandCounters.ISLANDS).increment(1);
+		arg2.getCounter(IslandCounters.INDIVIDUALS).increment(evolvedPopulation.getPopulation().size());
 	}
 	
-	public void writeMicropopulationsToFile(List<PopulationWritable<EvaluatedCandidate<T>>> populations) {
+	public void writeMicropopulationsToFile(List<PopulationWritable<EvaluatedCandidate<T>>> populations) throws IOException {
 		 int populationIndex;
 		 for(PopulationWritable<EvaluatedCandidate<T>> crtPopulation: populations) {
 			populationIndex = (Integer)crtPopulation.getDataValue(Constants.MICROPOPULATION_INDEX);
-			crtPopulation.getData().clear();
-			crtPopulation.putDataValue(Constants.MICROPOPULATION_INDEX, (int)populationIndex);
-			crtPopulation.putDataValue(Constants.MACROPOPULATION_INDEX, (int)macropopulationIndex);
-			fsUtils.writeToFile(
-					outpath + "/subpopulation_" + macropopulationIndex + "_" + populationIndex, 
-					StringUtils.toString(
-							new PopulationWritable<T>(
-									crtPopulation.getPopulation(), 
-									crtPopulation.getData(), 
-									true)
-					)
-			);
+			// cheia indivizilor este micro * nr_macro + macro, ca la impartirea initiala
+			PopulationOutputFormat.writePopulation(conf,
+					new Path(outpath, "subpopulation_" + macropopulationIndex + "_" + populationIndex),
+					(long)populationIndex * numberOfMacropopulations + macropopulationIndex,
+					crtPopulation.getPopulation());
 		 }
 	 }
 	
-	public void writeBestCandidateToFile(EvaluatedCandidate<T> bestCandidate) {
-		fsUtils.writeToFile(outpath + "/best_candidate_" + macropopulationIndex, StringUtils.toString(bestCandidate));
+	// scrie rezumatul macropopulatiei (best candidate, medie, dispersie) in summary_i
+	public void writeSummaryToFile(List<EvaluatedCandidate<T>> population) throws IOException {
+		IslandSummary<T> summary = new IslandSummary<T>(fitnessEvaluator.isNatural());
+		for (EvaluatedCandidate<T> candidate : population) {
+			summary.add(candidate);
+		}
+		summary.write(conf, new Path(outpath, "summary_" + macropopulationIndex));
 	}
 	
-	public void writeEvolvedMacropopulationToFile(List<EvaluatedCandidate<T>> population) {
-		fsUtils.writeToFile(outpath + "/evolved_population_" + macropopulationIndex, StringUtils.toString(population));
+	public void writeEvolvedMacropopulationToFile(List<EvaluatedCandidate<T>> population) throws IOException {
+		PopulationOutputFormat.writePopulation(conf, new Path(outpath, "evolved_population_" + macropopulationIndex),
+				macropopulationIndex, population);
 	}
 	
 	private void performMigration(List<PopulationWritable<EvaluatedCandidate<T>>> populations,
@@ -0,0 +1,100 @@
+package ro.pub.ga.watchmaker.jss;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import ro.pub.ga.watchmaker.utils.CandidateCodec;
+import ro.pub.ga.watchmaker.utils.CandidateCodecs;
+
+/**
+ * Codec for the job shop schedules; a schedule is written as a table with 
+ * one row per machine and one (task, job, machine, start, end) entry 
+ * per operation, all as variable length integers.
+ */
+public class ScheduleCandidateCodec implements CandidateCodec<List<List<ScheduleItem>>> {
+
+	/**
+	 * Registers the codec under its reserved id; called from the static 
+	 * initializers of the classes loaded both by the driver and by the tasks.
+	 */
+	public static void register() {
+		
+		CandidateCodecs.register(CandidateCodecs.SCHEDULE_CODEC_ID, new ScheduleCandidateCodec());
+	}
+
+	@Override
+	public boolean accepts(Object candidate) {
+		
+		if(candidate == null || candidate.getClass() != ArrayList.class) {
+			
+			return false;
+		}
+		
+		for(Object machine: (List<?>)candidate) {
+			
+			if(machine == null || machine.getClass() != ArrayList.class) {
+				
+				return false;
+			}
+			
+			for(Object item: (List<?>)machine) {
+				
+				if(item == null || item.getClass() != ScheduleItem.class) {
+					
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+
+	@Override
+	public void write(DataOutput out, List<List<ScheduleItem>> candidate) throws IOException {
+		
+		WritableUtils.writeVInt(out, candidate.size());
+		for(List<ScheduleItem> machine: candidate) {
+			
+			WritableUtils.writeVInt(out, machine.size());
+			for(ScheduleItem item: machine) {
+				
+				WritableUtils.writeVInt(out, item.getTaskNumber());
+				WritableUtils.writeVInt(out, item.getJobNumber());
+				WritableUtils.writeVInt(out, item.getMachineNumber());
+				WritableUtils.writeVLong(out, item.getStart());
+				WritableUtils.writeVLong(out, item.getEnd());
+			}
+		}
+	}
+
+	@Override
+	public List<List<ScheduleItem>> read(DataInput in) throws IOException {
+		
+		int machines = WritableUtils.readVInt(in);
+		List<List<ScheduleItem>> candidate = new ArrayList<List<ScheduleItem>>(machines);
+		
+		for(int i = 0; i < machines; i++) {
+			
+			int operations = WritableUtils.readVInt(in);
+			List<ScheduleItem> machine = new ArrayList<ScheduleItem>(operations);
+			for(int j = 0; j < operations; j++) {
+				
+				machine.add(new ScheduleItem(
+						WritableUtils.readVInt(in), 
+						WritableUtils.readVInt(in), 
+						WritableUtils.readVInt(in), 
+						WritableUtils.readVLong(in), 
+						WritableUtils.readVLong(in)));
+			}
+			
+			candidate.add(machine);
+		}
+		
+		return candidate;
+	}
+}
@@ -8,6 +8,11 @@ import org.uncommons.watchmaker.framework.FitnessEvaluator;
 
 public class ScheduleEvaluator implements FitnessEvaluator<List<List<ScheduleItem>>> {
 	
+	static {
+		
+		ScheduleCandidateCodec.register();
+	}
+	
 	private int machinesNumber;
 	private int jobsNumber;
 	private Random rng;
@@ -17,6 +17,11 @@ import org.uncommons.watchmaker.framework.factories.ListPermutationFactory;
 
 public class ScheduleFactory implements CandidateFactory<List<List<ScheduleItem>>>{
 	
+	static {
+		
+		ScheduleCandidateCodec.register();
+	}
+	
 	private int numberOfJobs;
 	private int numberOfMachines;
 	private List<List<Task>> jobs;
@@ -0,0 +1,20 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.util.List;
+
+import org.uncommons.watchmaker.framework.FitnessEvaluator;
+
+/**
+ * Implemented by the evaluators that can share work between the candidates of a batch
+ * (loading the dataset, scratch buffers, models trained once for all the candidates).
+ * The mappers evaluating records hand them to the evaluator in batches; several batches 
+ * may be evaluated at the same time, from different threads.
+ */
+public interface BatchFitnessEvaluator<T> extends FitnessEvaluator<T> {
+	
+	/**
+	 * @return the fitness of every candidate, in the order of the candidates; each value must be
+	 * the one getFitness(candidate, null) returns
+	 */
+	public double[] getBatchFitness(List<? extends T> candidates);
+}
@@ -0,0 +1,62 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableUtils;
+import org.uncommons.maths.binary.BitString;
+
+/**
+ * Codec for the feature selection candidates; the bits are packed into longs.
+ */
+public class BitStringCandidateCodec implements CandidateCodec<BitString> {
+
+	@Override
+	public boolean accepts(Object candidate) {
+		
+		return candidate instanceof BitString;
+	}
+
+	@Override
+	public void write(DataOutput out, BitString candidate) throws IOException {
+		
+		int length = candidate.getLength();
+		WritableUtils.writeVInt(out, length);
+		
+		for(int offset = 0; offset < length; offset += Long.SIZE) {
+			
+			long word = 0;
+			int end = Math.min(offset + Long.SIZE, length);
+			for(int i = offset; i < end; i++) {
+				
+				if(candidate.getBit(i)) {
+					
+					word |= 1L << (i - offset);
+				}
+			}
+			
+			out.writeLong(word);
+		}
+	}
+
+	@Override
+	public BitString read(DataInput in) throws IOException {
+		
+		int length = WritableUtils.readVInt(in);
+		BitString candidate = new BitString(length);
+		
+		for(int offset = 0; offset < length; offset += Long.SIZE) {
+			
+			long word = in.readLong();
+			while(word != 0) {
+				
+				int bit = Long.numberOfTrailingZeros(word);
+				candidate.setBit(offset + bit, true);
+				word &= word - 1;
+			}
+		}
+		
+		return candidate;
+	}
+}
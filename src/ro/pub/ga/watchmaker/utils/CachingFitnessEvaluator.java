@@ -0,0 +1,207 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.uncommons.watchmaker.framework.FitnessEvaluator;
+
+/**
+ * Bounded fitness cache in front of an evaluator: the fitness of a candidate is looked up by its encoded
+ * form (see {@link CandidateCodecs}), so the elites and the survivors re-evaluated every generation cost a
+ * hash lookup instead of an evaluation. The least recently used entries are evicted first.
+ * <p>
+ * Only for evaluators whose fitness depends on the candidate alone, not on the rest of the population.
+ * The cache is safe to use from several threads.
+ */
+public class CachingFitnessEvaluator<T> implements BatchFitnessEvaluator<T> {
+
+	private final FitnessEvaluator<? super T> evaluator;
+	private final Map<GenomeKey, Double> cache;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public CachingFitnessEvaluator(FitnessEvaluator<? super T> evaluator, final int capacity) {
+
+		this.evaluator = evaluator;
+		this.cache = new LinkedHashMap<GenomeKey, Double>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<GenomeKey, Double> eldest) {
+
+				return size() > capacity;
+			}
+		};
+	}
+
+	@Override
+	public double getFitness(T candidate, List<? extends T> population) {
+
+		GenomeKey key = new GenomeKey(candidate);
+		Double fitness = lookup(key);
+		if(fitness != null) {
+
+			return fitness;
+		}
+
+		//Evaluated outside the lock, two threads may evaluate the same new candidate
+		double value = evaluator.getFitness(candidate, population);
+		store(key, value);
+
+		return value;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public double[] getBatchFitness(List<? extends T> candidates) {
+
+		double[] fitness = new double[candidates.size()];
+		List<GenomeKey> keys = new ArrayList<GenomeKey>(candidates.size());
+		List<Integer> missing = new ArrayList<Integer>();
+		List<T> missingCandidates = new ArrayList<T>();
+		for(int i = 0; i < fitness.length; i++) {
+
+			GenomeKey key = new GenomeKey(candidates.get(i));
+			keys.add(key);
+			Double value = lookup(key);
+			if(value != null) {
+
+				fitness[i] = value;
+			}
+			else {
+
+				missing.add(i);
+				missingCandidates.add(candidates.get(i));
+			}
+		}
+
+		if(!missing.isEmpty()) {
+
+			double[] evaluated;
+			if(evaluator instanceof BatchFitnessEvaluator) {
+
+				evaluated = ((BatchFitnessEvaluator<? super T>)evaluator).getBatchFitness(missingCandidates);
+			}
+			else {
+
+				evaluated = new double[missingCandidates.size()];
+				for(int i = 0; i < evaluated.length; i++) {
+
+					evaluated[i] = evaluator.getFitness(missingCandidates.get(i), null);
+				}
+			}
+
+			for(int i = 0; i < evaluated.length; i++) {
+
+				fitness[missing.get(i)] = evaluated[i];
+				store(keys.get(missing.get(i)), evaluated[i]);
+			}
+		}
+
+		return fitness;
+	}
+
+	/**
+	 * Records a fitness computed elsewhere, e.g. by the mappers, so that identical offspring are not evaluated again.
+	 */
+	public void remember(T candidate, double fitness) {
+
+		store(new GenomeKey(candidate), fitness);
+	}
+
+	private Double lookup(GenomeKey key) {
+
+		Double fitness;
+		synchronized(cache) {
+
+			fitness = cache.get(key);
+		}
+
+		if(fitness != null) {
+
+			hits.incrementAndGet();
+		}
+		else {
+
+			misses.incrementAndGet();
+		}
+
+		return fitness;
+	}
+
+	private void store(GenomeKey key, double fitness) {
+
+		synchronized(cache) {
+
+			cache.put(key, fitness);
+		}
+	}
+
+	@Override
+	public boolean isNatural() {
+
+		return evaluator.isNatural();
+	}
+
+	public FitnessEvaluator<? super T> getEvaluator() {
+
+		return evaluator;
+	}
+
+	/**
+	 * @return the lookups answered by the cache, i.e. the evaluations avoided
+	 */
+	public long getHits() {
+
+		return hits.get();
+	}
+
+	public long getMisses() {
+
+		return misses.get();
+	}
+
+	/**
+	 * The encoded candidate; the bytes are compared on a hash match, so two candidates never share an entry.
+	 */
+	private static class GenomeKey {
+
+		private final byte[] bytes;
+		private final int hash;
+
+		public GenomeKey(Object candidate) {
+
+			DataOutputBuffer buffer = new DataOutputBuffer();
+			try {
+
+				CandidateCodecs.writeCandidate(buffer, candidate);
+			} catch (IOException e) {
+
+				throw new IllegalStateException("Could not encode the candidate", e);
+			}
+
+			this.bytes = Arrays.copyOf(buffer.getData(), buffer.getLength());
+			this.hash = Arrays.hashCode(bytes);
+		}
+
+		@Override
+		public int hashCode() {
+
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+
+			return other instanceof GenomeKey && hash == ((GenomeKey)other).hash
+					&& Arrays.equals(bytes, ((GenomeKey)other).bytes);
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary encoding of a single genome, used by the Writables that travel 
+ * through the shuffle instead of the XStream representation.
+ * 
+ * @param <T> - the genome type
+ */
+public interface CandidateCodec<T> {
+	
+	/**
+	 * @param candidate - the candidate to be encoded
+	 * @return true if this codec is able to write (and read back) the given candidate
+	 */
+	public boolean accepts(Object candidate);
+	
+	public void write(DataOutput out, T candidate) throws IOException;
+	
+	public T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,202 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.mahout.common.StringUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+/**
+ * Registry of the candidate codecs known to this JVM. Every encoded candidate 
+ * is prefixed by the one byte id of the codec that wrote it; the ids must 
+ * therefore be the same in the driver and in the tasks, so custom codecs 
+ * should be registered from a static initializer of a class loaded by both 
+ * (the job shop codec, for example, is registered by ScheduleFactory and 
+ * ScheduleEvaluator). The generic list codecs are probed before the custom 
+ * ones, so a custom codec never claims a plain (e.g. empty) list.
+ */
+public final class CandidateCodecs {
+	
+	public static final byte XSTREAM_CODEC_ID = 0;
+	public static final byte SCALAR_LIST_CODEC_ID = 1;
+	public static final byte INDEX_LIST_CODEC_ID = 2;
+	public static final byte FLOAT_LIST_CODEC_ID = 3;
+	public static final byte BIT_STRING_CODEC_ID = 4;
+	public static final byte SCHEDULE_CODEC_ID = 5;
+	public static final byte FIRST_CUSTOM_CODEC_ID = 32;
+	
+	private static final CandidateCodec<?>[] codecs = new CandidateCodec<?>[Byte.MAX_VALUE + 1];
+	
+	//Lookup order; the list codecs first, then the custom ones; within each group the codecs 
+	//registered last are tried first; replaced, never modified, on register;
+	private static volatile byte[] lookupOrder = new byte[0];
+	
+	static {
+		
+		codecs[XSTREAM_CODEC_ID] = new XStreamCandidateCodec();
+		register(SCALAR_LIST_CODEC_ID, new ScalarListCandidateCodec());
+		
+		//Specialised codecs for the shipped genomes; tried before the generic one;
+		register(INDEX_LIST_CODEC_ID, new IndexListCandidateCodec());
+		register(FLOAT_LIST_CODEC_ID, new FloatListCandidateCodec());
+		register(BIT_STRING_CODEC_ID, new BitStringCandidateCodec());
+	}
+	
+	private CandidateCodecs() {
+		
+	}
+	
+	/**
+	 * Registers a codec for a custom genome type. The ids below 
+	 * FIRST_CUSTOM_CODEC_ID are used by the codecs shipped with the framework.
+	 */
+	public static synchronized void register(byte id, CandidateCodec<?> codec) {
+		
+		Preconditions.checkArgument(id > XSTREAM_CODEC_ID, "Codec id " + id + " is reserved");
+		Preconditions.checkArgument(codecs[id] == null || codecs[id].getClass() == codec.getClass(), 
+				"Codec id " + id + " is already used by " + codecs[id]);
+		
+		codecs[id] = codec;
+		
+		List<Byte> listCodecs = new ArrayList<Byte>();
+		List<Byte> otherCodecs = new ArrayList<Byte>();
+		(isListCodec(id) ? listCodecs : otherCodecs).add(id);
+		for(byte registeredId: lookupOrder) {
+			
+			if(registeredId != id) {
+				
+				(isListCodec(registeredId) ? listCodecs : otherCodecs).add(registeredId);
+			}
+		}
+		
+		List<Byte> order = new ArrayList<Byte>(listCodecs);
+		order.addAll(otherCodecs);
+		
+		byte[] newLookupOrder = new byte[order.size()];
+		for(int i = 0; i < newLookupOrder.length; i++) {
+			
+			newLookupOrder[i] = order.get(i);
+		}
+		lookupOrder = newLookupOrder;
+	}
+	
+	private static boolean isListCodec(byte id) {
+		
+		return id == SCALAR_LIST_CODEC_ID || id == INDEX_LIST_CODEC_ID || id == FLOAT_LIST_CODEC_ID;
+	}
+	
+	/**
+	 * @return the id of the first codec accepting the candidate; XStream is used as a last resort
+	 */
+	public static byte idFor(Object candidate) {
+		
+		for(byte id: lookupOrder) {
+			
+			if(codecs[id].accepts(candidate)) {
+				
+				return id;
+			}
+		}
+		
+		return XSTREAM_CODEC_ID;
+	}
+	
+	/**
+	 * @return the codec used for candidates of the same genome type as the given one
+	 */
+	public static <T> CandidateCodec<T> forCandidate(T candidate) throws IOException {
+		
+		return forId(idFor(candidate));
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <T> CandidateCodec<T> forId(byte id) throws IOException {
+		
+		CandidateCodec<?> codec = (id >= 0) ? codecs[id] : null;
+		if(codec == null) {
+			
+			throw new IOException("No candidate codec registered with id " + id);
+		}
+		
+		return (CandidateCodec<T>)codec;
+	}
+	
+	public static void writeCandidate(DataOutput out, Object candidate) throws IOException {
+		
+		byte id = idFor(candidate);
+		out.writeByte(id);
+		CandidateCodecs.<Object>forId(id).write(out, candidate);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <T> T readCandidate(DataInput in) throws IOException {
+		
+		return (T)forId(in.readByte()).read(in);
+	}
+	
+	public static byte[] encode(Object candidate) throws IOException {
+		
+		DataOutputBuffer out = new DataOutputBuffer();
+		writeCandidate(out, candidate);
+		
+		return Arrays.copyOf(out.getData(), out.getLength());
+	}
+	
+	public static <T> T decode(byte[] bytes) throws IOException {
+		
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(bytes, bytes.length);
+		
+		return readCandidate(in);
+	}
+	
+	/**
+	 * Text form of a candidate, to be used instead of StringUtils.toString 
+	 * for one-candidate-per-line files: the Base64 encoding of the binary form, 
+	 * or the XStream XML itself for genomes without a binary codec.
+	 */
+	public static String toString(Object candidate) {
+		
+		try {
+			
+			if(idFor(candidate) == XSTREAM_CODEC_ID) {
+				
+				return StringUtils.toString(candidate);
+			}
+			
+			return new String(Base64.encodeBase64(encode(candidate)), Charsets.US_ASCII);
+		} catch (IOException e) {
+			
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Reverse of toString; XML input (starting with '<') is handed to XStream.
+	 */
+	public static <T> T fromString(String value) {
+		
+		String trimmedValue = value.trim();
+		if(trimmedValue.startsWith("<")) {
+			
+			return StringUtils.fromString(trimmedValue);
+		}
+		
+		try {
+			
+			return decode(Base64.decodeBase64(trimmedValue.getBytes(Charsets.US_ASCII)));
+		} catch (IOException e) {
+			
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Read-only table of float or double columns, with an optional int class-id 
+ * column, stored column by column in a flat little endian file.
+ * 
+ * A dataset opened with map() reads its values directly from the page cache, 
+ * so tasks running on the same node share one copy of the data instead of 
+ * each holding its own on the heap. Datasets created through a Builder are 
+ * heap backed and are meant to be written (published) by the driver.
+ * 
+ * File layout: magic, version, rows, columns (ints), class-id flag (byte), 
+ * one type byte per column, padding to 8 bytes, then every column, each 
+ * padded to 8 bytes, and finally the class-id column.
+ */
+public class ColumnarDataset {
+	
+	public static final byte FLOAT = 0;
+	public static final byte DOUBLE = 1;
+	
+	private static final int MAGIC = 0x44434741;
+	private static final int VERSION = 1;
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+	
+	private final int rows;
+	private final byte[] types;
+	private final ByteBuffer[] columns;
+	private final ByteBuffer classIds;
+	
+	private ColumnarDataset(int rows, byte[] types, ByteBuffer[] columns, ByteBuffer classIds) {
+		
+		this.rows = rows;
+		this.types = types;
+		this.columns = columns;
+		this.classIds = classIds;
+	}
+	
+	public int getRowCount() {
+		return rows;
+	}
+	
+	public int getColumnCount() {
+		return types.length;
+	}
+	
+	public byte getColumnType(int column) {
+		return types[column];
+	}
+	
+	public boolean hasClassIds() {
+		return classIds != null;
+	}
+	
+	public float getFloat(int row, int column) {
+		
+		return (types[column] == FLOAT) ? columns[column].getFloat(row << 2) : (float)columns[column].getDouble(row << 3);
+	}
+	
+	public double getDouble(int row, int column) {
+		
+		return (types[column] == FLOAT) ? columns[column].getFloat(row << 2) : columns[column].getDouble(row << 3);
+	}
+	
+	/**
+	 * Copies the values, as floats, into a row-major heap array: the value (row, column) is at
+	 * row * getColumnCount() + column. For the evaluators that scan whole rows many times.
+	 */
+	public float[] toFloatRows() {
+		
+		int columnCount = types.length;
+		float[] values = new float[rows * columnCount];
+		for(int column = 0; column < columnCount; column++) {
+			for(int row = 0; row < rows; row++) {
+				values[row * columnCount + column] = getFloat(row, column);
+			}
+		}
+		return values;
+	}
+	
+	public int getClassId(int row) {
+		
+		return classIds.getInt(row << 2);
+	}
+	
+	public void write(OutputStream out) throws IOException {
+		
+		WritableByteChannel channel = Channels.newChannel(out);
+		
+		ByteBuffer header = ByteBuffer.allocate(headerSize(types.length)).order(ORDER);
+		header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(types.length);
+		header.put((byte)(classIds != null ? 1 : 0));
+		header.put(types);
+		header.position(0);
+		writeFully(channel, header);
+		
+		for(int i = 0; i < columns.length; i++) {
+			
+			writeColumn(channel, columns[i]);
+		}
+		
+		if(classIds != null) {
+			
+			writeColumn(channel, classIds);
+		}
+	}
+	
+	private static void writeColumn(WritableByteChannel channel, ByteBuffer column) throws IOException {
+		
+		ByteBuffer data = column.duplicate();
+		data.clear();
+		writeFully(channel, data);
+		
+		int padding = padding(data.capacity());
+		if(padding > 0) {
+			
+			writeFully(channel, ByteBuffer.allocate(padding));
+		}
+	}
+	
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		
+		while(buffer.hasRemaining()) {
+			
+			channel.write(buffer);
+		}
+	}
+	
+	/**
+	 * Maps the columns of a dataset file in read-only mode.
+	 */
+	public static ColumnarDataset map(File file) throws IOException {
+		
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			
+			FileChannel channel = randomAccessFile.getChannel();
+			
+			ByteBuffer fixedHeader = channel.map(MapMode.READ_ONLY, 0, 17).order(ORDER);
+			if(fixedHeader.getInt() != MAGIC || fixedHeader.getInt() != VERSION) {
+				
+				throw new IOException(file + " is not a columnar dataset file");
+			}
+			
+			int rows = fixedHeader.getInt();
+			int columnCount = fixedHeader.getInt();
+			boolean withClassIds = fixedHeader.get() != 0;
+			
+			byte[] types = new byte[columnCount];
+			channel.map(MapMode.READ_ONLY, 17, columnCount).get(types);
+			
+			long offset = headerSize(columnCount);
+			ByteBuffer[] columns = new ByteBuffer[columnCount];
+			for(int i = 0; i < columnCount; i++) {
+				
+				long size = (long)rows * width(types[i]);
+				columns[i] = channel.map(MapMode.READ_ONLY, offset, size).order(ORDER);
+				offset += size + padding(size);
+			}
+			
+			ByteBuffer classIds = withClassIds ? channel.map(MapMode.READ_ONLY, offset, (long)rows * 4).order(ORDER) : null;
+			
+			//The mappings stay valid after the channel is closed;
+			return new ColumnarDataset(rows, types, columns, classIds);
+		} finally {
+			
+			randomAccessFile.close();
+		}
+	}
+	
+	/**
+	 * Reads a dataset from the bytes written by write(), e.g. the inline form 
+	 * of an unpublished side data value; the columns are views of the buffer.
+	 */
+	public static ColumnarDataset wrap(ByteBuffer data) throws IOException {
+		
+		ByteBuffer buffer = data.duplicate().order(ORDER);
+		if(buffer.remaining() < 17 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			
+			throw new IOException("The buffer does not hold a columnar dataset");
+		}
+		
+		int rows = buffer.getInt();
+		int columnCount = buffer.getInt();
+		boolean withClassIds = buffer.get() != 0;
+		
+		byte[] types = new byte[columnCount];
+		buffer.get(types);
+		
+		int offset = data.position() + headerSize(columnCount);
+		ByteBuffer[] columns = new ByteBuffer[columnCount];
+		for(int i = 0; i < columnCount; i++) {
+			
+			int size = rows * width(types[i]);
+			columns[i] = slice(buffer, offset, size);
+			offset += size + padding(size);
+		}
+		
+		ByteBuffer classIds = withClassIds ? slice(buffer, offset, rows * 4) : null;
+		
+		return new ColumnarDataset(rows, types, columns, classIds);
+	}
+	
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int size) {
+		
+		ByteBuffer view = buffer.duplicate();
+		view.limit(offset + size).position(offset);
+		
+		return view.slice().order(ORDER);
+	}
+	
+	private static int headerSize(int columnCount) {
+		
+		int size = 17 + columnCount;
+		return size + padding(size);
+	}
+	
+	private static int padding(long size) {
+		
+		return (int)((8 - size % 8) % 8);
+	}
+	
+	private static int width(byte type) {
+		
+		return (type == FLOAT) ? 4 : 8;
+	}
+	
+	/**
+	 * Builds a heap backed dataset with a fixed number of rows.
+	 */
+	public static class Builder {
+		
+		private final int rows;
+		private final byte[] types;
+		private final ByteBuffer[] columns;
+		private final ByteBuffer classIds;
+		
+		public Builder(int rows, byte[] types, boolean withClassIds) {
+			
+			this.rows = rows;
+			this.types = types.clone();
+			this.columns = new ByteBuffer[types.length];
+			for(int i = 0; i < types.length; i++) {
+				
+				Preconditions.checkArgument(types[i] == FLOAT || types[i] == DOUBLE, "Unknown column type " + types[i]);
+				columns[i] = ByteBuffer.allocate(rows * width(types[i])).order(ORDER);
+			}
+			this.classIds = withClassIds ? ByteBuffer.allocate(rows * 4).order(ORDER) : null;
+		}
+		
+		public Builder(int rows, int columnCount, byte type, boolean withClassIds) {
+			
+			this(rows, filledTypes(columnCount, type), withClassIds);
+		}
+		
+		private static byte[] filledTypes(int columnCount, byte type) {
+			
+			byte[] types = new byte[columnCount];
+			for(int i = 0; i < columnCount; i++) {
+				
+				types[i] = type;
+			}
+			
+			return types;
+		}
+		
+		public Builder set(int row, int column, double value) {
+			
+			if(types[column] == FLOAT) {
+				
+				columns[column].putFloat(row << 2, (float)value);
+			}
+			else {
+				
+				columns[column].putDouble(row << 3, value);
+			}
+			
+			return this;
+		}
+		
+		public Builder setClassId(int row, int classId) {
+			
+			classIds.putInt(row << 2, classId);
+			return this;
+		}
+		
+		public ColumnarDataset build() {
+			
+			return new ColumnarDataset(rows, types, columns, classIds);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Side data format for columnar datasets; the node-local file is memory mapped. 
+ * Unpublished datasets are serialized inline in the same binary form.
+ */
+public class ColumnarDatasetFormat implements SideDataFormat<ColumnarDataset> {
+
+	@Override
+	public void write(OutputStream out, ColumnarDataset value) throws IOException {
+		
+		value.write(out);
+	}
+
+	@Override
+	public ColumnarDataset read(File file) throws IOException {
+		
+		return ColumnarDataset.map(file);
+	}
+
+	@Override
+	public boolean isInlinedAsBytes() {
+		
+		return true;
+	}
+
+	@Override
+	public ColumnarDataset read(byte[] bytes) throws IOException {
+		
+		return ColumnarDataset.wrap(ByteBuffer.wrap(bytes));
+	}
+}
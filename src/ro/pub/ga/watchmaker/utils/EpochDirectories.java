@@ -0,0 +1,109 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * One directory per epoch under a base directory ({@code epochs/epoch_0007/...}). The job of an epoch
+ * reads the populations written by the job of the previous epoch where they are, so moving from one
+ * epoch to the next costs no copy; the directories no longer needed are deleted in the background.
+ */
+public class EpochDirectories {
+
+	public static final String DEFAULT_DIRECTORY = "epochs";
+
+	//The population files written by the reducers; the other outputs (summaries, part files) are not read
+	public static final String POPULATION_FILES = "subpopulation_*";
+
+	private final FileSystem fs;
+	private final Path directory;
+	private final ExecutorService collector;
+
+	public EpochDirectories(FileSystem fs, String directory) {
+
+		this.fs = fs;
+		this.directory = fs.makeQualified(new Path(directory));
+		this.collector = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+
+				Thread thread = new Thread(runnable, "epoch-directory-collector");
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Removes the directories of a previous run.
+	 */
+	public void clear() throws IOException {
+
+		fs.delete(directory, true);
+	}
+
+	/**
+	 * The directory the job of {@code epoch} writes to; epoch 0 holds the initial population.
+	 */
+	public Path getEpochDirectory(int epoch) {
+
+		return new Path(directory, String.format("epoch_%04d", epoch));
+	}
+
+	/**
+	 * The input of the job of {@code epoch}: the population files of the previous epoch.
+	 */
+	public Path getInputPath(int epoch) {
+
+		return new Path(getEpochDirectory(epoch - 1), POPULATION_FILES);
+	}
+
+	/**
+	 * Deletes the directory of {@code epoch} in the background; call it once no job reads it.
+	 */
+	public void release(final int epoch) {
+
+		if(epoch < 0) {
+
+			return;
+		}
+
+		collector.execute(new Runnable() {
+
+			@Override
+			public void run() {
+
+				try {
+
+					fs.delete(getEpochDirectory(epoch), true);
+				} catch (IOException e) {
+
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits for the pending deletions.
+	 */
+	public void close() {
+
+		collector.shutdown();
+		try {
+
+			collector.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -4,71 +4,111 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
-import org.apache.hadoop.io.DoubleWritable;
-import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.WritableComparable;
-import org.apache.mahout.common.StringUtils;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
 
 public class EvaluatedCandidateWritable<T> implements WritableComparable<EvaluatedCandidateWritable<T>> {
-	
+
+	static {
+
+		//Register the raw comparator so the shuffle can order the candidates without decoding them;
+		WritableComparator.define(EvaluatedCandidateWritable.class, new Comparator());
+	}
+
+	private static final ThreadLocal<DataOutputBuffer> ENCODING_BUFFER = new ThreadLocal<DataOutputBuffer>() {
+
+		@Override
+		protected DataOutputBuffer initialValue() {
+
+			return new DataOutputBuffer();
+		}
+	};
+
 	private T candidate;
 	private double fitness;
-	
-	
+
+	//The encoded candidate as read from the stream; it is decoded on the first getCandidate() call;
+	private byte[] candidateBytes = new byte[0];
+	private int candidateLength;
+	private boolean decoded = true;
 
 	public EvaluatedCandidateWritable(T candidate, double fitness) {
 		super();
 		this.candidate = candidate;
 		this.fitness = fitness;
 	}
-	
+
 	public EvaluatedCandidateWritable() {
-		
+
 	}
-	
+
 	@Override
 	public void write(DataOutput out) throws IOException {
-		
-		String stringifiedCandidate = StringUtils.toString(candidate);
-		
-		//Write the candidate and fitness value wrapped in Writable classes;
-		Text writableCandidate = new Text(stringifiedCandidate);
-		DoubleWritable doubleWritable = new DoubleWritable(fitness);
-		
-		writableCandidate.write(out);
-		doubleWritable.write(out);
+
+		//The fitness goes first, so that the raw comparator finds it at the start of the record;
+		out.writeDouble(fitness);
+
+		if(decoded) {
+
+			DataOutputBuffer buffer = ENCODING_BUFFER.get();
+			buffer.reset();
+			CandidateCodecs.writeCandidate(buffer, candidate);
+			WritableUtils.writeVInt(out, buffer.getLength());
+			out.write(buffer.getData(), 0, buffer.getLength());
+		}
+		else {
+
+			//The candidate was never looked at, pass the encoded bytes through;
+			WritableUtils.writeVInt(out, candidateLength);
+			out.write(candidateBytes, 0, candidateLength);
+		}
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void readFields(DataInput in) throws IOException {
-		
-		//read the fields as saved on the FS
-		Text writableCandidate = new Text();
-		DoubleWritable doubleWritable = new DoubleWritable();
-		
-		writableCandidate.readFields(in);
-		
-		//extract the candidate
-		candidate = (T)StringUtils.fromString(writableCandidate.toString());
-		
-		//extract the fitness value
-		doubleWritable.readFields(in);
-		fitness = doubleWritable.get();
+
+		//read the fields as saved on the FS; the candidate is kept encoded until it is needed
+		fitness = in.readDouble();
+		candidateLength = WritableUtils.readVInt(in);
+		if(candidateBytes.length < candidateLength) {
+
+			candidateBytes = new byte[candidateLength];
+		}
+		in.readFully(candidateBytes, 0, candidateLength);
+		candidate = null;
+		decoded = false;
 	}
-	
+
 	@Override
 	public int compareTo(EvaluatedCandidateWritable<T> arg0) {
-		
+
 		return (getFitness() == arg0.getFitness()) ? 0 : (getFitness() < arg0.getFitness() ? -1 : 1);
 	}
 
 	public T getCandidate() {
+
+		if(!decoded) {
+
+			DataInputBuffer buffer = new DataInputBuffer();
+			buffer.reset(candidateBytes, candidateLength);
+			try {
+
+				candidate = CandidateCodecs.readCandidate(buffer);
+			} catch (IOException e) {
+
+				throw new IllegalStateException("Could not decode the candidate", e);
+			}
+			decoded = true;
+		}
 		return candidate;
 	}
 
 	public void setCandidate(T candidate) {
 		this.candidate = candidate;
+		this.decoded = true;
 	}
 
 	public double getFitness() {
@@ -79,5 +119,24 @@ public class EvaluatedCandidateWritable<T> implements WritableComparable<Evaluat
 		this.fitness = fitness;
 	}
 
-	
+	/**
+	 * Orders serialized candidates by fitness, reading only the leading double of each record.
+	 */
+	public static class Comparator extends WritableComparator {
+
+		public Comparator() {
+
+			super(EvaluatedCandidateWritable.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+
+			double fitness1 = readDouble(b1, s1);
+			double fitness2 = readDouble(b2, s2);
+
+			return (fitness1 == fitness2) ? 0 : (fitness1 < fitness2 ? -1 : 1);
+		}
+	}
+
 }
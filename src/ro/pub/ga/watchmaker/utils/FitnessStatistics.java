@@ -0,0 +1,133 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.uncommons.watchmaker.framework.EvaluatedCandidate;
+import org.uncommons.watchmaker.framework.PopulationData;
+
+/**
+ * Streaming statistics of a population: on top of the {@link IslandSummary} (best candidate, mean and
+ * standard deviation) it keeps the range of the fitness values and the {@code topCount} best individuals
+ * in a bounded heap. Adding n individuals costs O(n log topCount), instead of the O(n log n) of sorting
+ * the population only to read its first positions. Only the island summary is written by {@link #write}.
+ */
+public class FitnessStatistics<T> extends IslandSummary<T> {
+
+	private final int topCount;
+
+	//The worst of the kept individuals is at the head of the heap
+	private final PriorityQueue<EvaluatedCandidate<T>> top;
+	private double minFitness = Double.POSITIVE_INFINITY;
+	private double maxFitness = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * @param topCount the number of best individuals to keep; 0 keeps none
+	 */
+	public FitnessStatistics(boolean natural, int topCount) {
+
+		super(natural);
+		this.topCount = topCount;
+		//Candidates compare by fitness, so the natural order puts the lowest fitness at the head
+		Comparator<EvaluatedCandidate<T>> worstFirst = natural ? null : Collections.<EvaluatedCandidate<T>>reverseOrder();
+		this.top = new PriorityQueue<EvaluatedCandidate<T>>(Math.max(topCount, 1), worstFirst);
+	}
+
+	/**
+	 * @return the statistics of {@code population}
+	 */
+	public static <T> FitnessStatistics<T> of(List<EvaluatedCandidate<T>> population, boolean natural, int topCount) {
+
+		FitnessStatistics<T> statistics = new FitnessStatistics<T>(natural, topCount);
+		for(EvaluatedCandidate<T> candidate: population) {
+
+			statistics.add(candidate);
+		}
+
+		return statistics;
+	}
+
+	/**
+	 * The same data as EvolutionUtils.getPopulationData, without requiring a sorted population.
+	 */
+	public static <T> PopulationData<T> getPopulationData(List<EvaluatedCandidate<T>> population, boolean natural,
+			int eliteCount, int generationNumber, long startTime) {
+
+		return of(population, natural, 0).toPopulationData(eliteCount, generationNumber, startTime);
+	}
+
+	@Override
+	public void add(EvaluatedCandidate<T> candidate) {
+
+		super.add(candidate);
+		minFitness = Math.min(minFitness, candidate.getFitness());
+		maxFitness = Math.max(maxFitness, candidate.getFitness());
+		offer(candidate);
+	}
+
+	/**
+	 * Adds the individuals of another island; the range and the best individuals are only merged
+	 * when {@code other} keeps them too.
+	 */
+	@Override
+	public void merge(IslandSummary<T> other) {
+
+		super.merge(other);
+		if(other instanceof FitnessStatistics) {
+
+			FitnessStatistics<T> statistics = (FitnessStatistics<T>)other;
+			minFitness = Math.min(minFitness, statistics.minFitness);
+			maxFitness = Math.max(maxFitness, statistics.maxFitness);
+			for(EvaluatedCandidate<T> candidate: statistics.top) {
+
+				offer(candidate);
+			}
+		}
+	}
+
+	private void offer(EvaluatedCandidate<T> candidate) {
+
+		if(top.size() < topCount) {
+
+			top.add(candidate);
+		}
+		else if(topCount > 0 && (isNatural() ?
+				candidate.getFitness() > top.peek().getFitness() :
+				candidate.getFitness() < top.peek().getFitness())) {
+
+			top.poll();
+			top.add(candidate);
+		}
+	}
+
+	/**
+	 * @return the kept individuals, the best one first
+	 */
+	public List<EvaluatedCandidate<T>> getTopCandidates() {
+
+		List<EvaluatedCandidate<T>> candidates = new ArrayList<EvaluatedCandidate<T>>(top);
+		if(isNatural()) {
+
+			Collections.sort(candidates, Collections.reverseOrder());
+		}
+		else {
+
+			Collections.sort(candidates);
+		}
+
+		return candidates;
+	}
+
+	public double getMinFitness() {
+
+		return minFitness;
+	}
+
+	public double getMaxFitness() {
+
+		return maxFitness;
+	}
+}
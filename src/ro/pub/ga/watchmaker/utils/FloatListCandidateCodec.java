@@ -0,0 +1,70 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Codec for the clustering candidates, ArrayLists of Floats holding the 
+ * coordinates of the centers; the values are written as a raw float array.
+ */
+public class FloatListCandidateCodec implements CandidateCodec<List<Float>> {
+
+	@Override
+	public boolean accepts(Object candidate) {
+		
+		if(candidate == null || candidate.getClass() != ArrayList.class) {
+			
+			return false;
+		}
+		
+		for(Object element: (List<?>)candidate) {
+			
+			if(!(element instanceof Float)) {
+				
+				return false;
+			}
+		}
+		
+		return true;
+	}
+
+	@Override
+	public void write(DataOutput out, List<Float> candidate) throws IOException {
+		
+		int size = candidate.size();
+		ByteBuffer buffer = ByteBuffer.allocate(size * 4);
+		FloatBuffer floats = buffer.asFloatBuffer();
+		
+		for(int i = 0; i < size; i++) {
+			
+			floats.put(candidate.get(i));
+		}
+		
+		WritableUtils.writeVInt(out, size);
+		out.write(buffer.array());
+	}
+
+	@Override
+	public List<Float> read(DataInput in) throws IOException {
+		
+		int size = WritableUtils.readVInt(in);
+		byte[] bytes = new byte[size * 4];
+		in.readFully(bytes);
+		
+		FloatBuffer floats = ByteBuffer.wrap(bytes).asFloatBuffer();
+		List<Float> candidate = new ArrayList<Float>(size);
+		for(int i = 0; i < size; i++) {
+			
+			candidate.add(floats.get(i));
+		}
+		
+		return candidate;
+	}
+}
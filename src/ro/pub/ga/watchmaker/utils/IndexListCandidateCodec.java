@@ -0,0 +1,94 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Codec for the TSP routes, ArrayLists of city indices kept as Strings. 
+ * Each city is stored as a varint; only canonical non-negative integers 
+ * ("0", "17", but not "017" or "+3") are accepted, so that decoding 
+ * gives back exactly the same strings.
+ */
+public class IndexListCandidateCodec implements CandidateCodec<List<String>> {
+	
+	//Decoded indices below this value share their String instances;
+	private static final int CACHED_INDICES = 1024;
+	private static final String[] cache = new String[CACHED_INDICES];
+	
+	static {
+		
+		for(int i = 0; i < CACHED_INDICES; i++) {
+			
+			cache[i] = Integer.toString(i);
+		}
+	}
+
+	@Override
+	public boolean accepts(Object candidate) {
+		
+		if(candidate == null || candidate.getClass() != ArrayList.class) {
+			
+			return false;
+		}
+		
+		for(Object element: (List<?>)candidate) {
+			
+			if(!(element instanceof String) || !isIndex((String)element)) {
+				
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private static boolean isIndex(String value) {
+		
+		int length = value.length();
+		if(length == 0 || length > 9 || (length > 1 && value.charAt(0) == '0')) {
+			
+			return false;
+		}
+		
+		for(int i = 0; i < length; i++) {
+			
+			char c = value.charAt(i);
+			if(c < '0' || c > '9') {
+				
+				return false;
+			}
+		}
+		
+		return true;
+	}
+
+	@Override
+	public void write(DataOutput out, List<String> candidate) throws IOException {
+		
+		WritableUtils.writeVInt(out, candidate.size());
+		for(int i = 0; i < candidate.size(); i++) {
+			
+			WritableUtils.writeVInt(out, Integer.parseInt(candidate.get(i)));
+		}
+	}
+
+	@Override
+	public List<String> read(DataInput in) throws IOException {
+		
+		int size = WritableUtils.readVInt(in);
+		List<String> candidate = new ArrayList<String>(size);
+		
+		for(int i = 0; i < size; i++) {
+			
+			int index = WritableUtils.readVInt(in);
+			candidate.add(index < CACHED_INDICES ? cache[index] : Integer.toString(index));
+		}
+		
+		return candidate;
+	}
+}
@@ -0,0 +1,172 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Composite map output key used for the secondary sort of the evaluated candidates:
+ * the island (subpopulation) index followed by the fitness of the candidate.
+ * The keys are ordered by island and, inside an island, best candidate first, so a
+ * reducer that groups on the island only receives its subpopulation already ranked.
+ */
+public class IslandFitnessKey implements WritableComparable<IslandFitnessKey> {
+
+	static {
+
+		WritableComparator.define(IslandFitnessKey.class, new Comparator());
+	}
+
+	//island index, natural flag, fitness
+	private static final int NATURAL_OFFSET = 8;
+	private static final int FITNESS_OFFSET = 9;
+
+	private long island;
+	private boolean natural;
+	private double fitness;
+
+	public IslandFitnessKey() {
+
+	}
+
+	public IslandFitnessKey(long island, double fitness, boolean natural) {
+
+		set(island, fitness, natural);
+	}
+
+	public void set(long island, double fitness, boolean natural) {
+
+		this.island = island;
+		this.fitness = fitness;
+		this.natural = natural;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+
+		out.writeLong(island);
+		out.writeBoolean(natural);
+		out.writeDouble(fitness);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+
+		island = in.readLong();
+		natural = in.readBoolean();
+		fitness = in.readDouble();
+	}
+
+	@Override
+	public int compareTo(IslandFitnessKey o) {
+
+		int result = compareIslands(island, o.island);
+		if(result != 0) {
+
+			return result;
+		}
+		return compareFitness(fitness, o.fitness, natural);
+	}
+
+	/**
+	 * Same value as {@code LongWritable.hashCode()}, so the default hash partitioning
+	 * sends an island to the same reducer as the old {@code LongWritable} key did.
+	 */
+	@Override
+	public int hashCode() {
+
+		return (int)(island ^ (island >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+
+		if(!(obj instanceof IslandFitnessKey)) {
+
+			return false;
+		}
+		IslandFitnessKey other = (IslandFitnessKey)obj;
+		return island == other.island && natural == other.natural
+				&& Double.doubleToLongBits(fitness) == Double.doubleToLongBits(other.fitness);
+	}
+
+	@Override
+	public String toString() {
+
+		return island + "\t" + fitness;
+	}
+
+	public long getIsland() {
+		return island;
+	}
+
+	public double getFitness() {
+		return fitness;
+	}
+
+	public boolean isNatural() {
+		return natural;
+	}
+
+	private static int compareIslands(long island1, long island2) {
+
+		return (island1 == island2) ? 0 : (island1 < island2 ? -1 : 1);
+	}
+
+	//The best candidate goes first: highest fitness for natural evaluators, lowest otherwise;
+	private static int compareFitness(double fitness1, double fitness2, boolean natural) {
+
+		int result = (fitness1 == fitness2) ? 0 : (fitness1 < fitness2 ? -1 : 1);
+		return natural ? -result : result;
+	}
+
+	/**
+	 * Sort comparator: island ascending, then best fitness first.
+	 */
+	public static class Comparator extends WritableComparator {
+
+		public Comparator() {
+
+			super(IslandFitnessKey.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+
+			int result = compareIslands(readLong(b1, s1), readLong(b2, s2));
+			if(result != 0) {
+
+				return result;
+			}
+			return compareFitness(readDouble(b1, s1 + FITNESS_OFFSET), readDouble(b2, s2 + FITNESS_OFFSET),
+					b1[s1 + NATURAL_OFFSET] != 0);
+		}
+	}
+
+	/**
+	 * Grouping comparator: all the candidates of an island reach the same reduce() call.
+	 */
+	public static class IslandComparator extends WritableComparator {
+
+		public IslandComparator() {
+
+			super(IslandFitnessKey.class, true);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+
+			return compareIslands(readLong(b1, s1), readLong(b2, s2));
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public int compare(WritableComparable a, WritableComparable b) {
+
+			return compareIslands(((IslandFitnessKey)a).island, ((IslandFitnessKey)b).island);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.uncommons.watchmaker.framework.EvaluatedCandidate;
+import org.uncommons.watchmaker.framework.PopulationData;
+
+/**
+ * The few values the driver needs from an island at the end of an epoch: the best candidate and the
+ * count, mean and sum of squared deviations (M2) of the fitness values. The summaries of the islands
+ * merge into the data of the whole population without the population ever being gathered in one place.
+ */
+public class IslandSummary<T> implements Writable {
+
+	private boolean natural;
+	private T bestCandidate;
+	private double bestFitness;
+	private int count;
+	private double mean;
+	private double m2;
+
+	public IslandSummary() {
+
+	}
+
+	public IslandSummary(boolean natural) {
+
+		this.natural = natural;
+	}
+
+	/**
+	 * Adds an individual (Welford's update).
+	 */
+	public void add(EvaluatedCandidate<T> candidate) {
+
+		double fitness = candidate.getFitness();
+		if(count == 0 || isBetter(fitness, bestFitness)) {
+
+			bestCandidate = candidate.getCandidate();
+			bestFitness = fitness;
+		}
+
+		count++;
+		double delta = fitness - mean;
+		mean += delta / count;
+		m2 += delta * (fitness - mean);
+	}
+
+	/**
+	 * Adds the individuals summarized by another island (Chan et al.).
+	 */
+	public void merge(IslandSummary<T> other) {
+
+		if(other.count == 0) {
+
+			return;
+		}
+
+		if(count == 0 || isBetter(other.bestFitness, bestFitness)) {
+
+			bestCandidate = other.bestCandidate;
+			bestFitness = other.bestFitness;
+		}
+
+		int total = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / total;
+		m2 += other.m2 + delta * delta * ((double)count * other.count / total);
+		count = total;
+	}
+
+	private boolean isBetter(double fitness, double other) {
+
+		return natural ? fitness > other : fitness < other;
+	}
+
+	/**
+	 * @return the same data as EvolutionUtils.getPopulationData on the summarized individuals
+	 */
+	public PopulationData<T> toPopulationData(int eliteCount, int generationNumber, long startTime) {
+
+		return new PopulationData<T>(bestCandidate, bestFitness, mean, getStandardDeviation(), natural, count,
+				eliteCount, generationNumber, System.currentTimeMillis() - startTime);
+	}
+
+	public boolean isNatural() {
+
+		return natural;
+	}
+
+	public EvaluatedCandidate<T> getBestCandidate() {
+
+		return new EvaluatedCandidate<T>(bestCandidate, bestFitness);
+	}
+
+	public int getCount() {
+
+		return count;
+	}
+
+	public double getMean() {
+
+		return mean;
+	}
+
+	public double getStandardDeviation() {
+
+		return count == 0 ? 0 : Math.sqrt(m2 / count);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+
+		out.writeBoolean(natural);
+		WritableUtils.writeVInt(out, count);
+		if(count > 0) {
+
+			CandidateCodecs.writeCandidate(out, bestCandidate);
+			out.writeDouble(bestFitness);
+			out.writeDouble(mean);
+			out.writeDouble(m2);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+
+		natural = in.readBoolean();
+		count = WritableUtils.readVInt(in);
+		if(count > 0) {
+
+			bestCandidate = CandidateCodecs.readCandidate(in);
+			bestFitness = in.readDouble();
+			mean = in.readDouble();
+			m2 = in.readDouble();
+		}
+		else {
+
+			bestCandidate = null;
+			bestFitness = mean = m2 = 0;
+		}
+	}
+
+	public void write(Configuration conf, Path file) throws IOException {
+
+		FSDataOutputStream out = file.getFileSystem(conf).create(file, true);
+		try {
+
+			write(out);
+		} finally {
+
+			out.close();
+		}
+	}
+
+	public static <T> IslandSummary<T> read(Configuration conf, Path file) throws IOException {
+
+		IslandSummary<T> summary = new IslandSummary<T>();
+		FSDataInputStream in = file.getFileSystem(conf).open(file);
+		try {
+
+			summary.readFields(in);
+		} finally {
+
+			in.close();
+		}
+
+		return summary;
+	}
+
+	/**
+	 * Merges the summaries of {@code islands} islands, stored in {@code directory} as {@code prefix} followed
+	 * by the island index; the paths are known, so the directory is not listed.
+	 */
+	public static <T> IslandSummary<T> readSummaries(Configuration conf, Path directory, String prefix, int islands) throws IOException {
+
+		IslandSummary<T> summary = null;
+
+		//Merge in a stable order, the floating point sums depend on it
+		for(int i = 0; i < islands; i++) {
+
+			IslandSummary<T> islandSummary = read(conf, new Path(directory, prefix + i));
+			if(summary == null) {
+
+				summary = islandSummary;
+			}
+			else {
+
+				summary.merge(islandSummary);
+			}
+		}
+
+		if(summary == null) {
+
+			throw new IOException("No island summary found in " + directory);
+		}
+
+		return summary;
+	}
+}
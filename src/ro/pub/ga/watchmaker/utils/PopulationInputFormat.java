@@ -0,0 +1,79 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.uncommons.watchmaker.framework.EvaluatedCandidate;
+
+/**
+ * Reads the populations stored by {@link PopulationOutputFormat}. A file is never split,
+ * so a mapper always receives the whole subpopulation(s) stored in it.
+ */
+public class PopulationInputFormat<T> extends SequenceFileInputFormat<LongWritable, EvaluatedCandidateWritable<T>> {
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path filename) {
+
+		return false;
+	}
+
+	/**
+	 * Reads all the individuals stored in a population file.
+	 */
+	public static <T> List<EvaluatedCandidate<T>> readPopulation(Configuration conf, Path file) throws IOException {
+
+		List<EvaluatedCandidate<T>> population = new ArrayList<EvaluatedCandidate<T>>();
+		readPopulation(conf, file, population);
+
+		return population;
+	}
+
+	/**
+	 * Merges the individuals of all the files from {@code directory} whose name starts with {@code prefix}.
+	 */
+	public static <T> List<EvaluatedCandidate<T>> readPopulations(Configuration conf, Path directory, String prefix) throws IOException {
+
+		List<EvaluatedCandidate<T>> population = new ArrayList<EvaluatedCandidate<T>>();
+		FileSystem fs = directory.getFileSystem(conf);
+		FileStatus[] status = fs.listStatus(directory);
+
+		//Keep the file order stable between runs
+		Arrays.sort(status);
+		for(int i = 0; i < status.length; i++) {
+
+			if(status[i].isFile() && status[i].getPath().getName().startsWith(prefix)) {
+
+				readPopulation(conf, status[i].getPath(), population);
+			}
+		}
+
+		return population;
+	}
+
+	private static <T> void readPopulation(Configuration conf, Path file, List<EvaluatedCandidate<T>> population) throws IOException {
+
+		SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(file));
+		try {
+
+			LongWritable key = new LongWritable();
+			EvaluatedCandidateWritable<T> value = new EvaluatedCandidateWritable<T>();
+			while(reader.next(key, value)) {
+
+				population.add(new EvaluatedCandidate<T>(value.getCandidate(), value.getFitness()));
+			}
+		} finally {
+
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.uncommons.watchmaker.framework.EvaluatedCandidate;
+
+/**
+ * Stores populations as block-compressed SequenceFiles, one record per individual:
+ * the key is the island (subpopulation) index and the value is the candidate with its fitness.
+ * Besides the job output format, it exposes the writers used for the named subpopulation files
+ * that the engines and the reducers produce.
+ */
+public class PopulationOutputFormat<T> extends SequenceFileOutputFormat<LongWritable, EvaluatedCandidateWritable<T>> {
+
+	@Override
+	public RecordWriter<LongWritable, EvaluatedCandidateWritable<T>> getRecordWriter(TaskAttemptContext context)
+			throws IOException, InterruptedException {
+
+		Configuration conf = context.getConfiguration();
+		conf.setBoolean(FileOutputFormat.COMPRESS, true);
+		conf.set(FileOutputFormat.COMPRESS_TYPE, CompressionType.BLOCK.toString());
+
+		return super.getRecordWriter(context);
+	}
+
+	/**
+	 * Sets this format, with its key and value classes, as the output of the given job.
+	 */
+	public static void configure(Job job) {
+
+		job.setOutputFormatClass(PopulationOutputFormat.class);
+		job.setOutputKeyClass(LongWritable.class);
+		job.setOutputValueClass(EvaluatedCandidateWritable.class);
+	}
+
+	/**
+	 * Opens a writer for a single population file; the caller appends the records and closes it.
+	 */
+	public static SequenceFile.Writer createWriter(Configuration conf, Path file) throws IOException {
+
+		return SequenceFile.createWriter(conf,
+				SequenceFile.Writer.file(file),
+				SequenceFile.Writer.keyClass(LongWritable.class),
+				SequenceFile.Writer.valueClass(EvaluatedCandidateWritable.class),
+				SequenceFile.Writer.compression(CompressionType.BLOCK, ReflectionUtils.newInstance(DefaultCodec.class, conf)));
+	}
+
+	/**
+	 * Writes an evaluated population to {@code file}, every individual keyed by {@code island}.
+	 */
+	public static <T> void writePopulation(Configuration conf, Path file, long island,
+			List<EvaluatedCandidate<T>> population) throws IOException {
+
+		SequenceFile.Writer writer = createWriter(conf, file);
+		try {
+
+			LongWritable key = new LongWritable(island);
+			EvaluatedCandidateWritable<T> value = new EvaluatedCandidateWritable<T>();
+			for(EvaluatedCandidate<T> candidate: population) {
+
+				value.setCandidate(candidate.getCandidate());
+				value.setFitness(candidate.getFitness());
+				writer.append(key, value);
+			}
+		} finally {
+
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes candidates that have not been evaluated yet; their fitness is stored as 0.
+	 */
+	public static <T> void writeCandidates(Configuration conf, Path file, long island,
+			List<T> candidates) throws IOException {
+
+		SequenceFile.Writer writer = createWriter(conf, file);
+		try {
+
+			LongWritable key = new LongWritable(island);
+			EvaluatedCandidateWritable<T> value = new EvaluatedCandidateWritable<T>();
+			for(T candidate: candidates) {
+
+				value.setCandidate(candidate);
+				writer.append(key, value);
+			}
+		} finally {
+
+			writer.close();
+		}
+	}
+}
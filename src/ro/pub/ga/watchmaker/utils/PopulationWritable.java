@@ -12,12 +12,19 @@ import java.util.Map;
 
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.WritableComparable;
-import org.apache.mahout.common.StringUtils;
+import org.apache.hadoop.io.WritableUtils;
 import org.uncommons.watchmaker.framework.EvaluatedCandidate;
 
 
 public class PopulationWritable<T> implements WritableComparable<T> {
 	
+	private static final byte NULL_ELEMENTS = 0;
+	private static final byte PLAIN_ELEMENTS = 1;
+	private static final byte EVALUATED_ELEMENTS = 2;
+	
+	private static final byte DATA_VALUE = 0;
+	private static final byte DATA_CANDIDATES = 1;
+	
 	private List<T> population;
 	private Map<String, Object> data;
 	
@@ -65,28 +72,137 @@ public class PopulationWritable<T> implements WritableComparable<T> {
 	@Override
 	public void write(DataOutput out) throws IOException {
 		
-		String stringifiedPopulation = StringUtils.toString(population);
-		String stringifiedData = StringUtils.toString(data);
+		writeElements(out, population);
 		
-		Text writablePopulation = new Text(stringifiedPopulation);
-		Text writableData = new Text(stringifiedData);
+		if(data == null) {
+			
+			WritableUtils.writeVInt(out, -1);
+			return;
+		}
 		
-		writablePopulation.write(out);
-		writableData.write(out);
+		WritableUtils.writeVInt(out, data.size());
+		for(Map.Entry<String, Object> entry: data.entrySet()) {
+			
+			Text.writeString(out, entry.getKey());
+			
+			//The migrants are lists of evaluated candidates; everything else goes through the codecs;
+			if(isEvaluatedList(entry.getValue())) {
+				
+				out.writeByte(DATA_CANDIDATES);
+				writeElements(out, (List<?>)entry.getValue());
+			}
+			else {
+				
+				out.writeByte(DATA_VALUE);
+				CandidateCodecs.writeCandidate(out, entry.getValue());
+			}
+		}
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public void readFields(DataInput in) throws IOException {
 		
-		Text writablePopulation = new Text();
-		Text writableData = new Text();
+		this.population = (List<T>)readElements(in);
+		
+		int dataSize = WritableUtils.readVInt(in);
+		if(dataSize < 0) {
+			
+			this.data = null;
+			return;
+		}
 		
-		writablePopulation.readFields(in);
-		writableData.readFields(in);
+		this.data = new HashMap<String, Object>();
+		for(int i = 0; i < dataSize; i++) {
+			
+			String key = Text.readString(in);
+			byte type = in.readByte();
+			
+			if(type == DATA_CANDIDATES) {
+				
+				data.put(key, readElements(in));
+			}
+			else {
+				
+				data.put(key, CandidateCodecs.readCandidate(in));
+			}
+		}
+	}
+	
+	private static boolean isEvaluatedList(Object value) {
+		
+		if(!(value instanceof List) || ((List<?>)value).isEmpty()) {
+			
+			return false;
+		}
+		
+		for(Object element: (List<?>)value) {
+			
+			if(!(element instanceof EvaluatedCandidate)) {
+				
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Writes a list of candidates, either plain or evaluated; the evaluated ones 
+	 * are followed by their fitness value.
+	 */
+	private static void writeElements(DataOutput out, List<?> elements) throws IOException {
+		
+		if(elements == null) {
+			
+			out.writeByte(NULL_ELEMENTS);
+			return;
+		}
+		
+		boolean evaluated = isEvaluatedList(elements);
+		out.writeByte(evaluated ? EVALUATED_ELEMENTS : PLAIN_ELEMENTS);
+		WritableUtils.writeVInt(out, elements.size());
+		
+		for(Object element: elements) {
+			
+			if(evaluated) {
+				
+				EvaluatedCandidate<?> evaluatedCandidate = (EvaluatedCandidate<?>)element;
+				CandidateCodecs.writeCandidate(out, evaluatedCandidate.getCandidate());
+				out.writeDouble(evaluatedCandidate.getFitness());
+			}
+			else {
+				
+				CandidateCodecs.writeCandidate(out, element);
+			}
+		}
+	}
+	
+	private static List<Object> readElements(DataInput in) throws IOException {
+		
+		byte kind = in.readByte();
+		if(kind == NULL_ELEMENTS) {
+			
+			return null;
+		}
+		
+		int size = WritableUtils.readVInt(in);
+		List<Object> elements = new ArrayList<Object>(size);
+		
+		for(int i = 0; i < size; i++) {
+			
+			Object candidate = CandidateCodecs.readCandidate(in);
+			if(kind == EVALUATED_ELEMENTS) {
+				
+				elements.add(new EvaluatedCandidate<Object>(candidate, in.readDouble()));
+			}
+			else {
+				
+				elements.add(candidate);
+			}
+		}
 		
-		this.population = (List<T>)StringUtils.fromString(writablePopulation.toString());
-		this.data = (Map<String, Object>)StringUtils.fromString(writableData.toString());
+		return elements;
 	}
 
 	@Override
@@ -0,0 +1,156 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Codec for genomes built from boxed scalars, strings and (nested) ArrayLists,
+ * e.g. the TSP routes and the cluster center lists. Every value is preceded by 
+ * a one byte type tag; lists are always read back as ArrayLists, so only 
+ * ArrayLists are accepted.
+ */
+public class ScalarListCandidateCodec implements CandidateCodec<Object> {
+	
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte FLOAT = 4;
+	private static final byte DOUBLE = 5;
+	private static final byte BOOLEAN = 6;
+	private static final byte SHORT = 7;
+	private static final byte BYTE = 8;
+	private static final byte LIST = 9;
+
+	@Override
+	public boolean accepts(Object candidate) {
+		
+		if(candidate == null || candidate instanceof String || candidate instanceof Integer 
+				|| candidate instanceof Long || candidate instanceof Float || candidate instanceof Double
+				|| candidate instanceof Boolean || candidate instanceof Short || candidate instanceof Byte) {
+			
+			return true;
+		}
+		
+		if(candidate.getClass() == ArrayList.class) {
+			
+			for(Object element: (List<?>)candidate) {
+				
+				if(!accepts(element)) {
+					
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		return false;
+	}
+
+	@Override
+	public void write(DataOutput out, Object candidate) throws IOException {
+		
+		if(candidate == null) {
+			
+			out.writeByte(NULL);
+		}
+		else if(candidate instanceof String) {
+			
+			out.writeByte(STRING);
+			Text.writeString(out, (String)candidate);
+		}
+		else if(candidate instanceof Integer) {
+			
+			out.writeByte(INTEGER);
+			WritableUtils.writeVInt(out, (Integer)candidate);
+		}
+		else if(candidate instanceof Long) {
+			
+			out.writeByte(LONG);
+			WritableUtils.writeVLong(out, (Long)candidate);
+		}
+		else if(candidate instanceof Float) {
+			
+			out.writeByte(FLOAT);
+			out.writeFloat((Float)candidate);
+		}
+		else if(candidate instanceof Double) {
+			
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double)candidate);
+		}
+		else if(candidate instanceof Boolean) {
+			
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean)candidate);
+		}
+		else if(candidate instanceof Short) {
+			
+			out.writeByte(SHORT);
+			out.writeShort((Short)candidate);
+		}
+		else if(candidate instanceof Byte) {
+			
+			out.writeByte(BYTE);
+			out.writeByte((Byte)candidate);
+		}
+		else if(candidate instanceof List) {
+			
+			List<?> list = (List<?>)candidate;
+			out.writeByte(LIST);
+			WritableUtils.writeVInt(out, list.size());
+			for(Object element: list) {
+				
+				write(out, element);
+			}
+		}
+		else {
+			
+			throw new IOException("Unsupported value type: " + candidate.getClass().getName());
+		}
+	}
+
+	@Override
+	public Object read(DataInput in) throws IOException {
+		
+		byte tag = in.readByte();
+		switch(tag) {
+		
+			case NULL:
+				return null;
+			case STRING:
+				return Text.readString(in);
+			case INTEGER:
+				return WritableUtils.readVInt(in);
+			case LONG:
+				return WritableUtils.readVLong(in);
+			case FLOAT:
+				return in.readFloat();
+			case DOUBLE:
+				return in.readDouble();
+			case BOOLEAN:
+				return in.readBoolean();
+			case SHORT:
+				return in.readShort();
+			case BYTE:
+				return in.readByte();
+			case LIST:
+				int size = WritableUtils.readVInt(in);
+				List<Object> list = new ArrayList<Object>(size);
+				for(int i = 0; i < size; i++) {
+					
+					list.add(read(in));
+				}
+				return list;
+			default:
+				throw new IOException("Unknown value tag: " + tag);
+		}
+	}
+}
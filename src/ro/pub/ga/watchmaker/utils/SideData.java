@@ -0,0 +1,117 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Handle to a large, read-only value (e.g. the dataset of an evaluator) that 
+ * should not be serialized together with its owner.
+ * 
+ * Until published, the value is serialized inline: as before or, for formats 
+ * with a compact binary form (see SideDataFormat.isInlinedAsBytes), as the 
+ * bytes written by the format. Once published 
+ * by a SideDataStore, only the content hash and the location of the file are 
+ * kept in the serialized form; the value is loaded lazily, once per JVM, on 
+ * the first call to get().
+ * 
+ * @param <V> - the type of the value
+ */
+public class SideData<V> {
+	
+	private V inlineValue;
+	//Inline form of the unpublished value for the formats inlined as bytes; only set in the serialized copy;
+	private byte[] inlineBytes;
+	private SideDataFormat<V> format;
+	private String key;
+	private String location;
+	
+	private transient volatile V value;
+	
+	public SideData(V value, SideDataFormat<V> format) {
+		
+		this.inlineValue = value;
+		this.value = value;
+		this.format = format;
+	}
+	
+	public SideData(V value) {
+		
+		this(value, new XStreamSideDataFormat<V>());
+	}
+	
+	public V get() {
+		
+		V result = value;
+		if(result == null) {
+			
+			synchronized(this) {
+				
+				result = value;
+				if(result == null) {
+					
+					result = (inlineValue != null) ? inlineValue : SideDataStore.<V>load(this);
+					value = result;
+				}
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Called by the store once the value has been written to the shared file system.
+	 */
+	void published(String key, String location) {
+		
+		this.key = key;
+		this.location = location;
+		this.value = get();
+		this.inlineValue = null;
+	}
+	
+	//Called by XStream before serializing the handle;
+	private Object writeReplace() throws IOException {
+		
+		if(inlineValue == null || !format.isInlinedAsBytes()) {
+			
+			return this;
+		}
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		format.write(bytes, inlineValue);
+		
+		SideData<V> replacement = new SideData<V>(null, format);
+		replacement.inlineBytes = bytes.toByteArray();
+		
+		return replacement;
+	}
+	
+	//Called by XStream after deserializing the handle;
+	private Object readResolve() throws IOException {
+		
+		if(inlineBytes != null) {
+			
+			inlineValue = format.read(inlineBytes);
+			inlineBytes = null;
+		}
+		
+		return this;
+	}
+	
+	public boolean isPublished() {
+		
+		return key != null;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	public SideDataFormat<V> getFormat() {
+		return format;
+	}
+}
@@ -0,0 +1,31 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * On-disk representation of a side data value.
+ * 
+ * @param <V> - the type of the value
+ */
+public interface SideDataFormat<V> {
+	
+	public void write(OutputStream out, V value) throws IOException;
+	
+	/**
+	 * @param file - node-local copy of the file written by write
+	 */
+	public V read(File file) throws IOException;
+	
+	/**
+	 * @return whether unpublished values are serialized inline as the bytes 
+	 * written by write, instead of being serialized with their owner
+	 */
+	public boolean isInlinedAsBytes();
+	
+	/**
+	 * @param bytes - written by write, for an unpublished value serialized inline
+	 */
+	public V read(byte[] bytes) throws IOException;
+}
@@ -0,0 +1,13 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.IOException;
+
+/**
+ * Implemented by the evaluators, factories and operators holding large, 
+ * read-only state (datasets) in SideData fields; the engines publish that 
+ * state before the component is serialized into the job configuration.
+ */
+public interface SideDataProvider {
+	
+	public void publishSideData(SideDataStore store) throws IOException;
+}
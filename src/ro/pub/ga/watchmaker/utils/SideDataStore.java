@@ -0,0 +1,188 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+
+/**
+ * Publishes side data values to a shared file system directory, one file per 
+ * value, named after the SHA-256 hash of its content, and adds the files to the 
+ * distributed cache of the jobs.
+ * 
+ * On the task side, the values are loaded from the distributed cache link in 
+ * the working directory or, if there is none, from a copy in the node-local 
+ * temporary directory, and cached for the lifetime of the JVM.
+ */
+public class SideDataStore {
+	
+	public static final String DEFAULT_DIRECTORY = "side_data";
+	
+	private static final Map<String, Object> loadedValues = new ConcurrentHashMap<String, Object>();
+	
+	private final FileSystem fs;
+	private final Path directory;
+	private final Set<Path> publishedFiles = new LinkedHashSet<Path>();
+	private final Map<Object, SideData<?>> publishedValues = new IdentityHashMap<Object, SideData<?>>();
+	
+	public SideDataStore(FileSystem fs, String directory) {
+		
+		this.fs = fs;
+		this.directory = fs.makeQualified(new Path(directory));
+	}
+	
+	/**
+	 * Publishes the side data of every component implementing SideDataProvider.
+	 */
+	public void publish(Object... components) throws IOException {
+		
+		for(Object component: components) {
+			
+			if(component instanceof SideDataProvider) {
+				
+				((SideDataProvider)component).publishSideData(this);
+			}
+		}
+	}
+	
+	public synchronized <V> void publish(SideData<V> sideData) throws IOException {
+		
+		if(sideData.isPublished()) {
+			
+			publishedFiles.add(new Path(sideData.getLocation()));
+			return;
+		}
+		
+		V value = sideData.get();
+		
+		//The same value is often shared, e.g. by the evaluator and the candidate factory;
+		SideData<?> publishedSideData = publishedValues.get(value);
+		if(publishedSideData != null) {
+			
+			sideData.published(publishedSideData.getKey(), publishedSideData.getLocation());
+			return;
+		}
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		sideData.getFormat().write(bytes, value);
+		
+		String key = DigestUtils.sha256Hex(bytes.toByteArray());
+		Path file = new Path(directory, key);
+		
+		if(!fs.exists(file)) {
+			
+			Path tmpFile = new Path(directory, "_" + key + ".tmp");
+			FSDataOutputStream out = fs.create(tmpFile, true);
+			try {
+				
+				bytes.writeTo(out);
+			} finally {
+				
+				out.close();
+			}
+			
+			if(!fs.rename(tmpFile, file) && !fs.exists(file)) {
+				
+				throw new IOException("Could not publish side data file " + file);
+			}
+		}
+		
+		sideData.published(key, file.toString());
+		publishedValues.put(value, sideData);
+		publishedFiles.add(file);
+	}
+	
+	/**
+	 * Adds every published file to the distributed cache of the job, linked 
+	 * under its content hash in the working directory of the tasks.
+	 */
+	public synchronized void addToJob(Job job) {
+		
+		for(Path file: publishedFiles) {
+			
+			try {
+				
+				job.addCacheFile(new URI(file.toUri().toString() + "#" + file.getName()));
+			} catch (URISyntaxException e) {
+				
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	static <V> V load(SideData<V> sideData) {
+		
+		String key = sideData.getKey();
+		V value = (V)loadedValues.get(key);
+		if(value != null) {
+			
+			return value;
+		}
+		
+		synchronized(loadedValues) {
+			
+			value = (V)loadedValues.get(key);
+			if(value == null) {
+				
+				try {
+					
+					value = sideData.getFormat().read(localFile(sideData));
+				} catch (IOException e) {
+					
+					throw new IllegalStateException("Side data " + key + " could not be loaded from " + sideData.getLocation(), e);
+				}
+				
+				loadedValues.put(key, value);
+			}
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * @return the distributed cache link, if present, or a copy of the shared file in the node-local temporary directory
+	 */
+	static File localFile(SideData<?> sideData) throws IOException {
+		
+		File cachedFile = new File(sideData.getKey());
+		if(cachedFile.exists()) {
+			
+			return cachedFile;
+		}
+		
+		File localDirectory = new File(System.getProperty("java.io.tmpdir"), DEFAULT_DIRECTORY);
+		File localFile = new File(localDirectory, sideData.getKey());
+		if(localFile.exists()) {
+			
+			return localFile;
+		}
+		
+		//Copy under a unique name first; concurrent tasks on the same node may do the same;
+		localDirectory.mkdirs();
+		File tmpFile = File.createTempFile("_" + sideData.getKey(), ".tmp", localDirectory);
+		Path location = new Path(sideData.getLocation());
+		location.getFileSystem(new Configuration()).copyToLocalFile(false, location, new Path(tmpFile.getAbsolutePath()), true);
+		
+		if(!tmpFile.renameTo(localFile) && !localFile.exists()) {
+			
+			throw new IOException("Could not copy side data file " + location + " to " + localFile);
+		}
+		tmpFile.delete();
+		
+		return localFile;
+	}
+}
@@ -0,0 +1,74 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.util.Random;
+
+/**
+ * SplitMix64 generator (Steele, Lea and Flood): a 64-bit counter advanced by a fixed odd constant and
+ * scrambled by a mixing function. The state is a plain field, so a draw costs no compare-and-set as in
+ * java.util.Random; an instance must not be shared between threads, each thread gets its own stream.
+ * The seeds of the streams are derived from a root seed with {@link #derive}, deterministically, so a
+ * stream depends only on the root seed and on its path (epoch, island...), not on the order the streams
+ * are created or on the task that happens to run them.
+ */
+public class SplitMixRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long state;
+
+	public SplitMixRandom(long seed) {
+
+		super(seed);
+		this.state = seed;
+	}
+
+	/**
+	 * The seed of the stream reached from {@code seed} following {@code path}, one index per level.
+	 */
+	public static long derive(long seed, long... path) {
+
+		for(long index: path) {
+
+			seed = mix64(seed + (index + 1) * GOLDEN_GAMMA);
+		}
+
+		return seed;
+	}
+
+	private static long mix64(long z) {
+
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public void setSeed(long seed) {
+
+		super.setSeed(seed);
+		this.state = seed;
+	}
+
+	@Override
+	protected int next(int bits) {
+
+		return (int)(nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public long nextLong() {
+
+		state += GOLDEN_GAMMA;
+
+		return mix64(state);
+	}
+
+	@Override
+	public double nextDouble() {
+
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+}
@@ -0,0 +1,33 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.mahout.common.StringUtils;
+
+/**
+ * Fallback codec for genomes that have no binary codec; the candidate is 
+ * written as the XStream string previously used by the Writables.
+ */
+public class XStreamCandidateCodec implements CandidateCodec<Object> {
+
+	@Override
+	public boolean accepts(Object candidate) {
+		
+		return true;
+	}
+
+	@Override
+	public void write(DataOutput out, Object candidate) throws IOException {
+		
+		Text.writeString(out, StringUtils.toString(candidate));
+	}
+
+	@Override
+	public Object read(DataInput in) throws IOException {
+		
+		return StringUtils.fromString(Text.readString(in));
+	}
+}
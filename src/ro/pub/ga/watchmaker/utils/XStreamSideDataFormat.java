@@ -0,0 +1,40 @@
+package ro.pub.ga.watchmaker.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.mahout.common.StringUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Default side data format; the value is written as XStream XML.
+ */
+public class XStreamSideDataFormat<V> implements SideDataFormat<V> {
+
+	@Override
+	public void write(OutputStream out, V value) throws IOException {
+		
+		out.write(StringUtils.toString(value).getBytes(Charsets.UTF_8));
+	}
+
+	@Override
+	public V read(File file) throws IOException {
+		
+		return StringUtils.fromString(Files.toString(file, Charsets.UTF_8));
+	}
+
+	@Override
+	public boolean isInlinedAsBytes() {
+		
+		return false;
+	}
+
+	@Override
+	public V read(byte[] bytes) throws IOException {
+		
+		return StringUtils.fromString(new String(bytes, Charsets.UTF_8));
+	}
+}